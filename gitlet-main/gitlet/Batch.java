@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Runs a script of gitlet commands, one per line, in this JVM, so that
+ *  they share its caches.  Words are split as a shell would for simple
+ *  cases: on blanks, except within single or double quotes, and a
+ *  backslash outside single quotes takes the next character literally.
+ *  Blank lines and lines starting with # are skipped.  A command fails
+ *  if it prints an error message, as Main.failed reports, or throws.
+ *  A failure does not end the script.  When a command throws, the
+ *  caches are dropped, since it may have left them half updated.
+ *  @author Xinyu Fu
+ */
+class Batch {
+
+    /** Commands that cannot appear in a script. */
+    static final List<String> EXCLUDED =
+        Arrays.asList("batch", "daemon", "serve");
+
+    /** Run the commands read from IN, writing a status line for each to
+     *  STATUS: its line number and "ok", or "failed" if it printed an
+     *  error message, or "error" and what went wrong if it threw.
+     *  Returns the number of commands that failed. */
+    static int run(BufferedReader in, PrintStream status)
+        throws IOException {
+        int failed = 0, number = 0;
+        for (String line = in.readLine(); line != null;
+             line = in.readLine()) {
+            number += 1;
+            if (line.trim().isEmpty() || line.trim().startsWith("#")) {
+                continue;
+            }
+            try {
+                List<String> args = split(line);
+                if (EXCLUDED.contains(args.get(0))) {
+                    throw new GitletException("That command cannot be run "
+                                              + "in a batch.");
+                }
+                Main.main(args.toArray(new String[0]));
+                if (Main.failed()) {
+                    status.println(number + " failed");
+                    failed += 1;
+                } else {
+                    status.println(number + " ok");
+                }
+            } catch (Exception | AssertionError excp) {
+                Daemon.forgetAll();
+                status.println(number + " error "
+                               + (excp instanceof GitletException
+                                  ? excp.getMessage() : excp.toString()));
+                failed += 1;
+            }
+            System.out.flush();
+        }
+        return failed;
+    }
+
+    /** Returns the words of LINE.  Throws a GitletException if a quote
+     *  is not closed. */
+    static List<String> split(String line) {
+        List<String> result = new ArrayList<>();
+        StringBuilder word = null;
+        char quote = 0;
+        for (int i = 0; i < line.length(); i += 1) {
+            char c = line.charAt(i);
+            if (quote == 0 && Character.isWhitespace(c)) {
+                if (word != null) {
+                    result.add(word.toString());
+                    word = null;
+                }
+                continue;
+            }
+            if (word == null) {
+                word = new StringBuilder();
+            }
+            if (c == quote) {
+                quote = 0;
+            } else if (quote == 0 && (c == '"' || c == '\'')) {
+                quote = c;
+            } else if (c == '\\' && quote != '\''
+                       && i + 1 < line.length()) {
+                i += 1;
+                word.append(line.charAt(i));
+            } else {
+                word.append(c);
+            }
+        }
+        if (quote != 0) {
+            throw new GitletException("Unclosed quote.");
+        }
+        if (word != null) {
+            result.add(word.toString());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,72 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Batch class.
+ *  @author Xinyu Fu
+ */
+public class BatchTest {
+
+    @Test
+    public void splitsWords() {
+        assertEquals(Arrays.asList("commit", "two  words"),
+                     Batch.split("  commit \"two  words\" "));
+        assertEquals(Arrays.asList("find", "it's \"here\""),
+                     Batch.split("find 'it'\\''s \"here\"'"));
+        assertEquals(Arrays.asList("add", "a b", ""),
+                     Batch.split("add a\\ b \"\""));
+        assertEquals(Collections.emptyList(), Batch.split(" \t "));
+    }
+
+    @Test
+    public void rejectsUnclosedQuotes() {
+        try {
+            Batch.split("commit \"unclosed");
+            fail("expected an unclosed quote");
+        } catch (GitletException excp) {
+            assertEquals("Unclosed quote.", excp.getMessage());
+        }
+    }
+
+    @Test
+    public void countsCommandsThatPrintErrors() throws IOException {
+        String script = "rm-branch nope\n"
+            + "checkout nope\n"
+            + "# a comment\n"
+            + "commit \"\"\n"
+            + "\n"
+            + "merge nope\n"
+            + "frobnicate\n"
+            + "commit \"unclosed\n"
+            + "batch\n";
+        ByteArrayOutputStream status = new ByteArrayOutputStream(),
+            stdout = new ByteArrayOutputStream();
+        PrintStream oldOut = System.out;
+        int failed;
+        System.setOut(new PrintStream(stdout, true));
+        try {
+            failed = Batch.run(new BufferedReader(new StringReader(script)),
+                               new PrintStream(status, true));
+        } finally {
+            System.setOut(oldOut);
+        }
+        assertEquals(7, failed);
+        assertEquals(Arrays.asList("1 failed", "2 failed", "4 failed",
+                                   "6 failed", "7 failed",
+                                   "8 error Unclosed quote.",
+                                   "9 error That command cannot be run "
+                                   + "in a batch."),
+                     Arrays.asList(status.toString().split("\n")));
+        assertTrue(stdout.toString().contains(
+                       "No command with that name exists."));
+    }
+}
@@ -0,0 +1,261 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Reachability bitmaps of one repository, kept in .gitlet/bitmaps and
+ *  written by gc.  The file holds a table of the objects reachable from
+ *  the branches when gc ran, sorted by id, and for each branch head of
+ *  that time a bitmap with a bit set for every object in the table that
+ *  the head reaches: commits, trees, blobs and chunks.  What a commit
+ *  reaches never changes, so the bitmaps stay true as the branches move
+ *  on, and push and fetch use them for the haves they name instead of
+ *  walking their history and trees.  The file is MAGIC, the version,
+ *  the number of objects and of heads, the 20-byte ids of the objects,
+ *  and for each head its id, the number of longs in its bitmap and the
+ *  longs.
+ *  @author Xinyu Fu
+ */
+class Bitmaps {
+
+    /** Name of the bitmap file within a .gitlet directory. */
+    static final String FILE = "bitmaps";
+    /** Magic number at the start of the bitmap file. */
+    static final String MAGIC = "GBMP";
+    /** Current version of the bitmap file. */
+    static final int VERSION = 1;
+
+    /** A set of object ids that keeps the ids in the table as bits. */
+    class Reachable extends AbstractSet<String> {
+
+        @Override
+        public boolean contains(Object obj) {
+            int k = obj instanceof String ? index((String) obj) : -1;
+            return k >= 0 ? _bits.get(k) : _others.contains(obj);
+        }
+
+        @Override
+        public boolean add(String id) {
+            int k = index(id);
+            if (k < 0) {
+                return _others.add(id);
+            }
+            if (_bits.get(k)) {
+                return false;
+            }
+            _bits.set(k);
+            return true;
+        }
+
+        @Override
+        public int size() {
+            return _bits.cardinality() + _others.size();
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            List<String> result = new ArrayList<>(size());
+            for (int k = _bits.nextSetBit(0); k >= 0;
+                 k = _bits.nextSetBit(k + 1)) {
+                result.add(Utils.uidFromBytes(_ids, k * Utils.UID_BYTES));
+            }
+            result.addAll(_others);
+            return result.iterator();
+        }
+
+        /** The members in the table, by index. */
+        private final BitSet _bits = new BitSet(_count);
+        /** The members not in the table. */
+        private final HashSet<String> _others = new HashSet<>();
+    }
+
+    /** The bitmaps of the .gitlet directory GITLETDIR, as last saved. */
+    Bitmaps(File gitletDir) {
+        _dir = gitletDir;
+        load();
+    }
+
+    /** New bitmaps, with none yet, for the .gitlet directory GITLETDIR
+     *  over a table of OBJECTS. */
+    Bitmaps(File gitletDir, Collection<String> objects) {
+        _dir = gitletDir;
+        String[] sorted = objects.toArray(new String[0]);
+        Arrays.sort(sorted);
+        _count = sorted.length;
+        _ids = new byte[_count * Utils.UID_BYTES];
+        for (int k = 0; k < _count; k += 1) {
+            System.arraycopy(Utils.uidToBytes(sorted[k]), 0, _ids,
+                             k * Utils.UID_BYTES, Utils.UID_BYTES);
+        }
+        _heads = new TreeMap<>();
+    }
+
+    /** Forget the bitmaps already read, so that each file is read again
+     *  when next used. */
+    static void forgetAll() {
+        BITMAPS.clear();
+    }
+
+    /** Returns the bitmaps of the .gitlet directory GITLETDIR. */
+    static Bitmaps of(File gitletDir) {
+        return BITMAPS.computeIfAbsent(key(gitletDir),
+                                       k -> new Bitmaps(gitletDir));
+    }
+
+    /** Returns the number of heads with bitmaps. */
+    int size() {
+        return _heads.size();
+    }
+
+    /** Returns a new, empty set over this table. */
+    Reachable reachable() {
+        return new Reachable();
+    }
+
+    /** Add to SET, a set over this table, the objects reachable from
+     *  commit ID and return true, or return false if ID has no
+     *  bitmap. */
+    boolean addReachable(Reachable set, String id) {
+        BitSet bits = _heads.get(id);
+        if (bits == null) {
+            return false;
+        }
+        set._bits.or(bits);
+        return true;
+    }
+
+    /** Record SET, a set over this table, as the objects reachable from
+     *  commit ID. */
+    void put(String id, Reachable set) {
+        _heads.put(id, (BitSet) set._bits.clone());
+    }
+
+    /** Write these bitmaps to the bitmap file, replacing those there,
+     *  and make them the ones returned by of. */
+    void save() {
+        File file = new File(_dir, FILE);
+        File tmp = new File(_dir, FILE + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(
+                         tmp.toPath())))) {
+                out.write(MAGIC.getBytes(StandardCharsets.UTF_8));
+                out.writeInt(VERSION);
+                out.writeInt(_count);
+                out.writeInt(_heads.size());
+                out.write(_ids);
+                for (String id : _heads.keySet()) {
+                    long[] words = _heads.get(id).toLongArray();
+                    out.write(Utils.uidToBytes(id));
+                    out.writeInt(words.length);
+                    for (long word : words) {
+                        out.writeLong(word);
+                    }
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        BITMAPS.put(key(_dir), this);
+    }
+
+    /** Delete the bitmap file and forget its bitmaps. */
+    void invalidate() {
+        try {
+            Files.deleteIfExists(new File(_dir, FILE).toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        load();
+    }
+
+    /** Returns the index of ID in the table, or -1 if it is absent. */
+    private int index(String id) {
+        if (_count == 0 || !Utils.isUid(id)) {
+            return -1;
+        }
+        byte[] key = Utils.uidToBytes(id);
+        int lo = 0, hi = _count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int start = mid * Utils.UID_BYTES;
+            int c = Arrays.compareUnsigned(_ids, start,
+                                           start + Utils.UID_BYTES,
+                                           key, 0, Utils.UID_BYTES);
+            if (c == 0) {
+                return mid;
+            } else if (c < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return -1;
+    }
+
+    /** Read the bitmap file, if there is one. */
+    private void load() {
+        _count = 0;
+        _ids = new byte[0];
+        _heads = new TreeMap<>();
+        File file = new File(_dir, FILE);
+        if (!file.isFile()) {
+            return;
+        }
+        ByteBuffer data = ByteBuffer.wrap(Utils.readContents(file));
+        byte[] magic = new byte[MAGIC.length()];
+        data.get(magic);
+        if (!MAGIC.equals(new String(magic, StandardCharsets.UTF_8))
+            || data.getInt() != VERSION) {
+            throw new IllegalArgumentException("bad bitmap file");
+        }
+        _count = data.getInt();
+        int heads = data.getInt();
+        _ids = new byte[_count * Utils.UID_BYTES];
+        data.get(_ids);
+        byte[] id = new byte[Utils.UID_BYTES];
+        for (int i = 0; i < heads; i += 1) {
+            data.get(id);
+            long[] words = new long[data.getInt()];
+            data.asLongBuffer().get(words);
+            data.position(data.position() + 8 * words.length);
+            _heads.put(Utils.uidFromBytes(id, 0), BitSet.valueOf(words));
+        }
+    }
+
+    /** Returns the key of the .gitlet directory GITLETDIR in BITMAPS. */
+    private static String key(File gitletDir) {
+        return gitletDir.getAbsoluteFile().toPath().normalize().toString();
+    }
+
+    /** Bitmaps already read, keyed by normalized .gitlet path. */
+    private static final ConcurrentHashMap<String, Bitmaps> BITMAPS =
+        new ConcurrentHashMap<>();
+
+    /** The .gitlet directory of these bitmaps. */
+    private final File _dir;
+    /** Number of objects in the table. */
+    private int _count;
+    /** The ids of the objects in the table, 20 bytes each, in order. */
+    private byte[] _ids;
+    /** The bitmap of each head, by id. */
+    private TreeMap<String, BitSet> _heads;
+}
@@ -0,0 +1,596 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Streaming reads and writes of blobs.  A blob is stored in one of
+ *  three formats, chosen per repository by its "blobformat" setting:
+ *  format 1 is the Java serialization of the String holding its
+ *  file's contents, and format 2 is the header 'G' 'B' 2 followed by
+ *  the file's bytes as they are.  Format 3 stores files of at most
+ *  CHUNK_THRESHOLD bytes as format 2 does, and splits larger ones with
+ *  the Chunker, storing each chunk once as a format 2 blob and the file
+ *  as the header 'G' 'B' 3, the number of chunks, and for each chunk
+ *  its 20-byte id and its length as an int.  A small edit to a large
+ *  file thus stores only the chunks around it and a new list.  In
+ *  every format the id of a blob is the SHA-1 of its stored form
+ *  (before compression).  The methods here produce and consume those
+ *  bytes through buffers of BUFFER bytes, or one chunk at a time, so
+ *  the heap they use does not grow with the size of a file.  (Blobs
+ *  that have been repacked are still read whole.)  Reading accepts
+ *  every format, whatever the setting.
+ *  @author Xinyu Fu
+ */
+class Blobs {
+
+    /** Format storing a blob as a serialized String. */
+    static final int SERIALIZED = 1;
+    /** Format storing a blob as a header and raw bytes. */
+    static final int RAW = 2;
+    /** First magic byte of a RAW blob. */
+    static final byte MAGIC0 = 'G';
+    /** Second magic byte of a RAW blob. */
+    static final byte MAGIC1 = 'B';
+    /** Format storing large blobs as lists of RAW chunks. */
+    static final int CHUNKED = 3;
+    /** Largest file stored whole in the CHUNKED format. */
+    static final long CHUNK_THRESHOLD = 1 << 20;
+    /** Size of the buffers used to stream files. */
+    static final int BUFFER = 1 << 16;
+    /** First two bytes of a Java serialization stream. */
+    private static final int STREAM_MAGIC = 0xaced;
+    /** Version of the Java serialization stream. */
+    private static final int STREAM_VERSION = 5;
+    /** Tag of a String whose encoded length fits in two bytes. */
+    private static final int TC_STRING = 0x74;
+    /** Tag of a longer String. */
+    private static final int TC_LONGSTRING = 0x7c;
+    /** Longest encoded length written with TC_STRING. */
+    private static final int MAX_SHORT_UTF = 0xffff;
+    /** Most bytes that one char takes in modified UTF-8. */
+    private static final int MAX_CHAR_BYTES = 3;
+
+    /** Returns the blob format that the .gitlet directory GITLETDIR
+     *  uses for new blobs.  Repositories that predate the setting use
+     *  SERIALIZED. */
+    static int formatOf(File gitletDir) {
+        String format = Config.get(gitletDir, Config.BLOB_FORMAT, "");
+        if (format.equals(Integer.toString(CHUNKED))) {
+            return CHUNKED;
+        }
+        return format.equals(Integer.toString(RAW)) ? RAW : SERIALIZED;
+    }
+
+    /** Returns the id that FILE's contents would have as a blob of the
+     *  current repository. */
+    static String id(File file) {
+        return id(file, formatOf(new File(".gitlet")));
+    }
+
+    /** Returns the id that FILE's contents would have as a blob in
+     *  format FORMAT. */
+    static String id(File file, int format) {
+        if (chunked(file, format)) {
+            try {
+                return Utils.sha1(chunkList(null, file));
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        MessageDigest md = digest();
+        try (OutputStream out = new DigestOutputStream(
+                 OutputStream.nullOutputStream(), md)) {
+            write(file, format, out);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return Utils.uidFromBytes(md.digest(), 0);
+    }
+
+    /** Store the contents of FILE as a blob of the current repository,
+     *  if it is not there already, and return its id. */
+    static String store(File file) {
+        return store(ObjectStore.local(), file);
+    }
+
+    /** Store the contents of FILE as a blob in STORE, if it is not there
+     *  already, and return its id. */
+    static String store(ObjectStore store, File file) {
+        return store(store, file, formatOf(store.dir()));
+    }
+
+    /** Store the contents of FILE as a blob in format FORMAT in STORE,
+     *  if it is not there already, and return its id.  Threads may store
+     *  the same contents at once: the blob is moved into place
+     *  atomically, and whichever move comes last replaces the same
+     *  bytes. */
+    static String store(ObjectStore store, File file, int format) {
+        MessageDigest md = digest();
+        try {
+            if (chunked(file, format)) {
+                byte[] list = chunkList(store, file);
+                String id = Utils.sha1(list);
+                store.write(ObjectStore.BLOBS, id, Compression.encode(
+                    list, Compression.codecOf(store.dir())));
+                return id;
+            }
+            File tmp = File.createTempFile("blob", ".tmp", store.dir());
+            try {
+                try (OutputStream out = new DigestOutputStream(
+                         Compression.encoder(new BufferedOutputStream(
+                             Files.newOutputStream(tmp.toPath()), BUFFER),
+                             Compression.codecOf(store.dir())), md)) {
+                    write(file, format, out);
+                }
+                String id = Utils.uidFromBytes(md.digest(), 0);
+                if (!store.contains(ObjectStore.BLOBS, id)) {
+                    Files.move(tmp.toPath(),
+                               store.looseFile(ObjectStore.BLOBS, id)
+                               .toPath(),
+                               StandardCopyOption.REPLACE_EXISTING,
+                               StandardCopyOption.ATOMIC_MOVE);
+                }
+                return id;
+            } finally {
+                Files.deleteIfExists(tmp.toPath());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Store CONTENTS as a RAW blob in STORE, if it is not there
+     *  already, and return its id. */
+    static String storeRaw(ObjectStore store, byte[] contents) {
+        byte[] stored = new byte[contents.length + 3];
+        stored[0] = MAGIC0;
+        stored[1] = MAGIC1;
+        stored[2] = RAW;
+        System.arraycopy(contents, 0, stored, 3, contents.length);
+        String id = Utils.sha1(stored);
+        store.write(ObjectStore.BLOBS, id, Compression.encode(
+            stored, Compression.codecOf(store.dir())));
+        return id;
+    }
+
+    /** Returns the ids of the chunks of the blob with id ID in STORE, in
+     *  order, or an empty list if it is not stored as chunks. */
+    static List<String> chunks(ObjectStore store, String id) {
+        List<String> result = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(Compression.decoder(
+                 store.open(ObjectStore.BLOBS, id)))) {
+            if (in.read() != MAGIC0 || in.read() != MAGIC1
+                || in.read() != CHUNKED) {
+                return result;
+            }
+            byte[] chunk = new byte[Utils.UID_BYTES];
+            for (int n = in.readInt(); n > 0; n -= 1) {
+                in.readFully(chunk);
+                in.readInt();
+                result.add(Utils.uidFromBytes(chunk, 0));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Add to OBJECTS, which maps ids to kinds, blob ID of STORE and the
+     *  chunks it lists, other than those in SEEN, each chunk before its
+     *  blob, and add them all to SEEN. */
+    static void collect(ObjectStore store, String id, Set<String> seen,
+                        Map<String, String> objects) {
+        collect(store, id, null, seen, objects);
+    }
+
+    /** As collect(STORE, ID, SEEN, OBJECTS), except that if blob ID is
+     *  chunked, the chunks of blob BASE, which may be null, are first
+     *  added to SEEN.  BASE is an earlier version of the same file whose
+     *  chunks the receiver of OBJECTS holds or is sent, so only the
+     *  chunks of ID that BASE lacks go into OBJECTS. */
+    static void collect(ObjectStore store, String id, String base,
+                        Set<String> seen, Map<String, String> objects) {
+        if (!seen.add(id)) {
+            return;
+        }
+        List<String> chunks = chunks(store, id);
+        if (!chunks.isEmpty() && base != null && !base.equals(id)) {
+            seen.addAll(chunks(store, base));
+        }
+        for (String chunk : chunks) {
+            if (seen.add(chunk)) {
+                objects.put(chunk, ObjectStore.BLOBS);
+            }
+        }
+        objects.put(id, ObjectStore.BLOBS);
+    }
+
+    /** Write the contents of the blob with id ID of the current
+     *  repository to DEST, replacing whatever DEST held. */
+    static void restore(String id, File dest) {
+        restore(ObjectStore.local(), id, dest);
+    }
+
+    /** Write the contents of the blob with id ID in STORE to DEST,
+     *  replacing whatever DEST held.  The contents go to a temporary
+     *  file beside DEST that is renamed over it only once they are all
+     *  written, so DEST is left alone if the blob cannot be read.  An
+     *  executable DEST stays executable. */
+    static void restore(ObjectStore store, String id, File dest) {
+        File dir = dest.getAbsoluteFile().getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        try {
+            File tmp = File.createTempFile(".restore", ".tmp", dir);
+            try {
+                try (FileChannel channel = FileChannel.open(
+                         tmp.toPath(), StandardOpenOption.WRITE)) {
+                    copy(store, id, channel);
+                }
+                if (dest.canExecute()) {
+                    tmp.setExecutable(true);
+                }
+                Files.move(tmp.toPath(), dest.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp.toPath());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the contents of the blob with id ID of the current
+     *  repository as a String. */
+    static String readString(String id) {
+        return new String(read(ObjectStore.local(), id),
+                          StandardCharsets.UTF_8);
+    }
+
+    /** Returns the contents of the blob with id ID in STORE. */
+    static byte[] read(ObjectStore store, String id) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            copy(store, id, Channels.newChannel(out));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return out.toByteArray();
+    }
+
+    /** Write the contents of the blob with id ID in STORE, in any
+     *  format, to OUT. */
+    private static void copy(ObjectStore store, String id,
+                             WritableByteChannel out) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(Compression.decoder(
+                     store.open(ObjectStore.BLOBS, id)), BUFFER))) {
+            int magic = in.readUnsignedShort();
+            if (magic == ((MAGIC0 << 8) | MAGIC1)) {
+                int format = in.readUnsignedByte();
+                if (format == CHUNKED) {
+                    byte[] chunk = new byte[Utils.UID_BYTES];
+                    for (int n = in.readInt(); n > 0; n -= 1) {
+                        in.readFully(chunk);
+                        in.readInt();
+                        copy(store, Utils.uidFromBytes(chunk, 0), out);
+                    }
+                    return;
+                }
+                if (format != RAW) {
+                    throw new IllegalArgumentException("blob " + id
+                                                       + " has an unknown "
+                                                       + "format");
+                }
+                ByteBuffer buf = ByteBuffer.allocate(BUFFER);
+                for (int n = in.read(buf.array()); n >= 0;
+                     n = in.read(buf.array())) {
+                    buf.position(n);
+                    writeAll(buf, out);
+                }
+                return;
+            }
+            if (magic != STREAM_MAGIC
+                || in.readUnsignedShort() != STREAM_VERSION) {
+                throw new IllegalArgumentException("blob " + id
+                                                   + " is not a string");
+            }
+            int tag = in.readUnsignedByte();
+            long remaining;
+            if (tag == TC_STRING) {
+                remaining = in.readUnsignedShort();
+            } else if (tag == TC_LONGSTRING) {
+                remaining = in.readLong();
+            } else {
+                throw new IllegalArgumentException("blob " + id
+                                                   + " is not a string");
+            }
+            copyChars(in, remaining, out);
+        }
+    }
+
+    /** Write the stored form of the contents of FILE in format FORMAT
+     *  to OUT. */
+    private static void write(File file, int format, OutputStream out)
+        throws IOException {
+        if (format == SERIALIZED) {
+            serialize(file, utfLength(file), out);
+            return;
+        }
+        out.write(new byte[] { MAGIC0, MAGIC1, RAW });
+        ByteBuffer buf = ByteBuffer.allocate(BUFFER);
+        try (FileChannel channel = FileChannel.open(
+                 file.toPath(), StandardOpenOption.READ)) {
+            for (int n = channel.read(buf); n >= 0; n = channel.read(buf)) {
+                out.write(buf.array(), 0, n);
+                buf.clear();
+            }
+        }
+    }
+
+    /** Returns true iff FILE is stored as chunks in format FORMAT. */
+    private static boolean chunked(File file, int format) {
+        return format == CHUNKED && file.length() > CHUNK_THRESHOLD;
+    }
+
+    /** Returns the CHUNKED form of the contents of FILE, storing each of
+     *  its chunks as a RAW blob in STORE unless STORE is null or already
+     *  holds it. */
+    private static byte[] chunkList(ObjectStore store, File file)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream list = new DataOutputStream(bytes);
+        list.write(new byte[] { MAGIC0, MAGIC1, CHUNKED, 0, 0, 0, 0 });
+        int[] count = { 0 };
+        MessageDigest md = digest();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            Chunker.split(in, (buf, offset, length) -> {
+                md.update(new byte[] { MAGIC0, MAGIC1, RAW });
+                md.update(buf, offset, length);
+                byte[] id = md.digest();
+                if (store != null && !store.contains(
+                        ObjectStore.BLOBS, Utils.uidFromBytes(id, 0))) {
+                    storeRaw(store, Arrays.copyOfRange(buf, offset,
+                                                       offset + length));
+                }
+                list.write(id);
+                list.writeInt(length);
+                count[0] += 1;
+            });
+        }
+        byte[] result = bytes.toByteArray();
+        ByteBuffer.wrap(result, 3, 4).putInt(count[0]);
+        return result;
+    }
+
+    /** Receives the characters of a file a buffer at a time. */
+    private interface CharSink {
+        /** Consume all remaining characters of CHARS. */
+        void put(CharBuffer chars) throws IOException;
+    }
+
+    /** Returns the number of bytes of FILE's contents in modified
+     *  UTF-8. */
+    private static long utfLength(File file) throws IOException {
+        long[] length = { 0 };
+        readChars(file, chars -> {
+            while (chars.hasRemaining()) {
+                char c = chars.get();
+                length[0] += c >= 1 && c < 0x80 ? 1 : c < 0x800 ? 2 : 3;
+            }
+        });
+        return length[0];
+    }
+
+    /** Write the serialization of the contents of FILE, whose length
+     *  in modified UTF-8 is LENGTH, to OUT. */
+    private static void serialize(File file, long length, OutputStream out)
+        throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeShort(STREAM_MAGIC);
+        data.writeShort(STREAM_VERSION);
+        if (length <= MAX_SHORT_UTF) {
+            data.writeByte(TC_STRING);
+            data.writeShort((int) length);
+        } else {
+            data.writeByte(TC_LONGSTRING);
+            data.writeLong(length);
+        }
+        byte[] buf = new byte[BUFFER];
+        int[] size = { 0 };
+        readChars(file, chars -> {
+            while (chars.hasRemaining()) {
+                if (size[0] > BUFFER - MAX_CHAR_BYTES) {
+                    data.write(buf, 0, size[0]);
+                    size[0] = 0;
+                }
+                char c = chars.get();
+                int n = size[0];
+                if (c >= 1 && c < 0x80) {
+                    buf[n] = (byte) c;
+                    size[0] = n + 1;
+                } else if (c < 0x800) {
+                    buf[n] = (byte) (0xc0 | (c >> 6));
+                    buf[n + 1] = (byte) (0x80 | (c & 0x3f));
+                    size[0] = n + 2;
+                } else {
+                    buf[n] = (byte) (0xe0 | (c >> 12));
+                    buf[n + 1] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                    buf[n + 2] = (byte) (0x80 | (c & 0x3f));
+                    size[0] = n + 3;
+                }
+            }
+        });
+        data.write(buf, 0, size[0]);
+        data.flush();
+    }
+
+    /** Decode FILE as UTF-8, exactly as Utils.readContentsAsString
+     *  does, passing the characters to SINK. */
+    private static void readChars(File file, CharSink sink)
+        throws IOException {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        ByteBuffer bytes = ByteBuffer.allocate(BUFFER);
+        CharBuffer chars = CharBuffer.allocate(BUFFER);
+        try (FileChannel channel = FileChannel.open(
+                 file.toPath(), StandardOpenOption.READ)) {
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(bytes) < 0;
+                bytes.flip();
+                CoderResult result;
+                do {
+                    result = decoder.decode(bytes, chars, eof);
+                    drain(chars, sink);
+                } while (result.isOverflow());
+                bytes.compact();
+            }
+            CoderResult result;
+            do {
+                result = decoder.flush(chars);
+                drain(chars, sink);
+            } while (result.isOverflow());
+        }
+    }
+
+    /** Pass the characters written to CHARS to SINK and empty it. */
+    private static void drain(CharBuffer chars, CharSink sink)
+        throws IOException {
+        chars.flip();
+        sink.put(chars);
+        chars.clear();
+    }
+
+    /** Decode the next REMAINING bytes of IN as modified UTF-8 and
+     *  write the result to CHANNEL as UTF-8, exactly as
+     *  Utils.writeContents does. */
+    private static void copyChars(DataInputStream in, long remaining,
+                                  WritableByteChannel channel)
+        throws IOException {
+        CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        byte[] raw = new byte[BUFFER];
+        CharBuffer chars = CharBuffer.allocate(BUFFER + 1);
+        ByteBuffer bytes = ByteBuffer.allocate(MAX_CHAR_BYTES * BUFFER);
+        int have = 0;
+        while (remaining > 0) {
+            int n = (int) Math.min(BUFFER - have, remaining);
+            in.readFully(raw, have, n);
+            remaining -= n;
+            n += have;
+            int i = decodeModifiedUtf8(raw, n, chars);
+            have = n - i;
+            System.arraycopy(raw, i, raw, 0, have);
+            chars.flip();
+            encode(encoder, chars, bytes, channel, false);
+            chars.compact();
+        }
+        if (have > 0) {
+            throw new IllegalArgumentException("truncated blob");
+        }
+        chars.flip();
+        encode(encoder, chars, bytes, channel, true);
+        CoderResult result;
+        do {
+            result = encoder.flush(bytes);
+            writeAll(bytes, channel);
+        } while (result.isOverflow());
+    }
+
+    /** Decode the complete modified UTF-8 sequences among the first N
+     *  bytes of RAW into CHARS, returning the number of bytes used. */
+    private static int decodeModifiedUtf8(byte[] raw, int n,
+                                          CharBuffer chars) {
+        int i = 0;
+        while (i < n) {
+            int b = raw[i] & 0xff;
+            if (b < 0x80) {
+                chars.put((char) b);
+                i += 1;
+            } else if ((b >> 5) == 0x6) {
+                if (i + 2 > n) {
+                    break;
+                }
+                chars.put((char) (((b & 0x1f) << 6) | (raw[i + 1] & 0x3f)));
+                i += 2;
+            } else if ((b >> 4) == 0xe) {
+                if (i + 3 > n) {
+                    break;
+                }
+                chars.put((char) (((b & 0x0f) << 12)
+                                  | ((raw[i + 1] & 0x3f) << 6)
+                                  | (raw[i + 2] & 0x3f)));
+                i += 3;
+            } else {
+                throw new IllegalArgumentException("corrupt blob");
+            }
+        }
+        return i;
+    }
+
+    /** Encode CHARS with ENCODER into BYTES and write them to CHANNEL.
+     *  A trailing high surrogate stays in CHARS unless ENDOFINPUT. */
+    private static void encode(CharsetEncoder encoder, CharBuffer chars,
+                               ByteBuffer bytes,
+                               WritableByteChannel channel,
+                               boolean endOfInput) throws IOException {
+        CoderResult result;
+        do {
+            result = encoder.encode(chars, bytes, endOfInput);
+            writeAll(bytes, channel);
+        } while (result.isOverflow());
+    }
+
+    /** Write the bytes written to BYTES to CHANNEL and empty it. */
+    private static void writeAll(ByteBuffer bytes, WritableByteChannel channel)
+        throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    /** Returns a new SHA-1 digest. */
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support "
+                                               + "SHA-1");
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Blobs class.
+ *  @author Xinyu Fu
+ */
+public class BlobsTest {
+
+    /** Returns a temporary file holding DATA. */
+    private static File tempFile(byte[] data) throws IOException {
+        File file = File.createTempFile("gitlet-blob", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    /** Check that streaming DATA gives the id and contents that the
+     *  in-memory String path gives. */
+    private static void checkRoundTrip(byte[] data) throws IOException {
+        File file = tempFile(data);
+        String content = Utils.readContentsAsString(file);
+        String expected = Utils.sha1(Utils.serialize(content));
+        assertEquals(expected, Blobs.id(file));
+        ObjectStore store =
+            new ObjectStore(TestRepos.tempRepo(ObjectStore.BLOBS));
+        assertEquals(expected, Blobs.store(store, file));
+        File blob = store.looseFile(ObjectStore.BLOBS, expected);
+        blob.deleteOnExit();
+        assertEquals(content, Utils.readObject(blob, String.class));
+        File out = tempFile(new byte[0]);
+        Blobs.restore(store, expected, out);
+        assertArrayEquals(content.getBytes(StandardCharsets.UTF_8),
+                          Utils.readContents(out));
+    }
+
+    @Test
+    public void sameContentsStoredInParallel() throws Exception {
+        byte[] data = "same".getBytes(StandardCharsets.UTF_8);
+        for (int round = 0; round < 50; round += 1) {
+            ObjectStore store =
+                ObjectStore.of(TestRepos.tempRepo(ObjectStore.BLOBS));
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            List<String> ids = new ArrayList<>();
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 8; t += 1) {
+                File file = tempFile(data);
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                        String id = Blobs.store(store, file, Blobs.RAW);
+                        synchronized (ids) {
+                            ids.add(id);
+                        }
+                    } catch (Exception excp) {
+                        failure.compareAndSet(null, excp);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertNull(failure.get());
+            assertEquals(8, ids.size());
+            File blob = store.looseFile(ObjectStore.BLOBS, ids.get(0));
+            blob.deleteOnExit();
+            assertArrayEquals(data, Blobs.read(store, ids.get(0)));
+        }
+    }
+
+    @Test
+    public void missingBlobLeavesFileAlone() throws IOException {
+        ObjectStore store = TestRepos.tempStore(ObjectStore.BLOBS);
+        File dir = TestRepos.tempRepo();
+        File dest = new File(dir, "work.txt");
+        dest.deleteOnExit();
+        Utils.writeContents(dest, "mine");
+        try {
+            Blobs.restore(store, Utils.sha1("absent"), dest);
+            fail("expected a missing blob");
+        } catch (IllegalArgumentException excp) {
+            assertEquals("mine", Utils.readContentsAsString(dest));
+        }
+        String id = Blobs.storeRaw(
+            store, "theirs".getBytes(StandardCharsets.UTF_8));
+        store.looseFile(ObjectStore.BLOBS, id).deleteOnExit();
+        Blobs.restore(store, id, dest);
+        assertEquals("theirs", Utils.readContentsAsString(dest));
+        assertEquals(Arrays.asList("work.txt"),
+                     Utils.plainFilenamesIn(dir));
+    }
+
+    @Test
+    public void smallFiles() throws IOException {
+        checkRoundTrip(new byte[0]);
+        checkRoundTrip("hello\n".getBytes(StandardCharsets.UTF_8));
+        checkRoundTrip("nul\0, \u00e9t\u00e9, \u4e2d, \ud83d\ude00"
+                       .getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void malformedUtf8() throws IOException {
+        checkRoundTrip(new byte[] { 'a', (byte) 0xff, (byte) 0xe4,
+                                    (byte) 0xb8, 'b', (byte) 0xc3 });
+    }
+
+    @Test
+    public void rawFormatKeepsBytes() throws IOException {
+        File repo = TestRepos.tempRepo(ObjectStore.BLOBS);
+        Config.set(repo, Config.BLOB_FORMAT, Integer.toString(Blobs.RAW));
+        new File(repo, Config.FILE).deleteOnExit();
+        ObjectStore store = new ObjectStore(repo);
+        byte[] data = new byte[Blobs.BUFFER + 3];
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = (byte) (i * 7);
+        }
+        File file = tempFile(data);
+        String id = Blobs.store(store, file);
+        store.looseFile(ObjectStore.BLOBS, id).deleteOnExit();
+        assertEquals(id, Blobs.id(file, Blobs.RAW));
+        assertEquals(id, Blobs.storeRaw(store, data));
+        assertArrayEquals(data, Blobs.read(store, id));
+        File out = tempFile(new byte[0]);
+        Blobs.restore(store, id, out);
+        assertArrayEquals(data, Utils.readContents(out));
+    }
+
+    @Test
+    public void chunkedFormatStoresAppendsOnce() throws IOException {
+        File repo = TestRepos.tempRepo(ObjectStore.BLOBS);
+        Config.set(repo, Config.BLOB_FORMAT,
+                   Integer.toString(Blobs.CHUNKED));
+        new File(repo, Config.FILE).deleteOnExit();
+        ObjectStore store = new ObjectStore(repo);
+        byte[] data = new byte[3 * (int) Blobs.CHUNK_THRESHOLD];
+        new Random(61).nextBytes(data);
+        File file = tempFile(data);
+        String id = Blobs.store(store, file);
+        assertEquals(id, Blobs.id(file, Blobs.CHUNKED));
+        assertArrayEquals(data, Blobs.read(store, id));
+        int chunks = Blobs.chunks(store, id).size();
+        assertTrue(chunks > 1);
+        assertEquals(chunks + 1, store.ids(ObjectStore.BLOBS).size());
+
+        byte[] appended = Arrays.copyOf(data, data.length + 1000);
+        Files.write(file.toPath(), appended);
+        String id2 = Blobs.store(store, file);
+        assertEquals(id2, Blobs.id(file, Blobs.CHUNKED));
+        File out = tempFile(new byte[0]);
+        Blobs.restore(store, id2, out);
+        assertArrayEquals(appended, Utils.readContents(out));
+        assertTrue(store.ids(ObjectStore.BLOBS).size() <= chunks + 4);
+
+        byte[] small = "small\n".getBytes(StandardCharsets.UTF_8);
+        String id3 = Blobs.store(store, tempFile(small));
+        assertEquals(id3, Blobs.storeRaw(store, small));
+        assertTrue(Blobs.chunks(store, id3).isEmpty());
+        for (String each : store.ids(ObjectStore.BLOBS)) {
+            store.looseFile(ObjectStore.BLOBS, each).deleteOnExit();
+        }
+    }
+
+    @Test
+    public void largeFileCrossesBuffers() throws IOException {
+        byte[] unit = "x\u00e9\u4e2d\ud83d\ude00\n"
+            .getBytes(StandardCharsets.UTF_8);
+        byte[] data = new byte[3 * Blobs.BUFFER + 7];
+        for (int i = 0; i < data.length; i += 1) {
+            data[i] = unit[i % unit.length];
+        }
+        checkRoundTrip(data);
+        byte[] ascii = new byte[2 * Blobs.BUFFER];
+        Arrays.fill(ascii, (byte) 'a');
+        checkRoundTrip(ascii);
+    }
+}
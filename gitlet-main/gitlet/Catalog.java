@@ -0,0 +1,424 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** What global-log and find need to know about every commit of one
+ *  repository, kept so that neither has to read commit objects.  Three
+ *  files are only ever appended to as commits are written:
+ *  .gitlet/catalog holds one fixed-size record per commit (its id,
+ *  parents, time, zone offset, and the offset of its text),
+ *  .gitlet/catalog-text holds the formatted date and message of each
+ *  commit, and .gitlet/catalog-words is an inverted index from the
+ *  hash of each word of a message to the record of its commit.  The
+ *  words file starts with entries sorted by hash, then entries in the
+ *  order they were added; once there are more than TAIL of those, it is
+ *  rewritten with all of them sorted.  Missing files are rebuilt from
+ *  the object store.
+ *  @author Xinyu Fu
+ */
+class Catalog {
+
+    /** Name of the record file within a .gitlet directory. */
+    static final String FILE = "catalog";
+    /** Name of the text file within a .gitlet directory. */
+    static final String TEXT = "catalog-text";
+    /** Name of the word index within a .gitlet directory. */
+    static final String WORDS = "catalog-words";
+    /** Magic number at the start of the record file. */
+    static final String MAGIC = "GCAT";
+    /** Magic number at the start of the word index. */
+    static final String WORDS_MAGIC = "GCWD";
+    /** Current version of the record file and word index. */
+    static final int VERSION = 1;
+    /** Size of the record file header: magic and version. */
+    static final int HEADER = 8;
+    /** Size of the word index header: magic, version and sorted
+     *  count. */
+    static final int WORDS_HEADER = 12;
+    /** Size of one record: three ids, time, zone and text offset. */
+    static final int RECORD = 3 * Utils.UID_BYTES + 8 + 4 + 8;
+    /** Size of one word index entry: word hash and record number. */
+    static final int ENTRY = 8 + 4;
+    /** Most appended word entries kept before the word index is
+     *  rewritten sorted. */
+    static final int TAIL = 4096;
+
+    /** One commit as recorded in the catalog. */
+    static class Entry {
+        /** The commit id. */
+        final String id;
+        /** The formatted date of the commit. */
+        final String date;
+        /** The commit message. */
+        final String message;
+
+        /** An entry for commit ID with date DATE and message MESSAGE. */
+        Entry(String id, String date, String message) {
+            this.id = id;
+            this.date = date;
+            this.message = message;
+        }
+    }
+
+    /** Something done with each entry in turn. */
+    interface Visitor {
+        /** Handle ENTRY. */
+        void visit(Entry entry) throws IOException;
+    }
+
+    /** The catalog of the .gitlet directory GITLETDIR. */
+    Catalog(File gitletDir) {
+        _dir = gitletDir;
+        _file = new File(gitletDir, FILE);
+        _text = new File(gitletDir, TEXT);
+        _words = new File(gitletDir, WORDS);
+    }
+
+    /** Returns the catalog of the .gitlet directory in the current
+     *  directory. */
+    static Catalog local() {
+        return of(new File(".gitlet"));
+    }
+
+    /** Forget every catalog already opened, so that each is read again
+     *  when next used. */
+    static void forgetAll() {
+        CATALOGS.clear();
+    }
+
+    /** Returns the catalog of the .gitlet directory GITLETDIR. */
+    static Catalog of(File gitletDir) {
+        String key = gitletDir.getAbsoluteFile().toPath().normalize()
+            .toString();
+        return CATALOGS.computeIfAbsent(key, k -> new Catalog(gitletDir));
+    }
+
+    /** Returns the number of commits in the catalog. */
+    int size() {
+        ensure();
+        return (int) ((_file.length() - HEADER) / RECORD);
+    }
+
+    /** Record commit ID, whose contents are COMMIT, which has just been
+     *  written to the object store. */
+    void add(String id, Commit commit) {
+        if (!_file.isFile() || !_text.isFile() || !_words.isFile()) {
+            rebuild();
+        } else {
+            append(id, commit);
+        }
+    }
+
+    /** Pass every entry to VISITOR, in the order they were added,
+     *  reading the catalog as it goes. */
+    void forEach(Visitor visitor) throws IOException {
+        int size = size();
+        try (RandomAccessFile records = new RandomAccessFile(_file, "r");
+             RandomAccessFile text = new RandomAccessFile(_text, "r")) {
+            records.seek(HEADER);
+            byte[] record = new byte[RECORD];
+            for (int k = 0; k < size; k += 1) {
+                records.readFully(record);
+                visitor.visit(entry(ByteBuffer.wrap(record), text));
+            }
+        }
+    }
+
+    /** Returns the ids of the commits whose message is exactly MESSAGE,
+     *  in sorted order.  Only the commits that share MESSAGE's rarest
+     *  word are read. */
+    List<String> find(String message) throws IOException {
+        ensure();
+        int[] candidates = null;
+        for (String word : words(message)) {
+            int[] records = postings(hash(word));
+            if (candidates == null || records.length < candidates.length) {
+                candidates = records;
+            }
+        }
+        List<String> result = new ArrayList<>();
+        try (RandomAccessFile records = new RandomAccessFile(_file, "r");
+             RandomAccessFile text = new RandomAccessFile(_text, "r")) {
+            byte[] record = new byte[RECORD];
+            for (int k : candidates) {
+                if ((long) HEADER + (long) (k + 1) * RECORD
+                    > records.length()) {
+                    continue;
+                }
+                records.seek(HEADER + (long) k * RECORD);
+                records.readFully(record);
+                Entry entry = entry(ByteBuffer.wrap(record), text);
+                if (entry.message.equals(message)) {
+                    result.add(entry.id);
+                }
+            }
+        }
+        result.sort(null);
+        return result;
+    }
+
+    /** Forget the catalog, so that it is rebuilt when next used. */
+    void invalidate() {
+        try {
+            for (File file : new File[] { _file, _text, _words }) {
+                Files.deleteIfExists(file.toPath());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _tail = null;
+    }
+
+    /** Returns the distinct words of MESSAGE, in lower case.  A message
+     *  without words has the single word "". */
+    static Set<String> words(String message) {
+        Set<String> result = new LinkedHashSet<>();
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i <= message.length(); i += 1) {
+            if (i < message.length()
+                && Character.isLetterOrDigit(message.charAt(i))) {
+                word.append(message.charAt(i));
+            } else if (word.length() > 0) {
+                result.add(word.toString().toLowerCase(Locale.ROOT));
+                word.setLength(0);
+            }
+        }
+        if (result.isEmpty()) {
+            result.add("");
+        }
+        return result;
+    }
+
+    /** Returns the 64-bit FNV-1a hash of WORD. */
+    static long hash(String word) {
+        long result = 0xcbf29ce484222325L;
+        for (byte b : word.getBytes(StandardCharsets.UTF_8)) {
+            result = (result ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return result;
+    }
+
+    /** Returns the entry whose record is RECORD, reading its text from
+     *  TEXT. */
+    private static Entry entry(ByteBuffer record, RandomAccessFile text)
+        throws IOException {
+        String id = Utils.uidFromBytes(record.array(), 0);
+        text.seek(record.getLong(RECORD - 8));
+        String date = readString(text);
+        return new Entry(id, date, readString(text));
+    }
+
+    /** Returns a string, an int length and UTF-8 bytes, read from IN. */
+    private static String readString(RandomAccessFile in)
+        throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the sorted record numbers indexed under word hash HASH. */
+    private int[] postings(long hash) throws IOException {
+        List<Integer> found = new ArrayList<>();
+        try (RandomAccessFile in = new RandomAccessFile(_words, "r")) {
+            in.seek(8);
+            int count = in.readInt();
+            int lo = 0, hi = count;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                in.seek(WORDS_HEADER + (long) mid * ENTRY);
+                if (in.readLong() < hash) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            in.seek(WORDS_HEADER + (long) lo * ENTRY);
+            for (int i = lo; i < count; i += 1) {
+                if (in.readLong() != hash) {
+                    break;
+                }
+                found.add(in.readInt());
+            }
+        }
+        for (long[] entry : tail()) {
+            if (entry[0] == hash) {
+                found.add((int) entry[1]);
+            }
+        }
+        int[] result = new int[found.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = found.get(i);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /** Returns the appended entries of the word index, each a hash and a
+     *  record number, reading them if need be. */
+    private List<long[]> tail() throws IOException {
+        if (_tail == null) {
+            _tail = new ArrayList<>();
+            try (RandomAccessFile in = new RandomAccessFile(_words, "r")) {
+                in.seek(8);
+                long start = WORDS_HEADER + (long) in.readInt() * ENTRY;
+                long count = (in.length() - start) / ENTRY;
+                in.seek(start);
+                for (long i = 0; i < count; i += 1) {
+                    _tail.add(new long[] { in.readLong(), in.readInt() });
+                }
+            }
+        }
+        return _tail;
+    }
+
+    /** Append the record, text and words of commit ID, whose contents
+     *  are COMMIT.  The text comes first and the words last, so a
+     *  record never names missing text, and a word naming a missing or
+     *  different record only costs find a wasted check. */
+    private void append(String id, Commit commit) {
+        try {
+            long offset = _text.length();
+            try (DataOutputStream out = open(_text)) {
+                writeString(out, commit.getDate());
+                writeString(out, commit.getMessage());
+            }
+            int record = (int) ((_file.length() - HEADER) / RECORD);
+            try (DataOutputStream out = open(_file)) {
+                out.write(Utils.uidToBytes(id));
+                for (String parent : new String[] {
+                        commit.getParent(), commit.getSecondParent() }) {
+                    out.write(parent.equals("null")
+                              ? new byte[Utils.UID_BYTES]
+                              : Utils.uidToBytes(parent));
+                }
+                out.writeLong(commit.getMillis());
+                out.writeInt(commit.getOffset());
+                out.writeLong(offset);
+            }
+            List<long[]> tail = tail();
+            try (DataOutputStream out = open(_words)) {
+                for (String word : words(commit.getMessage())) {
+                    long hash = hash(word);
+                    out.writeLong(hash);
+                    out.writeInt(record);
+                    tail.add(new long[] { hash, record });
+                }
+            }
+            if (tail.size() > TAIL) {
+                writeWords();
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns a stream appending to FILE. */
+    private static DataOutputStream open(File file) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(
+            Files.newOutputStream(file.toPath(), StandardOpenOption.CREATE,
+                                  StandardOpenOption.APPEND)));
+    }
+
+    /** Write STR to OUT as an int length and UTF-8 bytes. */
+    private static void writeString(DataOutputStream out, String str)
+        throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Make sure the catalog files exist, rebuilding them if not. */
+    private void ensure() {
+        if (!_file.isFile() || !_text.isFile() || !_words.isFile()) {
+            rebuild();
+        }
+    }
+
+    /** Replace the catalog with one of every commit in the object
+     *  store. */
+    private void rebuild() {
+        invalidate();
+        try {
+            try (DataOutputStream out = open(_text)) {
+                out.flush();
+            }
+            try (DataOutputStream out = open(_file)) {
+                out.write(MAGIC.getBytes(StandardCharsets.UTF_8));
+                out.writeInt(VERSION);
+            }
+            _tail = new ArrayList<>();
+            writeWords();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        ObjectStore store = ObjectStore.of(_dir);
+        for (String id : store.ids(ObjectStore.COMMITS)) {
+            append(id, Commit.decode(Compression.decode(
+                store.read(ObjectStore.COMMITS, id))));
+        }
+    }
+
+    /** Rewrite the word index with every entry sorted, replacing the
+     *  file all at once. */
+    private void writeWords() throws IOException {
+        List<long[]> entries = new ArrayList<>(tail());
+        _tail = new ArrayList<>();
+        if (_words.isFile()) {
+            try (RandomAccessFile in = new RandomAccessFile(_words, "r")) {
+                in.seek(8);
+                int count = in.readInt();
+                for (int i = 0; i < count; i += 1) {
+                    entries.add(new long[] { in.readLong(), in.readInt() });
+                }
+            }
+        }
+        entries.sort((x, y) -> x[0] != y[0] ? Long.compare(x[0], y[0])
+                     : Long.compare(x[1], y[1]));
+        File tmp = File.createTempFile(WORDS, ".tmp", _dir);
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(
+                     tmp.toPath())))) {
+            out.write(WORDS_MAGIC.getBytes(StandardCharsets.UTF_8));
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (long[] entry : entries) {
+                out.writeLong(entry[0]);
+                out.writeInt((int) entry[1]);
+            }
+        }
+        Files.move(tmp.toPath(), _words.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Catalogs already opened, keyed by normalized .gitlet path. */
+    private static final ConcurrentHashMap<String, Catalog> CATALOGS =
+        new ConcurrentHashMap<>();
+
+    /** The .gitlet directory of this catalog. */
+    private final File _dir;
+    /** The record file. */
+    private final File _file;
+    /** The text file. */
+    private final File _text;
+    /** The word index. */
+    private final File _words;
+    /** Appended entries of the word index, or null if not yet read. */
+    private List<long[]> _tail;
+}
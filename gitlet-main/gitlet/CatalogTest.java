@@ -0,0 +1,103 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Catalog class.
+ *  @author Xinyu Fu
+ */
+public class CatalogTest {
+
+    /** Write a commit with message MESSAGE, and a parent so that its
+     *  time is now, to DIR, returning its id. */
+    private static String write(File dir, String message)
+        throws IOException {
+        Commit commit = new Commit(new Commit(message, "null", "null"),
+                                   Utils.sha1(message), "null",
+                                   new HashMap<>());
+        byte[] bytes = commit.encode();
+        String id = Utils.sha1(bytes);
+        ObjectStore store = ObjectStore.of(dir);
+        store.write(ObjectStore.COMMITS, id, bytes);
+        store.looseFile(ObjectStore.COMMITS, id).deleteOnExit();
+        return id;
+    }
+
+    /** Returns the ids of the entries of CATALOG, in order. */
+    private static List<String> ids(Catalog catalog) throws IOException {
+        List<String> result = new ArrayList<>();
+        catalog.forEach(entry -> result.add(entry.id));
+        return result;
+    }
+
+    @Test
+    public void words() {
+        assertEquals(Arrays.asList("fix", "the", "bug", "2"),
+                     new ArrayList<>(Catalog.words("Fix the bug, bug #2!")));
+        assertEquals(Collections.singletonList(""),
+                     new ArrayList<>(Catalog.words(" -- ")));
+    }
+
+    @Test
+    public void findsExactMessages() throws IOException {
+        File dir = TestRepos.tempRepo(ObjectStore.COMMITS);
+        String a = write(dir, "add wug");
+        String b = write(dir, "add notwug");
+        String c = write(dir, "Add wug");
+        String d = write(dir, "...");
+        Catalog catalog = Catalog.of(dir);
+        assertEquals(Collections.singletonList(a), catalog.find("add wug"));
+        assertEquals(Collections.singletonList(c), catalog.find("Add wug"));
+        assertEquals(Collections.singletonList(d), catalog.find("..."));
+        assertEquals(Collections.emptyList(), catalog.find("add"));
+        assertEquals(Collections.emptyList(), catalog.find("wug add"));
+        assertEquals(Arrays.asList(a, b, c, d), ids(catalog));
+        Catalog reread = new Catalog(dir);
+        assertEquals(Collections.singletonList(b),
+                     reread.find("add notwug"));
+    }
+
+    @Test
+    public void rebuildsMissingFiles() throws IOException {
+        File dir = TestRepos.tempRepo(ObjectStore.COMMITS);
+        String a = write(dir, "one");
+        String b = write(dir, "two");
+        Catalog.of(dir).invalidate();
+        Catalog catalog = new Catalog(dir);
+        assertEquals(2, catalog.size());
+        assertEquals(Collections.singletonList(b), catalog.find("two"));
+        List<String> sorted = new ArrayList<>(Arrays.asList(a, b));
+        Collections.sort(sorted);
+        assertEquals(sorted, ids(catalog));
+    }
+
+    @Test
+    public void rewritesLongTails() throws IOException {
+        File dir = TestRepos.tempRepo(ObjectStore.COMMITS);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < Catalog.TAIL / 2 + 10; i += 1) {
+            ids.add(write(dir, "commit number " + i));
+        }
+        ByteBuffer words = ByteBuffer.wrap(
+            Utils.readContents(new File(dir, Catalog.WORDS)));
+        int sorted = words.getInt(8);
+        assertTrue(sorted > Catalog.TAIL);
+        assertTrue(words.capacity() - Catalog.WORDS_HEADER
+                   - sorted * Catalog.ENTRY <= Catalog.TAIL * Catalog.ENTRY);
+        Catalog catalog = new Catalog(dir);
+        for (int i = 0; i < ids.size(); i += 37) {
+            assertEquals(Collections.singletonList(ids.get(i)),
+                         catalog.find("commit number " + i));
+        }
+        assertEquals(ids, ids(catalog));
+    }
+}
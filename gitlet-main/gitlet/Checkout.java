@@ -0,0 +1,132 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/** Replaces the files of one commit in the working directory with those
+ *  of another.  The whole change is planned before anything is written:
+ *  the files to delete, the files to write, and any untracked file that
+ *  a write would clobber.  Only a plan without such a conflict is run,
+ *  and its writes are done on Workers.
+ *  @author Xinyu Fu
+ */
+class Checkout {
+
+    /** A checkout in the working directory ROOT from the files CURRENT
+     *  of the head commit to the files TARGET, both mapping names to
+     *  blob ids.  HASHER gives the id of a working file by name. */
+    Checkout(File root, Map<String, String> current,
+             Map<String, String> target, Workers.Task<String, String> hasher) {
+        _root = root;
+        _current = current;
+        _target = target;
+        _hasher = hasher;
+    }
+
+    /** Work out which files to delete and write.  Only files whose blob
+     *  ids differ between the two commits are looked at, so files the
+     *  commits share are neither read nor written.  Of those, a tracked
+     *  file is deleted if TARGET lacks it, and rewritten if it is
+     *  unmodified; a missing file is written.  Returns the name of the
+     *  first untracked file that would be overwritten, or null if there
+     *  is none. */
+    String plan() throws Exception {
+        _deletes.clear();
+        _writes.clear();
+        String conflict = null;
+        List<String> names = changed();
+        List<String> ids = Workers.map(names, name ->
+            file(name).isFile() ? _hasher.apply(name) : null);
+        for (int i = 0; i < names.size(); i += 1) {
+            String name = names.get(i), id = ids.get(i);
+            if (id == null) {
+                if (_target.containsKey(name)) {
+                    _writes.add(name);
+                }
+            } else if (!_current.containsKey(name)) {
+                if (conflict == null) {
+                    conflict = name;
+                }
+            } else if (!_target.containsKey(name)) {
+                _deletes.add(name);
+            } else if (id.equals(_current.get(name))) {
+                _writes.add(name);
+            }
+        }
+        return conflict;
+    }
+
+    /** Carry out the plan: delete, then write the files in parallel. */
+    void run() throws Exception {
+        for (String name : _deletes) {
+            File file = file(name);
+            Files.deleteIfExists(file.toPath());
+            pruneParents(file);
+        }
+        Workers.map(_writes, name -> {
+            Blobs.restore(_target.get(name), file(name));
+            return name;
+        });
+    }
+
+    /** Returns the sorted names of the files whose ids differ between
+     *  the current and target commits. */
+    List<String> changed() {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, String> file : _target.entrySet()) {
+            if (!file.getValue().equals(_current.get(file.getKey()))) {
+                result.add(file.getKey());
+            }
+        }
+        for (String name : _current.keySet()) {
+            if (!_target.containsKey(name)) {
+                result.add(name);
+            }
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Returns the names of the files the plan deletes. */
+    List<String> deletes() {
+        return _deletes;
+    }
+
+    /** Returns the names of the files the plan writes. */
+    List<String> writes() {
+        return _writes;
+    }
+
+    /** Returns the working file named NAME. */
+    private File file(String name) {
+        return new File(_root, name);
+    }
+
+    /** Delete the directories above FILE, up to the working directory,
+     *  that are left empty. */
+    private void pruneParents(File file) {
+        File root = _root.getAbsoluteFile();
+        for (File dir = file.getAbsoluteFile().getParentFile();
+             dir != null && !dir.equals(root) && dir.delete();
+             dir = dir.getParentFile()) {
+            continue;
+        }
+    }
+
+    /** The working directory. */
+    private final File _root;
+    /** Files of the head commit. */
+    private final Map<String, String> _current;
+    /** Files of the commit checked out. */
+    private final Map<String, String> _target;
+    /** Gives the ids of working files. */
+    private final Workers.Task<String, String> _hasher;
+    /** Files to delete, in order. */
+    private final List<String> _deletes = new ArrayList<>();
+    /** Files to write, in order. */
+    private final List<String> _writes = new ArrayList<>();
+}
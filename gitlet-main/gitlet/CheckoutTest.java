@@ -0,0 +1,116 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Checkout class.
+ *  @author Xinyu Fu
+ */
+public class CheckoutTest {
+
+    /** Returns a fresh temporary directory holding a working file, with
+     *  contents its own name, for each name in NAMES. */
+    private static File workingDir(String... names) throws IOException {
+        File dir = Files.createTempDirectory("gitlet-checkout").toFile();
+        dir.deleteOnExit();
+        for (String name : names) {
+            File file = new File(dir, name);
+            Utils.writeContents(file, name);
+            file.deleteOnExit();
+        }
+        return dir;
+    }
+
+    @Test
+    public void onlyChangedFilesArePlanned() throws Exception {
+        HashMap<String, String> current = new HashMap<>();
+        for (int i = 0; i < 1000; i += 1) {
+            current.put("f" + i, "f" + i);
+        }
+        HashMap<String, String> target = new HashMap<>(current);
+        target.put("f1", "new");
+        target.put("g", "g");
+        target.remove("f2");
+        File dir = workingDir("f1", "f2");
+        AtomicInteger hashed = new AtomicInteger();
+        Checkout checkout = new Checkout(dir, current, target, name -> {
+            hashed.incrementAndGet();
+            return name;
+        });
+        assertNull(checkout.plan());
+        assertEquals(Arrays.asList("f1", "f2", "g"), checkout.changed());
+        assertEquals(2, hashed.get());
+        assertEquals(Arrays.asList("f2"), checkout.deletes());
+        assertEquals(Arrays.asList("f1", "g"), checkout.writes());
+    }
+
+    @Test
+    public void packedBlobsRestoreInParallel() throws Exception {
+        File repo = TestRepos.tempRepo(ObjectStore.BLOBS);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 32; i += 1) {
+            ids.add(Blobs.storeRaw(ObjectStore.of(repo), ("file " + i)
+                                   .getBytes(StandardCharsets.UTF_8)));
+        }
+        ObjectStore.of(repo).repack();
+        File dir = workingDir();
+        for (int round = 0; round < 200; round += 1) {
+            ObjectStore.forgetAll();
+            ObjectStore store = ObjectStore.of(repo);
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicInteger next = new AtomicInteger();
+            AtomicReference<Exception> failure = new AtomicReference<>();
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < 8; t += 1) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                        for (int i = next.getAndIncrement(); i < ids.size();
+                             i = next.getAndIncrement()) {
+                            Blobs.restore(store, ids.get(i),
+                                          new File(dir, "f" + i));
+                        }
+                    } catch (Exception excp) {
+                        failure.compareAndSet(null, excp);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            start.countDown();
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            assertNull(failure.get());
+            for (int i = 0; i < ids.size(); i += 1) {
+                assertEquals("file " + i, Utils.readContentsAsString(
+                    new File(dir, "f" + i)));
+            }
+        }
+    }
+
+    @Test
+    public void untrackedAndModifiedFiles() throws Exception {
+        HashMap<String, String> current = new HashMap<>();
+        current.put("a", "old");
+        HashMap<String, String> target = new HashMap<>();
+        target.put("a", "new");
+        target.put("b", "b");
+        Checkout checkout = new Checkout(workingDir("a", "b"), current,
+                                         target, name -> name);
+        assertEquals("b", checkout.plan());
+        assertTrue(checkout.writes().isEmpty());
+    }
+}
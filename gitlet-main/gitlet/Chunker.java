@@ -0,0 +1,106 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/** Splits a stream of bytes into chunks at points chosen by its contents,
+ *  in the manner of FastCDC, so that an edit to a large file changes only
+ *  the chunks around it and the rest keep their bytes, and so their ids.
+ *  A gear hash is rolled over the bytes of a chunk, starting MIN_SIZE
+ *  bytes in, and the chunk ends after the first byte at which the top
+ *  bits of the hash selected by the mask are all zero.  Before AVG_SIZE
+ *  the mask has more bits than after it, which draws the sizes towards
+ *  AVG_SIZE, and no chunk is longer than MAX_SIZE.  The stream is read
+ *  through one buffer of twice MAX_SIZE bytes.
+ *  @author Xinyu Fu
+ */
+class Chunker {
+
+    /** Shortest chunk, except for the last. */
+    static final int MIN_SIZE = 1 << 12;
+    /** Usual size of a chunk. */
+    static final int AVG_SIZE = 1 << 14;
+    /** Longest chunk. */
+    static final int MAX_SIZE = 1 << 16;
+    /** Mask of the hash before AVG_SIZE: 16 bits, two more than the 14
+     *  of AVG_SIZE. */
+    static final long MASK_SMALL = 0xffffL << 48;
+    /** Mask of the hash after AVG_SIZE: 12 bits, two fewer. */
+    static final long MASK_LARGE = 0xfffL << 52;
+
+    /** Receives the chunks of a stream in order. */
+    interface Sink {
+        /** Consume the chunk held by the LENGTH bytes of BUF from
+         *  OFFSET, which are only valid during the call. */
+        void chunk(byte[] buf, int offset, int length) throws IOException;
+    }
+
+    /** Pass the chunks of everything IN holds to SINK. */
+    static void split(InputStream in, Sink sink) throws IOException {
+        byte[] buf = new byte[2 * MAX_SIZE];
+        int start = 0, end = 0;
+        boolean eof = false;
+        while (true) {
+            if (!eof && end - start < MAX_SIZE) {
+                System.arraycopy(buf, start, buf, 0, end - start);
+                end -= start;
+                start = 0;
+                while (end < buf.length) {
+                    int n = in.read(buf, end, buf.length - end);
+                    if (n < 0) {
+                        eof = true;
+                        break;
+                    }
+                    end += n;
+                }
+            }
+            if (start == end) {
+                return;
+            }
+            int length = cut(buf, start, end - start);
+            sink.chunk(buf, start, length);
+            start += length;
+        }
+    }
+
+    /** Returns the length of the chunk at the start of the LENGTH bytes
+     *  of BUF from OFFSET, which are all that remain or at least
+     *  MAX_SIZE. */
+    static int cut(byte[] buf, int offset, int length) {
+        if (length <= MIN_SIZE) {
+            return length;
+        }
+        int normal = Math.min(AVG_SIZE, length),
+            limit = Math.min(MAX_SIZE, length);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            hash = (hash << 1) + GEAR[buf[offset + i] & 0xff];
+            if ((hash & MASK_SMALL) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; i += 1) {
+            hash = (hash << 1) + GEAR[buf[offset + i] & 0xff];
+            if ((hash & MASK_LARGE) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+    /** Random values added to the hash for each byte value, fixed so
+     *  that every repository cuts the same bytes at the same places. */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        long seed = 0x6769746c6574L;
+        for (int i = 0; i < GEAR.length; i += 1) {
+            seed += 0x9e3779b97f4a7c15L;
+            long z = seed;
+            z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+            z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+            GEAR[i] = z ^ (z >>> 31);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Chunker class.
+ *  @author Xinyu Fu
+ */
+public class ChunkerTest {
+
+    /** Returns N pseudo-random bytes. */
+    private static byte[] random(int n) {
+        byte[] result = new byte[n];
+        new Random(61).nextBytes(result);
+        return result;
+    }
+
+    /** Returns the chunks of DATA. */
+    private static List<String> chunks(byte[] data) throws IOException {
+        List<String> result = new ArrayList<>();
+        Chunker.split(new ByteArrayInputStream(data),
+            (buf, offset, length) -> {
+                byte[] chunk = new byte[length];
+                System.arraycopy(buf, offset, chunk, 0, length);
+                result.add(Utils.sha1(chunk));
+                assertTrue(length <= Chunker.MAX_SIZE);
+            });
+        return result;
+    }
+
+    @Test
+    public void sizesAreBounded() throws IOException {
+        byte[] data = random(1 << 20);
+        int[] total = { 0 }, count = { 0 };
+        Chunker.split(new ByteArrayInputStream(data),
+            (buf, offset, length) -> {
+                assertTrue(length >= Chunker.MIN_SIZE
+                           || total[0] + length == data.length);
+                assertTrue(length <= Chunker.MAX_SIZE);
+                for (int i = 0; i < length; i += 1) {
+                    assertEquals(data[total[0] + i], buf[offset + i]);
+                }
+                total[0] += length;
+                count[0] += 1;
+            });
+        assertEquals(data.length, total[0]);
+        assertTrue(count[0] > data.length / Chunker.MAX_SIZE);
+        assertTrue(count[0] < data.length / Chunker.MIN_SIZE);
+        assertEquals(0, chunks(new byte[0]).size());
+        assertEquals(1, chunks(new byte[10]).size());
+    }
+
+    @Test
+    public void insertionChangesFewChunks() throws IOException {
+        byte[] data = random(1 << 20);
+        byte[] edited = new byte[data.length + 100];
+        System.arraycopy(data, 0, edited, 0, 500000);
+        System.arraycopy(data, 500000, edited, 500100, data.length - 500000);
+        List<String> before = chunks(data);
+        HashSet<String> after = new HashSet<>(chunks(edited));
+        int lost = 0;
+        for (String chunk : before) {
+            if (!after.contains(chunk)) {
+                lost += 1;
+            }
+        }
+        assertTrue(lost >= 1);
+        assertTrue(lost <= 3);
+    }
+}
@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/** Runs a gitlet command through the Daemon serving the current
+ *  directory, if there is one, and directly otherwise.  It loads as
+ *  little as it can before handing the command over.
+ *  @author Xinyu Fu
+ */
+public class Client {
+
+    /** Milliseconds allowed for reaching the daemon. */
+    static final int CONNECT_TIMEOUT = 1000;
+
+    /** Usage: java gitlet.Client ARGS, where ARGS is as for Main. */
+    public static void main(String... args) throws Exception {
+        int status = -1;
+        if (args.length > 0 && !Daemon.LOCAL.contains(args[0])) {
+            status = run(args);
+        }
+        if (status < 0) {
+            Main.main(args);
+        } else if (status > 0) {
+            System.exit(status);
+        }
+    }
+
+    /** Run ARGS on the daemon of the current directory, copying its
+     *  output here.  Returns its exit status, or -1 if it was not run
+     *  because no daemon would take it. */
+    static int run(String[] args) throws IOException {
+        File file = new File(".gitlet", Daemon.FILE);
+        if (!file.isFile()) {
+            return -1;
+        }
+        String[] words;
+        int port;
+        try {
+            words = Utils.readContentsAsString(file).trim().split(" ");
+            port = Integer.parseInt(words[0]);
+        } catch (IllegalArgumentException excp) {
+            return -1;
+        }
+        if (words.length != 2) {
+            return -1;
+        }
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), port), CONNECT_TIMEOUT);
+        } catch (IOException excp) {
+            socket.close();
+            return -1;
+        }
+        try (Socket connection = socket;
+             DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(connection.getInputStream(),
+                                         Blobs.BUFFER));
+             DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(connection.getOutputStream()))) {
+            String cwd =
+                new File(System.getProperty("user.dir")).getCanonicalPath();
+            Protocol.write(out, Daemon.RUN, Protocol.payload(o -> {
+                Protocol.writeString(o, words[1]);
+                Protocol.writeString(o, cwd);
+                o.writeInt(args.length);
+                for (String arg : args) {
+                    Protocol.writeString(o, arg);
+                }
+            }));
+            out.flush();
+            Protocol.Frame reply = Protocol.read(in);
+            if (reply.type == Protocol.ERROR) {
+                return -1;
+            }
+            ByteBuffer done = reply.expect(Daemon.DONE).payload;
+            int status = done.getInt();
+            copy(done, System.out);
+            copy(done, System.err);
+            return status;
+        }
+    }
+
+    /** Write the bytes at the front of BUF, an int length and that many
+     *  bytes, to OUT. */
+    private static void copy(ByteBuffer buf, PrintStream out) {
+        int length = buf.getInt();
+        out.write(buf.array(), buf.position(), length);
+        buf.position(buf.position() + length);
+        out.flush();
+    }
+}
@@ -1,12 +1,32 @@
 package gitlet;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
 import java.io.Serializable;
 import java.util.HashMap;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
 /** make a commit.
+ *  A commit is stored in a compact binary form: the bytes 'G' 'C' and
+ *  the format version, the number of parents and their 20-byte ids,
+ *  the time in epoch milliseconds and the zone offset in minutes, the
+ *  message, and the files in name order, each a name and a 20-byte
+ *  blob id.  Strings are an int length and UTF-8 bytes.  Version 2
+ *  replaces the files with the 20-byte id of the commit's top Tree, so
+ *  that a commit stores only the trees its changes touched; every
+ *  commit but the initial one is made that way, and the files of one
+ *  are read from its trees when first asked for.  Commits
+ *  written before this form existed are Java-serialized objects with
+ *  the date already formatted; they are still read, and keep that form
+ *  when they are rewritten, since their time cannot be recovered.
  *  @author Xinyu Fu
  *
  *  */
@@ -22,54 +42,252 @@ public class Commit implements Serializable {
         _secondParent = secondParent;
         _parent = parent;
         _message = message;
-        SimpleDateFormat formatter = new
-                SimpleDateFormat("E MMM dd hh:mm:ss yyyy Z");
         if (parent.equals("null")) {
-            _date = formatter.format(new Date(0));
+            _millis = 0;
         } else {
-            _date = formatter.format(new Date(System.currentTimeMillis()));
+            _millis = System.currentTimeMillis();
         }
+        _offset = TimeZone.getDefault().getOffset(_millis) / MINUTE;
         if (!parent.equals("null")) {
             File parentFile = Utils.join(".gitlet/commit/" + parent);
-            Commit parentCommit = Utils.readObject(parentFile, Commit.class);
-            List<String> filesToAdd =
-                    Utils.plainFilenamesIn(".gitlet/additionStage");
-            List<String> filesToRemove =
-                    Utils.plainFilenamesIn(".gitlet/removalStage");
-            this._files = parentCommit._files;
-            if (filesToAdd.size() != 0) {
-                for (String file: filesToAdd) {
-                    File thisFile = Utils.join(".gitlet/additionStage/" + file);
-                    String content = Utils.readContentsAsString(thisFile);
-                    byte[] ser = Utils.serialize(content);
-                    String sha1 = Utils.sha1(ser);
-                    File blobFile = new File(".gitlet/blobs/" + sha1);
-                    blobFile.createNewFile();
-                    Utils.writeObject(blobFile, content);
-                    if (hasFile(file, parentCommit)) {
-                        this._files.replace(file, sha1);
-                    } else {
-                        this._files.put(file, sha1);
-                    }
-                    thisFile.delete();
-                }
+            Commit parentCommit = Commit.read(parentFile);
+            Map<String, String> changes = Stage.local().changes();
+            Stage.local().clear();
+            _store = ObjectStore.local();
+            String base = parentCommit._tree;
+            if (base == null) {
+                base = Tree.write(_store, parentCommit.getFiles());
             }
-            if (filesToRemove.size() != 0) {
-                for (String files: filesToRemove) {
-                    this._files.remove(files);
-                    File fileToRemove =
-                            Utils.join(".gitlet/removalStage/" + files);
-                    fileToRemove.delete();
-                }
+            _tree = Tree.update(_store, base, changes);
+            if (parentCommit._table != null) {
+                _table = parentCommit._table.with(changes);
             }
         } else {
-            this._files = new HashMap<>();
+            _table = FileTable.EMPTY;
+        }
+    }
+    /** a copy of a commit with new parents and files.
+     * @param original the commit copied.
+     * @param parent new parent.
+     * @param secondParent new second parent.
+     * @param files new files.
+     */
+    Commit(Commit original, String parent, String secondParent,
+           HashMap<String, String> files) {
+        _message = original._message;
+        _date = original._date;
+        _millis = original._millis;
+        _offset = original._offset;
+        _parent = parent;
+        _secondParent = secondParent;
+        _files = files;
+    }
+    /** a commit to be filled in by decode.*/
+    private Commit() {
+    }
+    /** read a stored commit.  Commits are never changed once stored,
+     *  so the most recently read ones are kept by file and returned
+     *  again without decoding, as long as the repository still holds
+     *  them, loose or packed; callers must not change what they get.
+     * @param file the file holding the commit, named by its id, in the
+     *             commit directory of a repository, whose trees it uses.
+     * @return the commit. */
+    static Commit read(File file) {
+        String key = file.getAbsolutePath();
+        Commit result;
+        synchronized (CACHE) {
+            result = CACHE.get(key);
+        }
+        File dir = file.getAbsoluteFile().getParentFile().getParentFile();
+        ObjectStore store = ObjectStore.of(dir);
+        if (result != null
+            && store.contains(ObjectStore.COMMITS, file.getName())) {
+            return result;
         }
+        result = decode(Compression.decode(Utils.readContents(file)),
+                        store);
+        if (Utils.isUid(file.getName())) {
+            synchronized (CACHE) {
+                CACHE.put(key, result);
+            }
+        }
+        return result;
     }
-    /** file name as key, sha 1 id of file as value.
-     * @return return a hashmap.*/
-    public HashMap<String, String> getFiles() {
-        return _files;
+    /** decode a commit in any stored form whose trees are in the current
+     *  repository.
+     * @param bytes the stored form, uncompressed.
+     * @return the commit. */
+    static Commit decode(byte[] bytes) {
+        return decode(bytes, ObjectStore.local());
+    }
+    /** decode a commit in any stored form.
+     * @param bytes the stored form, uncompressed.
+     * @param store where its trees are.
+     * @return the commit. */
+    static Commit decode(byte[] bytes, ObjectStore store) {
+        if (bytes.length >= 2 && bytes[0] == (byte) 0xac
+                && bytes[1] == (byte) 0xed) {
+            try (ObjectInputStream in = new ObjectInputStream(
+                    new ByteArrayInputStream(bytes))) {
+                return (Commit) in.readObject();
+            } catch (IOException | ClassNotFoundException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        byte version = bytes.length < 3 ? 0 : bytes[2];
+        if (bytes.length < 3 || bytes[0] != MAGIC0 || bytes[1] != MAGIC1
+                || version != VERSION && version != TREE_VERSION) {
+            throw new IllegalArgumentException("unknown commit format");
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        in.position(3);
+        Commit result = new Commit();
+        int parents = in.get();
+        result._parent = parents > 0 ? readId(in) : "null";
+        result._secondParent = parents > 1 ? readId(in) : "null";
+        result._millis = in.getLong();
+        result._offset = in.getInt();
+        result._message = readString(in);
+        if (version == TREE_VERSION) {
+            result._tree = readId(in);
+            result._store = store;
+            return result;
+        }
+        FileTable files = FileTable.EMPTY;
+        for (int count = in.getInt(); count > 0; count -= 1) {
+            String name = readString(in);
+            files = files.with(name, readId(in));
+        }
+        result._table = files;
+        return result;
+    }
+    /** the stored form of this commit, uncompressed.
+     * @return the bytes whose sha1 is this commit's id. */
+    byte[] encode() {
+        if (_date != null) {
+            return Utils.serialize(this);
+        }
+        if (_tree != null) {
+            return encodeTree();
+        }
+        FileTable files = getFiles();
+        String[] names = files.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        byte[][] encodedNames = new byte[names.length][];
+        byte[] message = _message.getBytes(StandardCharsets.UTF_8);
+        int parents = _parent.equals("null") ? 0
+                : _secondParent.equals("null") ? 1 : 2;
+        int size = FIXED_SIZE + parents * Utils.UID_BYTES + message.length;
+        for (int i = 0; i < names.length; i += 1) {
+            encodedNames[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            size += 4 + encodedNames[i].length + Utils.UID_BYTES;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.put(MAGIC0).put(MAGIC1).put(VERSION).put((byte) parents);
+        if (parents > 0) {
+            out.put(Utils.uidToBytes(_parent));
+        }
+        if (parents > 1) {
+            out.put(Utils.uidToBytes(_secondParent));
+        }
+        out.putLong(_millis).putInt(_offset);
+        out.putInt(message.length).put(message);
+        out.putInt(names.length);
+        for (int i = 0; i < names.length; i += 1) {
+            out.putInt(encodedNames[i].length).put(encodedNames[i]);
+            out.put(Utils.uidToBytes(files.get(names[i])));
+        }
+        return out.array();
+    }
+    /** the stored form of a commit with a tree, uncompressed.
+     * @return the bytes in version 2. */
+    private byte[] encodeTree() {
+        byte[] message = _message.getBytes(StandardCharsets.UTF_8);
+        int parents = _parent.equals("null") ? 0
+                : _secondParent.equals("null") ? 1 : 2;
+        ByteBuffer out = ByteBuffer.allocate(FIXED_SIZE - 4 + message.length
+                + (parents + 1) * Utils.UID_BYTES);
+        out.put(MAGIC0).put(MAGIC1).put(TREE_VERSION).put((byte) parents);
+        if (parents > 0) {
+            out.put(Utils.uidToBytes(_parent));
+        }
+        if (parents > 1) {
+            out.put(Utils.uidToBytes(_secondParent));
+        }
+        out.putLong(_millis).putInt(_offset);
+        out.putInt(message.length).put(message);
+        out.put(Utils.uidToBytes(_tree));
+        return out.array();
+    }
+    /** store this commit.
+     * @param store where to store it.
+     * @return its id. */
+    String store(ObjectStore store) {
+        byte[] bytes = encode();
+        String id = Utils.sha1(bytes);
+        store.write(ObjectStore.COMMITS, id, Compression.encode(bytes,
+                Compression.codecOf(store.dir())));
+        return id;
+    }
+    /** read a 20-byte id.
+     * @param in the bytes.
+     * @return the id in hex. */
+    private static String readId(ByteBuffer in) {
+        String id = Utils.uidFromBytes(in.array(), in.position());
+        in.position(in.position() + Utils.UID_BYTES);
+        return id;
+    }
+    /** read a length-prefixed string.
+     * @param in the bytes.
+     * @return the string. */
+    private static String readString(ByteBuffer in) {
+        int len = in.getInt();
+        String result = new String(in.array(), in.position(), len,
+                StandardCharsets.UTF_8);
+        in.position(in.position() + len);
+        return result;
+    }
+    /** file name as key, sha 1 id of file as value.  For a commit with
+     *  a tree these are worked out the first time: from the table of
+     *  its parent and the trees that differ, if the parent is cached
+     *  with its table, and otherwise by reading all its trees.
+     * @return the files, which share what they can with the parent's.*/
+    public synchronized FileTable getFiles() {
+        if (_table != null) {
+            return _table;
+        }
+        if (_files != null) {
+            _table = FileTable.of(_files);
+            return _table;
+        }
+        Commit parent = null;
+        if (!_parent.equals("null")) {
+            synchronized (CACHE) {
+                parent = CACHE.get(new File(_store.dir(),
+                        ObjectStore.COMMITS + "/" + _parent)
+                        .getAbsolutePath());
+            }
+        }
+        FileTable base = parent == null ? null : parent._table;
+        if (base != null && parent._tree != null) {
+            HashMap<String, String[]> diff = new HashMap<>();
+            Tree.diff(_store, parent._tree, _tree, "", diff);
+            HashMap<String, String> changes = new HashMap<>();
+            for (Map.Entry<String, String[]> change : diff.entrySet()) {
+                changes.put(change.getKey(), change.getValue()[1]);
+            }
+            _table = base.with(changes);
+        } else {
+            HashMap<String, String> files = new HashMap<>();
+            Tree.flatten(_store, _tree, "", files);
+            _table = FileTable.of(files);
+        }
+        return _table;
+    }
+    /** get the top tree.
+     * @return its id, or null if this commit lists its files. */
+    String getTree() {
+        return _tree;
     }
 
     /** whether this commit contains that file.
@@ -77,7 +295,7 @@ public class Commit implements Serializable {
      * @param commit a commit.
      * @return return whether this commit has this file. */
     public boolean hasFile(String file, Commit commit) {
-        return commit._files.get(file) != null;
+        return commit.getFiles().get(file) != null;
     }
     /** get the second parent.
      * @return  return 2nd parent. */
@@ -92,21 +310,76 @@ public class Commit implements Serializable {
     /** get the date.
      * @return commit date. */
     public String getDate() {
-        return this._date;
+        if (_date != null) {
+            return _date;
+        }
+        SimpleDateFormat formatter = new
+                SimpleDateFormat("E MMM dd hh:mm:ss yyyy Z");
+        formatter.setTimeZone(new SimpleTimeZone(_offset * MINUTE, ""));
+        return formatter.format(new Date(_millis));
+    }
+    /** get the time, which is 0 for a commit stored by Java
+     *  serialization.
+     * @return commit time in epoch milliseconds. */
+    long getMillis() {
+        return _millis;
+    }
+    /** get the zone offset.
+     * @return offset of the commit's zone in minutes. */
+    int getOffset() {
+        return _offset;
     }
     /** get message.
      * @return commit message. */
     public String getMessage() {
         return this._message;
     }
+    /** the version computed for this class before it was pinned, so
+     *  that existing commits stay readable.*/
+    private static final long serialVersionUID = -2574928064089522321L;
+    /** first magic byte of a stored commit.*/
+    static final byte MAGIC0 = 'G';
+    /** second magic byte of a stored commit.*/
+    static final byte MAGIC1 = 'C';
+    /** version of the stored form.*/
+    static final byte VERSION = 1;
+    /** version of the stored form with a tree.*/
+    static final byte TREE_VERSION = 2;
+    /** bytes of the stored form that do not depend on its contents:
+     *  header, parent count, time, zone, and two lengths.*/
+    private static final int FIXED_SIZE = 3 + 1 + 8 + 4 + 4 + 4;
+    /** milliseconds in a minute.*/
+    private static final int MINUTE = 60 * 1000;
+    /** most commits kept by read.*/
+    static final int CACHE_SIZE = 512;
+    /** commits recently read, by file, least recently used first.*/
+    private static final LinkedHashMap<String, Commit> CACHE =
+        new LinkedHashMap<String, Commit>(CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Commit> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
     /** the second parent if necessary.*/
     private String _secondParent;
-    /**  file name as key, sha 1 id of file as value.*/
+    /** the files of a Java-serialized commit or a copy, which keeps
+     *  this field for that form; null otherwise.*/
     private HashMap<String, String> _files;
+    /** the files, once worked out.*/
+    private transient FileTable _table;
+    /** id of the top tree, or null if this commit lists its files.*/
+    private transient String _tree;
+    /** where the trees of this commit are.*/
+    private transient ObjectStore _store;
     /** sha 1 id of its parent.*/
     private String _parent;
-    /** parent of this commit.*/
+    /** formatted date of a commit stored by Java serialization, or null.*/
     private String _date;
+    /** time of the commit in epoch milliseconds.*/
+    private transient long _millis;
+    /** zone offset of the commit in minutes.*/
+    private transient int _offset;
     /** message of the commit.*/
     private String _message;
 
@@ -0,0 +1,83 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.HashMap;
+
+/** Compares decoding and encoding commits in the binary form against
+ *  Java serialization.  Run with
+ *      java gitlet.CommitBenchmark [FILES]
+ *  where FILES is the number of files per commit (default 100).  Each
+ *  measurement warms up first and reports the best of several rounds.
+ *  @author Xinyu Fu
+ */
+class CommitBenchmark {
+
+    /** Rounds timed per measurement. */
+    private static final int ROUNDS = 5;
+    /** Operations per round. */
+    private static final int OPS = 20000;
+
+    /** Run the benchmark; ARGS may give the number of files. */
+    public static void main(String... args) throws IOException {
+        int nfiles = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        HashMap<String, String> files = new HashMap<>();
+        for (int i = 0; i < nfiles; i += 1) {
+            files.put("dir/file" + i + ".txt", Utils.sha1("contents" + i));
+        }
+        Commit commit = new Commit(new Commit("a commit message", "null",
+                                              "null"),
+                                   Utils.sha1("p"), "null", files);
+        byte[] serialized = Utils.serialize(commit);
+        byte[] binary = commit.encode();
+        System.out.printf("%d files: serialized %d bytes, binary %d "
+                          + "bytes%n", nfiles, serialized.length,
+                          binary.length);
+        report("decode serialized", () -> readSerialized(serialized));
+        report("decode binary", () -> Commit.decode(binary));
+        report("encode serialized", () -> Utils.serialize(commit));
+        report("encode binary", () -> commit.encode());
+    }
+
+    /** One benchmarked operation. */
+    private interface Op {
+        /** Perform the operation, returning its result. */
+        Object run() throws IOException;
+    }
+
+    /** Time OP and print its cost per operation under NAME. */
+    private static void report(String name, Op op) throws IOException {
+        time(op);
+        long best = Long.MAX_VALUE;
+        for (int r = 0; r < ROUNDS; r += 1) {
+            best = Math.min(best, time(op));
+        }
+        System.out.printf("%-18s %10.1f ns/op%n", name,
+                          (double) best / OPS);
+    }
+
+    /** Returns the nanoseconds taken by OPS runs of OP. */
+    private static long time(Op op) throws IOException {
+        int sink = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < OPS; i += 1) {
+            sink += op.run().hashCode() & 1;
+        }
+        long elapsed = System.nanoTime() - start;
+        if (sink < 0) {
+            System.out.println(sink);
+        }
+        return elapsed;
+    }
+
+    /** Returns the commit Java-serialized in BYTES. */
+    private static Commit readSerialized(byte[] bytes) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(
+                 new ByteArrayInputStream(bytes))) {
+            return (Commit) in.readObject();
+        } catch (ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -0,0 +1,490 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** The shape of the history of one repository, kept in
+ *  .gitlet/commit-graph so that walking history never needs to read
+ *  commit objects.  The file is a header followed by one fixed-size
+ *  record per commit, in the order the commits were added: the commit
+ *  id, the positions of its parents in the file (or -1), and its
+ *  generation number, which is one more than the largest generation of
+ *  its parents.  Records are only ever appended, and every commit's
+ *  parents come before it.
+ *  @author Xinyu Fu
+ */
+class CommitGraph {
+
+    /** Name of the graph file within a .gitlet directory. */
+    static final String FILE = "commit-graph";
+    /** Magic number at the start of the graph file. */
+    static final String MAGIC = "GCGR";
+    /** Current version of the graph file. */
+    static final int VERSION = 1;
+    /** Size of the header: magic and version. */
+    static final int HEADER = 8;
+    /** Size of one record: id, two parents and generation. */
+    static final int RECORD = Utils.UID_BYTES + 3 * 4;
+    /** Parent position of a commit without that parent. */
+    static final int NONE = -1;
+    /** Mark of a commit reachable from the first head in mergeBases. */
+    private static final int SIDE_A = 1;
+    /** Mark of a commit reachable from the second head in mergeBases. */
+    private static final int SIDE_B = 2;
+    /** Mark of a commit below a common ancestor in mergeBases. */
+    private static final int STALE = 4;
+    /** Number of commits for which room is first made in memory. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** The graph of the .gitlet directory GITLETDIR. */
+    CommitGraph(File gitletDir) {
+        _dir = gitletDir;
+        _file = new File(gitletDir, FILE);
+        load();
+    }
+
+    /** Returns the graph of the .gitlet directory in the current
+     *  directory. */
+    static CommitGraph local() {
+        return of(new File(".gitlet"));
+    }
+
+    /** Forget every graph already opened, so that each is read again
+     *  when next used. */
+    static void forgetAll() {
+        GRAPHS.clear();
+    }
+
+    /** Returns the graph of the .gitlet directory GITLETDIR. */
+    static CommitGraph of(File gitletDir) {
+        String key = gitletDir.getAbsoluteFile().toPath().normalize()
+            .toString();
+        return GRAPHS.computeIfAbsent(key, k -> new CommitGraph(gitletDir));
+    }
+
+    /** Returns the number of commits in the graph. */
+    int size() {
+        return _ids.size();
+    }
+
+    /** Returns the position of commit ID, adding it and any of its
+     *  ancestors that are missing from the graph by reading their
+     *  commit objects. */
+    int position(String id) {
+        Integer pos = _positions.get(id);
+        if (pos == null) {
+            ensure(id);
+            pos = _positions.get(id);
+        }
+        return pos;
+    }
+
+    /** Returns true iff commit ID is already in the graph. */
+    boolean contains(String id) {
+        return _positions.containsKey(id);
+    }
+
+    /** Returns the id of the commit at position POS. */
+    String id(int pos) {
+        return _ids.get(pos);
+    }
+
+    /** Returns the position of the first parent of the commit at POS,
+     *  or NONE. */
+    int parent(int pos) {
+        return _parents[2 * pos];
+    }
+
+    /** Returns the position of the second parent of the commit at POS,
+     *  or NONE. */
+    int secondParent(int pos) {
+        return _parents[2 * pos + 1];
+    }
+
+    /** Returns the generation number of the commit at POS. */
+    int generation(int pos) {
+        return _generations[pos];
+    }
+
+    /** Record commit ID, whose parents are PARENT and SECONDPARENT
+     *  ("null" when absent), appending it to the graph file.  The
+     *  parents are added first if they are missing.  Does nothing if ID
+     *  is already recorded. */
+    void add(String id, String parent, String secondParent) {
+        if (contains(id)) {
+            return;
+        }
+        int first = parent.equals("null") ? NONE : position(parent);
+        int second = secondParent.equals("null")
+            ? NONE : position(secondParent);
+        int generation = 1;
+        for (int p : new int[] { first, second }) {
+            if (p != NONE) {
+                generation = Math.max(generation, generation(p) + 1);
+            }
+        }
+        append(id, first, second, generation);
+    }
+
+    /** Returns the ids of the first-parent chain starting at commit ID,
+     *  starting with ID itself. */
+    List<String> firstParents(String id) {
+        List<String> result = new ArrayList<>();
+        for (int pos = position(id); pos != NONE; pos = parent(pos)) {
+            result.add(id(pos));
+        }
+        return result;
+    }
+
+    /** Returns every ancestor of commit ID, including ID itself, mapped
+     *  to its distance in commits from ID along the shortest path. */
+    HashMap<String, Integer> ancestors(String id) {
+        HashMap<String, Integer> result = new HashMap<>();
+        int start = position(id);
+        int[] distance = new int[size()];
+        Arrays.fill(distance, -1);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        distance[start] = 0;
+        queue.add(start);
+        while (!queue.isEmpty()) {
+            int pos = queue.poll();
+            result.put(id(pos), distance[pos]);
+            for (int p : new int[] { parent(pos), secondParent(pos) }) {
+                if (p != NONE && distance[p] < 0) {
+                    distance[p] = distance[pos] + 1;
+                    queue.add(p);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Returns the best common ancestors of commits A and B: those
+     *  common ancestors that are not ancestors of another common
+     *  ancestor, highest generation first.  There is more than one only
+     *  after criss-cross merges.  Both histories are walked together,
+     *  newest generation first, marking each commit with the sides it
+     *  is reachable from, and the walk stops as soon as every commit
+     *  still queued lies below a common ancestor already found, so only
+     *  the commits between the two heads and their merge bases are
+     *  visited. */
+    List<String> mergeBases(String a, String b) {
+        int posA = position(a);
+        int posB = position(b);
+        List<Integer> found = new ArrayList<>();
+        if (posA == posB) {
+            found.add(posA);
+        } else {
+            found = paintDown(posA, posB);
+        }
+        List<String> result = new ArrayList<>();
+        for (int candidate : found) {
+            boolean redundant = false;
+            for (int other : found) {
+                if (other != candidate && isAncestor(candidate, other)) {
+                    redundant = true;
+                    break;
+                }
+            }
+            if (!redundant) {
+                result.add(id(candidate));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the commits reachable from WANT but from none of HAVES,
+     *  parents before children.  Haves not in the graph are ignored.
+     *  The walk goes newest generation first, so every commit is marked
+     *  as reachable from a have before it is reached, and stops once
+     *  only such commits remain queued: it visits the new commits and
+     *  the commits just below them, not the whole history. */
+    List<String> missing(String want, Collection<String> haves) {
+        HashMap<Integer, Integer> flags = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+            (x, y) -> generation(x) != generation(y)
+                ? Integer.compare(generation(y), generation(x))
+                : Integer.compare(y, x));
+        int[] fresh = new int[1];
+        mark(flags, queue, position(want), 0, fresh);
+        for (String have : haves) {
+            if (contains(have)) {
+                mark(flags, queue, position(have), STALE, fresh);
+            }
+        }
+        ArrayList<String> result = new ArrayList<>();
+        while (fresh[0] > 0) {
+            int pos = queue.poll();
+            int mark = flags.get(pos);
+            if ((mark & STALE) == 0) {
+                fresh[0] -= 1;
+                result.add(id(pos));
+            }
+            for (int p : new int[] { parent(pos), secondParent(pos) }) {
+                if (p != NONE) {
+                    mark(flags, queue, p, mark & STALE, fresh);
+                }
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /** Returns the commits reachable from WANT but not in HAVE, which
+     *  holds every ancestor of each commit it holds, parents before
+     *  children.  Only the commits outside HAVE are walked, so a HAVE
+     *  read from Bitmaps spares walking the history of the haves. */
+    List<String> missing(String want, Set<String> have) {
+        List<Integer> found = new ArrayList<>();
+        HashSet<Integer> seen = new HashSet<>();
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        if (!have.contains(want)) {
+            seen.add(position(want));
+            stack.push(position(want));
+        }
+        while (!stack.isEmpty()) {
+            int pos = stack.pop();
+            found.add(pos);
+            for (int p : new int[] { parent(pos), secondParent(pos) }) {
+                if (p != NONE && !have.contains(id(p)) && seen.add(p)) {
+                    stack.push(p);
+                }
+            }
+        }
+        found.sort((x, y) -> generation(x) != generation(y)
+                   ? Integer.compare(generation(x), generation(y))
+                   : Integer.compare(x, y));
+        List<String> result = new ArrayList<>();
+        for (int pos : found) {
+            result.add(id(pos));
+        }
+        return result;
+    }
+
+    /** Delete the graph file and forget every commit, so that commits
+     *  are added again as they are asked for. */
+    void invalidate() {
+        try {
+            Files.deleteIfExists(_file.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        load();
+    }
+
+    /** Add the bits of MARK to the flags of the commit at POS in FLAGS,
+     *  queueing it in QUEUE if it is new.  FRESH[0] counts the queued
+     *  commits not marked STALE. */
+    private static void mark(HashMap<Integer, Integer> flags,
+                             PriorityQueue<Integer> queue, int pos,
+                             int mark, int[] fresh) {
+        Integer old = flags.get(pos);
+        if (old == null) {
+            flags.put(pos, mark);
+            queue.add(pos);
+            if ((mark & STALE) == 0) {
+                fresh[0] += 1;
+            }
+        } else if ((old | mark) != old) {
+            flags.put(pos, old | mark);
+            if ((mark & STALE) != 0 && (old & STALE) == 0) {
+                fresh[0] -= 1;
+            }
+        }
+    }
+
+    /** Returns true iff the commit at ANCESTOR is reachable from the
+     *  commit at DESCENDANT, looking only at commits whose generation is
+     *  no lower than ANCESTOR's. */
+    boolean isAncestor(int ancestor, int descendant) {
+        int floor = generation(ancestor);
+        HashSet<Integer> seen = new HashSet<>();
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        stack.push(descendant);
+        while (!stack.isEmpty()) {
+            int pos = stack.pop();
+            if (pos == ancestor) {
+                return true;
+            }
+            for (int p : new int[] { parent(pos), secondParent(pos) }) {
+                if (p != NONE && generation(p) >= floor && seen.add(p)) {
+                    stack.push(p);
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Returns the common ancestors of the distinct commits at A and B
+     *  that the paint-down walk finds, highest generation first.  Some
+     *  may be ancestors of others.  A commit is queued once, and has all
+     *  its marks by the time it leaves the queue, since every child of
+     *  it has a higher generation and leaves first. */
+    private List<Integer> paintDown(int a, int b) {
+        HashMap<Integer, Integer> flags = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+            (x, y) -> generation(x) != generation(y)
+                ? Integer.compare(generation(y), generation(x))
+                : Integer.compare(y, x));
+        int[] fresh = new int[1];
+        mark(flags, queue, a, SIDE_A, fresh);
+        mark(flags, queue, b, SIDE_B, fresh);
+        List<Integer> result = new ArrayList<>();
+        while (fresh[0] > 0) {
+            int pos = queue.poll();
+            int mark = flags.get(pos);
+            if ((mark & STALE) == 0) {
+                fresh[0] -= 1;
+            }
+            if (mark == (SIDE_A | SIDE_B)) {
+                result.add(pos);
+                mark |= STALE;
+            }
+            for (int p : new int[] { parent(pos), secondParent(pos) }) {
+                if (p != NONE) {
+                    mark(flags, queue, p, mark, fresh);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Add commit ID and all its missing ancestors, reading their
+     *  commit objects, parents before children. */
+    private void ensure(String id) {
+        ArrayDeque<String> stack = new ArrayDeque<>();
+        HashMap<String, Commit> pending = new HashMap<>();
+        stack.push(id);
+        while (!stack.isEmpty()) {
+            String top = stack.peek();
+            if (contains(top)) {
+                stack.pop();
+                continue;
+            }
+            Commit commit = pending.get(top);
+            if (commit == null) {
+                commit = Commit.read(Utils.join(_dir, ObjectStore.COMMITS,
+                                                top));
+                pending.put(top, commit);
+            }
+            boolean ready = true;
+            for (String p : new String[] {
+                    commit.getParent(), commit.getSecondParent() }) {
+                if (!p.equals("null") && !contains(p)) {
+                    stack.push(p);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                stack.pop();
+                pending.remove(top);
+                add(top, commit.getParent(), commit.getSecondParent());
+            }
+        }
+    }
+
+    /** Append the record of commit ID with parent positions FIRST and
+     *  SECOND and generation GENERATION to the graph and its file. */
+    private void append(String id, int first, int second, int generation) {
+        try {
+            boolean fresh = !_file.exists();
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(
+                         _file.toPath(), StandardOpenOption.CREATE,
+                         StandardOpenOption.APPEND)))) {
+                if (fresh) {
+                    out.write(MAGIC.getBytes(StandardCharsets.UTF_8));
+                    out.writeInt(VERSION);
+                }
+                out.write(Utils.uidToBytes(id));
+                out.writeInt(first);
+                out.writeInt(second);
+                out.writeInt(generation);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        record(id, first, second, generation);
+    }
+
+    /** Add the record of commit ID with parent positions FIRST and
+     *  SECOND and generation GENERATION to the in-memory graph. */
+    private void record(String id, int first, int second, int generation) {
+        int pos = _ids.size();
+        if (pos == _generations.length) {
+            int capacity = Math.max(INITIAL_CAPACITY, 2 * pos);
+            _parents = Arrays.copyOf(_parents, 2 * capacity);
+            _generations = Arrays.copyOf(_generations, capacity);
+        }
+        _ids.add(id);
+        _positions.put(id, pos);
+        _parents[2 * pos] = first;
+        _parents[2 * pos + 1] = second;
+        _generations[pos] = generation;
+    }
+
+    /** Read the graph file, if there is one.  A partly written last
+     *  record is ignored. */
+    private void load() {
+        _ids = new ArrayList<>();
+        _positions = new HashMap<>();
+        _parents = new int[0];
+        _generations = new int[0];
+        if (!_file.isFile()) {
+            return;
+        }
+        ByteBuffer data = ByteBuffer.wrap(Utils.readContents(_file));
+        if (data.remaining() < HEADER) {
+            return;
+        }
+        byte[] magic = new byte[MAGIC.length()];
+        data.get(magic);
+        if (!MAGIC.equals(new String(magic, StandardCharsets.UTF_8))
+            || data.getInt() != VERSION) {
+            throw new IllegalArgumentException("bad commit graph");
+        }
+        int count = data.remaining() / RECORD;
+        _parents = new int[2 * count];
+        _generations = new int[count];
+        byte[] id = new byte[Utils.UID_BYTES];
+        for (int i = 0; i < count; i += 1) {
+            data.get(id);
+            record(Utils.uidFromBytes(id, 0), data.getInt(), data.getInt(),
+                   data.getInt());
+        }
+    }
+
+    /** Graphs already opened, keyed by normalized .gitlet path. */
+    private static final ConcurrentHashMap<String, CommitGraph> GRAPHS =
+        new ConcurrentHashMap<>();
+
+    /** The .gitlet directory of this graph. */
+    private final File _dir;
+    /** The graph file. */
+    private final File _file;
+    /** The id of each commit, by position. */
+    private ArrayList<String> _ids;
+    /** The position of each commit, by id. */
+    private HashMap<String, Integer> _positions;
+    /** The parent positions of each commit, two per commit. */
+    private int[] _parents;
+    /** The generation number of each commit, by position. */
+    private int[] _generations;
+}
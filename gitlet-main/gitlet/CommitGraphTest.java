@@ -0,0 +1,123 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the CommitGraph class.
+ *  @author Xinyu Fu
+ */
+public class CommitGraphTest {
+
+    /** Returns a fake commit id made from NAME. */
+    private static String id(String name) {
+        return Utils.sha1(name);
+    }
+
+    /** Returns an empty graph in a fresh temporary directory. */
+    private static CommitGraph emptyGraph() throws IOException {
+        return new CommitGraph(TestRepos.tempRepo());
+    }
+
+    /** Add commit NAME with parents P1 and P2 (or null) to GRAPH. */
+    private static void add(CommitGraph graph, String name, String p1,
+                            String p2) {
+        graph.add(id(name), p1 == null ? "null" : id(p1),
+                  p2 == null ? "null" : id(p2));
+    }
+
+    @Test
+    public void forkAndMerge() throws IOException {
+        CommitGraph graph = emptyGraph();
+        add(graph, "root", null, null);
+        add(graph, "a1", "root", null);
+        add(graph, "a2", "a1", null);
+        add(graph, "b1", "a1", null);
+        add(graph, "b2", "b1", null);
+        assertEquals(Arrays.asList(id("a1")),
+                     graph.mergeBases(id("a2"), id("b2")));
+        assertEquals(Arrays.asList(id("a1")),
+                     graph.mergeBases(id("a1"), id("b2")));
+        add(graph, "m", "a2", "b2");
+        assertEquals(Arrays.asList(id("b2")),
+                     graph.mergeBases(id("m"), id("b2")));
+        assertEquals(4, graph.generation(graph.position(id("m"))) - 1);
+    }
+
+    @Test
+    public void crissCross() throws IOException {
+        CommitGraph graph = emptyGraph();
+        add(graph, "root", null, null);
+        add(graph, "a", "root", null);
+        add(graph, "b", "root", null);
+        add(graph, "x", "a", "b");
+        add(graph, "y", "b", "a");
+        add(graph, "x2", "x", null);
+        add(graph, "y2", "y", null);
+        assertEquals(2, graph.mergeBases(id("x2"), id("y2")).size());
+    }
+
+    @Test
+    public void deepHistory() throws IOException {
+        CommitGraph graph = emptyGraph();
+        add(graph, "c0", null, null);
+        for (int i = 1; i < 20000; i += 1) {
+            add(graph, "c" + i, "c" + (i - 1), null);
+        }
+        add(graph, "side", "c19998", null);
+        assertEquals(Arrays.asList(id("c19998")),
+                     graph.mergeBases(id("c19999"), id("side")));
+    }
+
+    @Test
+    public void manyMerges() throws IOException {
+        CommitGraph graph = emptyGraph();
+        add(graph, "c0", null, null);
+        for (int i = 1; i <= 2000; i += 1) {
+            add(graph, "s" + i, "c" + (i - 1), null);
+            add(graph, "c" + i, "c" + (i - 1), "s" + i);
+        }
+        add(graph, "side", "c0", null);
+        add(graph, "b", "side", "s1");
+        assertEquals(Arrays.asList(id("s1")),
+                     graph.mergeBases(id("c2000"), id("b")));
+        assertEquals(Arrays.asList(id("s2000")),
+                     graph.mergeBases(id("c2000"), id("s2000")));
+    }
+
+    @Test
+    public void missingCommits() throws IOException {
+        CommitGraph graph = emptyGraph();
+        add(graph, "root", null, null);
+        add(graph, "a", "root", null);
+        add(graph, "b", "root", null);
+        add(graph, "m", "a", "b");
+        add(graph, "n", "m", null);
+        assertEquals(Arrays.asList(id("b"), id("m"), id("n")),
+                     graph.missing(id("n"), Arrays.asList(id("a"))));
+        assertEquals(Arrays.asList(id("n")),
+                     graph.missing(id("n"), Arrays.asList(id("m"),
+                                                          id("nope"))));
+        assertEquals(Arrays.asList(),
+                     graph.missing(id("a"), Arrays.asList(id("n"))));
+        assertEquals(5, graph.missing(id("n"), Arrays.asList()).size());
+    }
+
+    @Test
+    public void reloadsFromFile() throws IOException {
+        File dir = TestRepos.tempRepo();
+        CommitGraph graph = new CommitGraph(dir);
+        add(graph, "root", null, null);
+        add(graph, "a", "root", null);
+        add(graph, "b", "a", "root");
+        CommitGraph again = new CommitGraph(dir);
+        assertEquals(3, again.size());
+        int b = again.position(id("b"));
+        assertEquals(id("a"), again.id(again.parent(b)));
+        assertEquals(id("root"), again.id(again.secondParent(b)));
+        assertEquals(3, again.generation(b));
+    }
+}
@@ -0,0 +1,289 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** The ids of all commits of one repository, kept in
+ *  .gitlet/commit-index so that an abbreviated id is resolved by binary
+ *  search instead of by listing every commit.  The file is a header
+ *  giving the number of sorted ids, a fan-out table whose entry B is the
+ *  number of sorted ids whose first byte is at most B, the sorted ids,
+ *  and then ids appended in the order they were added.  Once there are
+ *  more than TAIL appended ids, the file is rewritten with all of them
+ *  sorted.  A missing file is rebuilt from the object store.
+ *  @author Xinyu Fu
+ */
+class CommitIndex {
+
+    /** Name of the index file within a .gitlet directory. */
+    static final String FILE = "commit-index";
+    /** Magic number at the start of the index file. */
+    static final String MAGIC = "GCIX";
+    /** Current version of the index file. */
+    static final int VERSION = 1;
+    /** Number of entries in the fan-out table. */
+    static final int FANOUT = 256;
+    /** Size of the header: magic, version, sorted count and fan-out. */
+    static final int HEADER = 12 + 4 * FANOUT;
+    /** Most appended ids kept before the file is rewritten sorted. */
+    static final int TAIL = 1024;
+
+    /** The index of the .gitlet directory GITLETDIR. */
+    CommitIndex(File gitletDir) {
+        _dir = gitletDir;
+        _file = new File(gitletDir, FILE);
+    }
+
+    /** Returns the index of the .gitlet directory in the current
+     *  directory. */
+    static CommitIndex local() {
+        return of(new File(".gitlet"));
+    }
+
+    /** Forget every index already opened, so that each is read again
+     *  when next used. */
+    static void forgetAll() {
+        INDEXES.clear();
+    }
+
+    /** Returns the index of the .gitlet directory GITLETDIR. */
+    static CommitIndex of(File gitletDir) {
+        String key = gitletDir.getAbsoluteFile().toPath().normalize()
+            .toString();
+        return INDEXES.computeIfAbsent(key, k -> new CommitIndex(gitletDir));
+    }
+
+    /** Returns the number of commits in the index. */
+    int size() {
+        load();
+        return _count + _tail.size();
+    }
+
+    /** Returns the ids of the commits whose ids start with PREFIX, of
+     *  any case, in sorted order.  If none do, the index is rebuilt from
+     *  the object store once, in case commits were added behind its
+     *  back, and searched again. */
+    List<String> matches(String prefix) {
+        List<String> result = search(prefix);
+        if (result.isEmpty() && !_rebuilt) {
+            _rebuilt = true;
+            rebuild();
+            result = search(prefix);
+        }
+        return result;
+    }
+
+    /** Returns the full id of the only commit whose id starts with
+     *  PREFIX.  Throws a GitletException if there is no such commit or
+     *  more than one. */
+    String resolve(String prefix) {
+        List<String> found = matches(prefix);
+        if (found.isEmpty()) {
+            throw Utils.error("No commit with that id exists.");
+        }
+        if (found.size() > 1) {
+            throw Utils.error("Commit id %s is ambiguous: %s.", prefix,
+                              String.join(", ", found));
+        }
+        return found.get(0);
+    }
+
+    /** Record commit ID, appending it to the index file.  Does nothing
+     *  if ID is already recorded. */
+    void add(String id) {
+        load();
+        if (!search(id).isEmpty()) {
+            return;
+        }
+        if (_tail.size() >= TAIL) {
+            _tail.add(id);
+            save();
+            return;
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(
+                     _file.toPath(), StandardOpenOption.APPEND)))) {
+            out.write(Utils.uidToBytes(id));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _tail.add(id);
+    }
+
+    /** Forget the index, so that it is rebuilt when next used. */
+    void invalidate() {
+        try {
+            Files.deleteIfExists(_file.toPath());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _sorted = null;
+    }
+
+    /** Returns the sorted ids starting with PREFIX among those loaded. */
+    private List<String> search(String prefix) {
+        load();
+        List<String> result = new ArrayList<>();
+        prefix = prefix.toLowerCase(Locale.ROOT);
+        if (prefix.isEmpty() || prefix.length() > Utils.UID_LENGTH
+            || !prefix.matches("[0-9a-f]*")) {
+            return result;
+        }
+        int first = Character.digit(prefix.charAt(0), 16) << 4;
+        int lo = first == 0 ? 0 : _fanout[first - 1];
+        int hi = _fanout[prefix.length() > 1
+                         ? first + Character.digit(prefix.charAt(1), 16)
+                         : first + 15];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (id(mid).compareTo(prefix) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < _count && id(i).startsWith(prefix); i += 1) {
+            result.add(id(i));
+        }
+        for (String id : _tail) {
+            if (id.startsWith(prefix)) {
+                result.add(id);
+            }
+        }
+        result.sort(null);
+        return result;
+    }
+
+    /** Returns the Kth sorted id. */
+    private String id(int k) {
+        return Utils.uidFromBytes(_sorted, k * Utils.UID_BYTES);
+    }
+
+    /** Read the index file, or rebuild it if it is missing or unreadable.
+     *  A partly written last id is ignored. */
+    private void load() {
+        if (_sorted != null) {
+            return;
+        }
+        if (!_file.isFile()) {
+            rebuild();
+            return;
+        }
+        ByteBuffer data = ByteBuffer.wrap(Utils.readContents(_file));
+        if (data.remaining() < HEADER) {
+            rebuild();
+            return;
+        }
+        byte[] magic = new byte[MAGIC.length()];
+        data.get(magic);
+        if (!MAGIC.equals(new String(magic, StandardCharsets.UTF_8))
+            || data.getInt() != VERSION) {
+            throw new IllegalArgumentException("bad commit index");
+        }
+        int count = data.getInt();
+        int[] fanout = new int[FANOUT];
+        for (int b = 0; b < FANOUT; b += 1) {
+            fanout[b] = data.getInt();
+        }
+        byte[] sorted = new byte[count * Utils.UID_BYTES];
+        if (data.remaining() < sorted.length) {
+            rebuild();
+            return;
+        }
+        data.get(sorted);
+        ArrayList<String> tail = new ArrayList<>();
+        byte[] id = new byte[Utils.UID_BYTES];
+        while (data.remaining() >= id.length) {
+            data.get(id);
+            tail.add(Utils.uidFromBytes(id, 0));
+        }
+        _count = count;
+        _fanout = fanout;
+        _sorted = sorted;
+        _tail = tail;
+    }
+
+    /** Replace the index with one of every commit in the object store. */
+    private void rebuild() {
+        _sorted = new byte[0];
+        _count = 0;
+        _fanout = new int[FANOUT];
+        _tail = new ArrayList<>(ObjectStore.of(_dir)
+                                .ids(ObjectStore.COMMITS));
+        save();
+    }
+
+    /** Write the index with every id sorted, replacing the file all at
+     *  once. */
+    private void save() {
+        List<String> ids = new ArrayList<>(_tail);
+        for (int i = 0; i < _count; i += 1) {
+            ids.add(id(i));
+        }
+        ids.sort(null);
+        int count = ids.size();
+        byte[] sorted = new byte[count * Utils.UID_BYTES];
+        int[] fanout = new int[FANOUT];
+        for (int i = 0; i < count; i += 1) {
+            byte[] id = Utils.uidToBytes(ids.get(i));
+            System.arraycopy(id, 0, sorted, i * id.length, id.length);
+            fanout[id[0] & 0xff] += 1;
+        }
+        for (int b = 1; b < FANOUT; b += 1) {
+            fanout[b] += fanout[b - 1];
+        }
+        try {
+            File tmp = File.createTempFile(FILE, ".tmp", _dir);
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(
+                         tmp.toPath())))) {
+                out.write(MAGIC.getBytes(StandardCharsets.UTF_8));
+                out.writeInt(VERSION);
+                out.writeInt(count);
+                for (int n : fanout) {
+                    out.writeInt(n);
+                }
+                out.write(sorted);
+            }
+            Files.move(tmp.toPath(), _file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _count = count;
+        _fanout = fanout;
+        _sorted = sorted;
+        _tail = new ArrayList<>();
+    }
+
+    /** Indexes already opened, keyed by normalized .gitlet path. */
+    private static final ConcurrentHashMap<String, CommitIndex> INDEXES =
+        new ConcurrentHashMap<>();
+
+    /** The .gitlet directory of this index. */
+    private final File _dir;
+    /** The index file. */
+    private final File _file;
+    /** Number of sorted ids. */
+    private int _count;
+    /** Fan-out table over the first byte of the sorted ids. */
+    private int[] _fanout;
+    /** The sorted ids, 20 bytes each, or null if not yet loaded. */
+    private byte[] _sorted;
+    /** Ids appended after the sorted ones. */
+    private ArrayList<String> _tail;
+    /** True once matches has rebuilt the index. */
+    private boolean _rebuilt;
+}
@@ -0,0 +1,80 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the CommitIndex class.
+ *  @author Xinyu Fu
+ */
+public class CommitIndexTest {
+
+    /** Returns a fresh .gitlet-like directory holding a commit object,
+     *  with dummy contents, for each of IDS. */
+    private static File repoWith(String... ids) throws IOException {
+        File dir = TestRepos.tempRepo(ObjectStore.COMMITS);
+        for (String id : ids) {
+            write(dir, id);
+        }
+        return dir;
+    }
+
+    /** Write a commit object with id ID to the repository DIR. */
+    private static void write(File dir, String id) throws IOException {
+        ObjectStore store = ObjectStore.of(dir);
+        store.write(ObjectStore.COMMITS, id,
+                    new Commit("message", "null", "null").encode());
+        store.looseFile(ObjectStore.COMMITS, id).deleteOnExit();
+    }
+
+    @Test
+    public void resolvesPrefixes() throws IOException {
+        String a = Utils.sha1("a"), b = Utils.sha1("b"), c = Utils.sha1("c");
+        File dir = repoWith(a, b);
+        CommitIndex index = new CommitIndex(dir);
+        assertEquals(2, index.size());
+        assertEquals(a, index.resolve(a.substring(0, 6)));
+        assertEquals(b, index.resolve(b.substring(0, 1).toUpperCase()));
+        assertEquals(Collections.emptyList(), index.matches(c));
+        assertEquals(Collections.emptyList(), index.matches("xyz"));
+        write(dir, c);
+        assertEquals(c, CommitIndex.of(dir).resolve(c.substring(0, 8)));
+        assertEquals(c, new CommitIndex(dir).resolve(c));
+    }
+
+    @Test
+    public void reportsAmbiguity() throws IOException {
+        String a = "ab" + Utils.sha1("a").substring(2);
+        String b = "ab" + Utils.sha1("b").substring(2);
+        CommitIndex index = new CommitIndex(repoWith(b, a));
+        assertEquals(a.compareTo(b) < 0 ? Arrays.asList(a, b)
+                     : Arrays.asList(b, a), index.matches("ab"));
+        try {
+            index.resolve("ab");
+            fail("expected an ambiguous prefix");
+        } catch (GitletException excp) {
+            assertTrue(excp.getMessage().contains("ambiguous"));
+        }
+    }
+
+    @Test
+    public void rewritesLongTails() throws IOException {
+        File dir = repoWith();
+        int n = CommitIndex.TAIL + 10;
+        for (int i = 0; i < n; i += 1) {
+            write(dir, Utils.sha1("commit" + i));
+        }
+        long size = new File(dir, CommitIndex.FILE).length();
+        assertEquals(CommitIndex.HEADER + (long) n * Utils.UID_BYTES, size);
+        CommitIndex index = new CommitIndex(dir);
+        assertEquals(n, index.size());
+        for (int i = 0; i < n; i += 97) {
+            String id = Utils.sha1("commit" + i);
+            assertEquals(id, index.resolve(id.substring(0, 10)));
+        }
+    }
+}
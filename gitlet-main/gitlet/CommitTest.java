@@ -0,0 +1,99 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the stored forms of Commit.
+ *  @author Xinyu Fu
+ */
+public class CommitTest {
+
+    /** Returns a commit with message MESSAGE, parents P1 and P2 and
+     *  NFILES files. */
+    static Commit sample(String message, String p1, String p2,
+                         int nfiles) throws IOException {
+        HashMap<String, String> files = new HashMap<>();
+        for (int i = 0; i < nfiles; i += 1) {
+            files.put("file" + i + ".txt", Utils.sha1("contents" + i));
+        }
+        return new Commit(new Commit(message, "null", "null"), p1, p2,
+                          files);
+    }
+
+    @Test
+    public void readsCachedCommits() throws IOException {
+        Commit commit = sample("cached", Utils.sha1("a"), "null", 3);
+        byte[] bytes = commit.encode();
+        File repo = TestRepos.tempRepo(ObjectStore.COMMITS);
+        File file = new File(new File(repo, ObjectStore.COMMITS),
+                             Utils.sha1(bytes));
+        Utils.writeContents(file, bytes);
+        Commit first = Commit.read(file);
+        assertTrue(first == Commit.read(file));
+        assertEquals(commit.getFiles(), first.getFiles());
+        file.delete();
+        try {
+            Commit.read(file);
+            fail("expected a missing commit");
+        } catch (IllegalArgumentException excp) {
+            return;
+        }
+    }
+
+    @Test
+    public void readsCachedPackedCommits() throws IOException {
+        Commit commit = sample("packed", Utils.sha1("a"), "null", 3);
+        byte[] bytes = commit.encode();
+        File repo = TestRepos.tempRepo(ObjectStore.COMMITS);
+        String id = Utils.sha1(bytes);
+        ObjectStore store = ObjectStore.of(repo);
+        store.write(ObjectStore.COMMITS, id, bytes);
+        store.repack();
+        File file = store.looseFile(ObjectStore.COMMITS, id);
+        assertFalse(file.isFile());
+        Commit first = Commit.read(file);
+        assertTrue(first == Commit.read(file));
+        assertEquals(commit.getFiles(), first.getFiles());
+        for (File each : new File(repo, ObjectStore.PACKS).listFiles()) {
+            each.deleteOnExit();
+        }
+        new File(repo, ObjectStore.PACKS).deleteOnExit();
+    }
+
+    @Test
+    public void binaryRoundTrip() throws IOException {
+        Commit commit = sample("caf\u00e9 commit", Utils.sha1("a"),
+                               Utils.sha1("b"), 50);
+        byte[] bytes = commit.encode();
+        assertEquals(Commit.MAGIC0, bytes[0]);
+        Commit back = Commit.decode(bytes);
+        assertEquals(commit.getMessage(), back.getMessage());
+        assertEquals(commit.getParent(), back.getParent());
+        assertEquals(commit.getSecondParent(), back.getSecondParent());
+        assertEquals(commit.getFiles(), back.getFiles());
+        assertEquals(commit.getDate(), back.getDate());
+        assertArrayEquals(bytes, back.encode());
+    }
+
+    @Test
+    public void missingParents() throws IOException {
+        Commit commit = sample("root", "null", "null", 0);
+        Commit back = Commit.decode(commit.encode());
+        assertEquals("null", back.getParent());
+        assertEquals("null", back.getSecondParent());
+        assertTrue(back.getFiles().isEmpty());
+    }
+
+    @Test
+    public void readsSerializedCommits() throws IOException {
+        Commit commit = sample("old", Utils.sha1("a"), "null", 3);
+        Commit legacy = Commit.decode(Utils.serialize(commit));
+        assertEquals(commit.getMessage(), legacy.getMessage());
+        assertEquals(commit.getParent(), legacy.getParent());
+        assertEquals(commit.getFiles(), legacy.getFiles());
+    }
+}
@@ -0,0 +1,199 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/** The storage encoding of objects.  An encoded object starts with a
+ *  four-byte header: the magic bytes 'G' 'O', the header version, and
+ *  the codec that compressed the rest.  Objects without that header,
+ *  such as those written before compression existed (which start with
+ *  the Java serialization magic 0xACED), are stored as they are.  The
+ *  codec for new objects is the repository's "compression" setting.
+ *  @author Xinyu Fu
+ */
+class Compression {
+
+    /** Codec that leaves objects as they are, without a header. */
+    static final int NONE = 0;
+    /** Codec using java.util.zip's Deflate. */
+    static final int DEFLATE = 1;
+    /** Codec using the LZ4-style Lz4 class. */
+    static final int LZ4 = 2;
+    /** Names of the codecs, indexed by codec number. */
+    static final List<String> NAMES = Arrays.asList("none", "deflate", "lz4");
+    /** Codec used by repositories created by init. */
+    static final String DEFAULT = "deflate";
+    /** First magic byte of the header. */
+    static final byte MAGIC0 = 'G';
+    /** Second magic byte of the header. */
+    static final byte MAGIC1 = 'O';
+    /** Current version of the header. */
+    static final byte VERSION = 1;
+    /** Length of the header. */
+    static final int HEADER = 4;
+    /** Size of the buffer used to run Deflate. */
+    private static final int BUFFER = 8192;
+
+    /** Returns RAW encoded with CODEC. */
+    static byte[] encode(byte[] raw, int codec) {
+        if (codec == NONE) {
+            return raw;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(MAGIC0);
+        out.write(MAGIC1);
+        out.write(VERSION);
+        out.write(codec);
+        if (codec == DEFLATE) {
+            Deflater deflater = new Deflater();
+            deflater.setInput(raw);
+            deflater.finish();
+            byte[] buf = new byte[BUFFER];
+            while (!deflater.finished()) {
+                out.write(buf, 0, deflater.deflate(buf));
+            }
+            deflater.end();
+        } else if (codec == LZ4) {
+            byte[] compressed = Lz4.compress(raw);
+            out.write(compressed, 0, compressed.length);
+        } else {
+            throw new IllegalArgumentException("unknown codec " + codec);
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the raw contents of the object whose stored form is
+     *  STORED. */
+    static byte[] decode(byte[] stored) {
+        if (!isEncoded(stored)) {
+            return stored;
+        }
+        if (stored[2] != VERSION) {
+            throw new IllegalArgumentException("unknown object header "
+                                               + "version " + stored[2]);
+        }
+        switch (stored[3]) {
+        case NONE:
+            return Arrays.copyOfRange(stored, HEADER, stored.length);
+        case DEFLATE:
+            return inflate(stored);
+        case LZ4:
+            return Lz4.decompress(stored, HEADER, stored.length - HEADER);
+        default:
+            throw new IllegalArgumentException("unknown codec " + stored[3]);
+        }
+    }
+
+    /** Returns a stream that writes the data written to it to OUT,
+     *  encoded with CODEC.  Closing it closes OUT. */
+    static OutputStream encoder(OutputStream out, int codec)
+        throws IOException {
+        if (codec == NONE) {
+            return out;
+        }
+        out.write(new byte[] { MAGIC0, MAGIC1, VERSION, (byte) codec });
+        if (codec == DEFLATE) {
+            return new DeflaterOutputStream(out);
+        } else if (codec == LZ4) {
+            return Lz4.output(out);
+        }
+        throw new IllegalArgumentException("unknown codec " + codec);
+    }
+
+    /** Returns a stream of the raw contents of the object whose stored
+     *  form is read from STORED. */
+    static InputStream decoder(InputStream stored) throws IOException {
+        PushbackInputStream in = new PushbackInputStream(stored, HEADER);
+        byte[] header = new byte[HEADER];
+        int n = 0;
+        while (n < HEADER) {
+            int k = in.read(header, n, HEADER - n);
+            if (k < 0) {
+                break;
+            }
+            n += k;
+        }
+        if (n < HEADER || !isEncoded(header)) {
+            in.unread(header, 0, n);
+            return in;
+        }
+        if (header[2] != VERSION) {
+            throw new IllegalArgumentException("unknown object header "
+                                               + "version " + header[2]);
+        }
+        switch (header[3]) {
+        case NONE:
+            return in;
+        case DEFLATE:
+            return new InflaterInputStream(in);
+        case LZ4:
+            return Lz4.input(in);
+        default:
+            throw new IllegalArgumentException("unknown codec " + header[3]);
+        }
+    }
+
+    /** Returns true iff STORED starts with an object header. */
+    static boolean isEncoded(byte[] stored) {
+        return stored.length >= HEADER && stored[0] == MAGIC0
+            && stored[1] == MAGIC1;
+    }
+
+    /** Returns the codec number named NAME, or -1 if there is none. */
+    static int codec(String name) {
+        return NAMES.indexOf(name);
+    }
+
+    /** Returns the codec that the .gitlet directory GITLETDIR uses for
+     *  new objects. */
+    static int codecOf(File gitletDir) {
+        int codec = codec(Config.get(gitletDir, Config.COMPRESSION,
+                                     NAMES.get(NONE)));
+        return codec < 0 ? NONE : codec;
+    }
+
+    /** Returns the codec to use for the object stored loose in FILE,
+     *  that is, FILE is <gitlet>/<kind>/<id>. */
+    static int codecFor(File file) {
+        File kindDir = file.getAbsoluteFile().getParentFile();
+        if (kindDir == null || kindDir.getParentFile() == null) {
+            return NONE;
+        }
+        return codecOf(kindDir.getParentFile());
+    }
+
+    /** Returns the Deflate-compressed contents of the encoded object
+     *  STORED. */
+    private static byte[] inflate(byte[] stored) {
+        Inflater inflater = new Inflater();
+        inflater.setInput(stored, HEADER, stored.length - HEADER);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[BUFFER];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buf);
+                if (n == 0 && !inflater.finished()
+                    && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("truncated object");
+                }
+                out.write(buf, 0, n);
+            }
+        } catch (DataFormatException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return out.toByteArray();
+    }
+}
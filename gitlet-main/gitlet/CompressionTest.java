@@ -0,0 +1,60 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Compression and Lz4 classes.
+ *  @author Xinyu Fu
+ */
+public class CompressionTest {
+
+    /** Returns the encoding of RAW with CODEC, after checking that it
+     *  decodes back to RAW. */
+    private static byte[] roundTrip(byte[] raw, int codec) {
+        byte[] stored = Compression.encode(raw, codec);
+        assertArrayEquals(raw, Compression.decode(stored));
+        return stored;
+    }
+
+    /** Returns some repetitive text of about SIZE bytes. */
+    private static byte[] text(int size) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; result.length() < size; i += 1) {
+            result.append("line ").append(i % 97).append(" of the file\n");
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void everyCodecRoundTrips() {
+        Random random = new Random(61);
+        byte[] noise = new byte[3 * Lz4.BLOCK_SIZE + 17];
+        random.nextBytes(noise);
+        for (int codec = 0; codec < Compression.NAMES.size(); codec += 1) {
+            roundTrip(new byte[0], codec);
+            roundTrip("x".getBytes(StandardCharsets.UTF_8), codec);
+            roundTrip(text(200000), codec);
+            roundTrip(noise, codec);
+        }
+    }
+
+    @Test
+    public void textShrinks() {
+        byte[] raw = text(200000);
+        assertTrue(roundTrip(raw, Compression.DEFLATE).length
+                   < raw.length / 4);
+        assertTrue(roundTrip(raw, Compression.LZ4).length < raw.length / 4);
+    }
+
+    @Test
+    public void unencodedObjectsPassThrough() {
+        byte[] legacy = Utils.serialize("contents");
+        assertFalse(Compression.isEncoded(legacy));
+        assertArrayEquals(legacy, Compression.decode(legacy));
+        assertArrayEquals(legacy, Compression.encode(legacy,
+                                                     Compression.NONE));
+    }
+}
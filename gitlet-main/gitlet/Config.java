@@ -0,0 +1,84 @@
+package gitlet;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Per-repository settings, kept in .gitlet/config as lines of the
+ *  form KEY=VALUE.
+ *  @author Xinyu Fu
+ */
+class Config {
+
+    /** Name of the settings file within a .gitlet directory. */
+    static final String FILE = "config";
+    /** Key naming the codec used for newly written objects. */
+    static final String COMPRESSION = "compression";
+    /** Key naming the format of newly written blobs. */
+    static final String BLOB_FORMAT = "blobformat";
+    /** Key naming how push and fetch store objects they receive:
+     *  "copy", the default, or "link" to hard-link them. */
+    static final String TRANSFER = "transfer";
+    /** Key naming the diff algorithm used by diff and merge: one of
+     *  Diff.NAMES, "histogram" by default. */
+    static final String DIFF = "diff";
+    /** Key giving the age in seconds below which gc keeps unreachable
+     *  objects, GarbageCollector.DEFAULT_GRACE by default. */
+    static final String GC_GRACE = "gcgrace";
+
+    /** Returns the value of KEY in the .gitlet directory GITLETDIR, or
+     *  DEFLT if it is not set. */
+    static String get(File gitletDir, String key, String deflt) {
+        String value = read(gitletDir).get(key);
+        return value == null ? deflt : value;
+    }
+
+    /** Set KEY to VALUE in the .gitlet directory GITLETDIR. */
+    static void set(File gitletDir, String key, String value) {
+        TreeMap<String, String> settings = new TreeMap<>(read(gitletDir));
+        settings.put(key, value);
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, String> entry : settings.entrySet()) {
+            text.append(entry.getKey()).append('=')
+                .append(entry.getValue()).append('\n');
+        }
+        Utils.writeContents(new File(gitletDir, FILE), text.toString());
+        CACHE.put(key(gitletDir), settings);
+    }
+
+    /** Returns all settings of the .gitlet directory GITLETDIR. */
+    private static Map<String, String> read(File gitletDir) {
+        return CACHE.computeIfAbsent(key(gitletDir), k -> {
+            Map<String, String> result = new HashMap<>();
+            File file = new File(gitletDir, FILE);
+            if (file.isFile()) {
+                for (String line
+                         : Utils.readContentsAsString(file).split("\n")) {
+                    int eq = line.indexOf('=');
+                    if (eq > 0) {
+                        result.put(line.substring(0, eq).trim(),
+                                   line.substring(eq + 1).trim());
+                    }
+                }
+            }
+            return result;
+        });
+    }
+
+    /** Forget all settings already read, so that they are read again. */
+    static void forgetAll() {
+        CACHE.clear();
+    }
+
+    /** Returns the key under which the settings of GITLETDIR are
+     *  cached. */
+    private static String key(File gitletDir) {
+        return gitletDir.getAbsoluteFile().toPath().normalize().toString();
+    }
+
+    /** Settings already read, keyed by normalized .gitlet path. */
+    private static final ConcurrentHashMap<String, Map<String, String>>
+        CACHE = new ConcurrentHashMap<>();
+}
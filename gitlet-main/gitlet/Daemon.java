@@ -0,0 +1,225 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/** Runs gitlet commands sent by Clients in one long-lived JVM, so that
+ *  the caches of repository state stay warm between them.  The daemon
+ *  serves the working directory it was started in, on a loopback port
+ *  that it writes to .gitlet/daemon along with a random token, which
+ *  only the owner may read; a client must present the token.  Commands
+ *  run one at a time, with their output captured and sent back.
+ *  Before each command the daemon compares the status of every file it
+ *  caches with what it saw after the last one, and drops all caches if
+ *  any has changed, so commands run directly on the repository in the
+ *  meantime are seen.  Commits are cached by id and never go stale.
+ *  @author Xinyu Fu
+ */
+class Daemon {
+
+    /** Name of the file, within .gitlet, giving the port and token. */
+    static final String FILE = "daemon";
+    /** A command to run: the token, the client's working directory and
+     *  the arguments.  Answered by DONE, or by Protocol.ERROR if the
+     *  command was not run. */
+    static final byte RUN = 'R';
+    /** The exit status of a command, then its standard output and error
+     *  streams. */
+    static final byte DONE = 'D';
+    /** Commands that are never sent to a daemon. */
+    static final List<String> LOCAL = Arrays.asList("daemon", "serve", "batch");
+    /** Commands after which cached state of other repositories may be
+     *  stale. */
+    static final List<String> REMOTE = Arrays.asList("push", "fetch", "pull");
+    /** Milliseconds a client may take to send its command. */
+    static final int TIMEOUT = 10000;
+    /** Files within .gitlet that are cached between commands. */
+    static final List<String> CACHED = Arrays.asList(
+        Index.FILE, Stage.FILE, Config.FILE, CommitGraph.FILE, CommitIndex.FILE,
+        Catalog.FILE, Catalog.TEXT, Catalog.WORDS, Bitmaps.FILE);
+
+    /** A daemon for the .gitlet directory GITLETDIR, which belongs to the
+     *  current directory. */
+    Daemon(File gitletDir) throws IOException {
+        _dir = gitletDir;
+        _cwd = new File(System.getProperty("user.dir")).getCanonicalPath();
+        _token = new BigInteger(128, new SecureRandom()).toString(16);
+        _socket = new ServerSocket(0, 0, InetAddress.getLoopbackAddress());
+        File file = new File(gitletDir, FILE);
+        File tmp = new File(gitletDir, FILE + ".tmp");
+        tmp.delete();
+        tmp.createNewFile();
+        tmp.setReadable(false, false);
+        tmp.setReadable(true, true);
+        tmp.setWritable(false, false);
+        tmp.setWritable(true, true);
+        Utils.writeContents(tmp, port() + " " + _token + "\n");
+        Files.move(tmp.toPath(), file.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING,
+                   StandardCopyOption.ATOMIC_MOVE);
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close));
+    }
+
+    /** Returns the port served. */
+    int port() {
+        return _socket.getLocalPort();
+    }
+
+    /** Run the commands of clients until the daemon is closed. */
+    void serve() throws IOException {
+        while (!_socket.isClosed()) {
+            Socket client;
+            try {
+                client = _socket.accept();
+            } catch (IOException excp) {
+                if (_socket.isClosed()) {
+                    return;
+                }
+                throw excp;
+            }
+            handle(client);
+        }
+    }
+
+    /** Stop serving, removing .gitlet/daemon if it is still ours. */
+    void close() {
+        try {
+            _socket.close();
+            File file = new File(_dir, FILE);
+            if (file.isFile() && Utils.readContentsAsString(file)
+                .contains(" " + _token)) {
+                file.delete();
+            }
+        } catch (IOException | IllegalArgumentException excp) {
+            return;
+        }
+    }
+
+    /** Run the command sent on CLIENT and send back its results. */
+    private void handle(Socket client) {
+        try (Socket socket = client;
+             DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(socket.getOutputStream(),
+                                          Blobs.BUFFER))) {
+            socket.setSoTimeout(TIMEOUT);
+            ByteBuffer request = Protocol.read(in).expect(RUN).payload;
+            String token = Protocol.readString(request);
+            String cwd = Protocol.readString(request);
+            String[] args = new String[request.getInt()];
+            for (int i = 0; i < args.length; i += 1) {
+                args[i] = Protocol.readString(request);
+            }
+            String refusal = !token.equals(_token) ? "Bad daemon token."
+                : !cwd.equals(_cwd) ? "The daemon serves another directory."
+                : args.length > 0 && LOCAL.contains(args[0])
+                ? "That command cannot be run by the daemon." : null;
+            if (refusal != null) {
+                Protocol.write(out, Protocol.ERROR, Protocol.payload(
+                    o -> Protocol.writeString(o, refusal)));
+            } else {
+                run(args, out);
+            }
+            out.flush();
+        } catch (IOException | RuntimeException excp) {
+            System.err.println("gitlet daemon: " + excp);
+        }
+    }
+
+    /** Run the command ARGS and write a DONE frame to OUT. */
+    private void run(String[] args, DataOutputStream out)
+        throws IOException {
+        if (!stamps().equals(_stamps)) {
+            forgetAll();
+        }
+        ByteArrayOutputStream stdout = new ByteArrayOutputStream(),
+            stderr = new ByteArrayOutputStream();
+        PrintStream oldOut = System.out, oldErr = System.err;
+        int status = 0;
+        System.setOut(new PrintStream(stdout, true));
+        System.setErr(new PrintStream(stderr, true));
+        try {
+            Main.main(args);
+        } catch (Exception | AssertionError excp) {
+            excp.printStackTrace();
+            forgetAll();
+            status = 1;
+        } finally {
+            System.out.flush();
+            System.err.flush();
+            System.setOut(oldOut);
+            System.setErr(oldErr);
+        }
+        if (args.length > 0 && REMOTE.contains(args[0])) {
+            forgetAll();
+        }
+        _stamps = stamps();
+        int code = status;
+        Protocol.write(out, DONE, Protocol.payload(o -> {
+            o.writeInt(code);
+            o.writeInt(stdout.size());
+            stdout.writeTo(o);
+            o.writeInt(stderr.size());
+            stderr.writeTo(o);
+        }));
+    }
+
+    /** Returns the status of each cached file and each pack, by name. */
+    private TreeMap<String, Index.Stat> stamps() {
+        TreeMap<String, Index.Stat> result = new TreeMap<>();
+        for (String name : CACHED) {
+            result.put(name, Index.Stat.of(new File(_dir, name)));
+        }
+        File packs = new File(_dir, ObjectStore.PACKS);
+        List<String> names = Utils.plainFilenamesIn(packs);
+        if (names != null) {
+            for (String name : names) {
+                result.put(ObjectStore.PACKS + "/" + name,
+                           Index.Stat.of(new File(packs, name)));
+            }
+        }
+        return result;
+    }
+
+    /** Drop every cache of repository state, except commits, which
+     *  never change. */
+    static void forgetAll() throws IOException {
+        ObjectStore.forgetAll();
+        CommitGraph.forgetAll();
+        CommitIndex.forgetAll();
+        Catalog.forgetAll();
+        Bitmaps.forgetAll();
+        Config.forgetAll();
+        Index.forgetLocal();
+        Stage.forgetLocal();
+    }
+
+    /** The .gitlet directory served. */
+    private final File _dir;
+    /** The canonical working directory served. */
+    private final String _cwd;
+    /** The token clients must send. */
+    private final String _token;
+    /** The listening socket. */
+    private final ServerSocket _socket;
+    /** Status of the cached files after the last command, or null. */
+    private TreeMap<String, Index.Stat> _stamps;
+}
@@ -0,0 +1,191 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+
+/** Delta encoding of one byte array against another.  A delta is the
+ *  lengths of its base and its result followed by a list of
+ *  instructions, each of which either copies a range of the base or
+ *  inserts literal bytes.  Matches are found by indexing every
+ *  BLOCK-byte block of the base under a rolling hash, so creating a
+ *  delta takes time linear in the sizes of the base and the result.
+ *  @author Xinyu Fu
+ */
+class Delta {
+
+    /** Instruction that inserts literal bytes. */
+    static final int INSERT = 0;
+    /** Instruction that copies a range of the base. */
+    static final int COPY = 1;
+    /** Length of the blocks of the base that are indexed. */
+    static final int BLOCK = 16;
+    /** Multiplier of the rolling hash. */
+    private static final int PRIME = 31;
+    /** Mask selecting the low seven bits of a varint byte. */
+    private static final int LOW_BITS = 0x7f;
+    /** Flag marking a varint byte that is not the last. */
+    private static final int MORE = 0x80;
+    /** Shift between the bytes of a varint. */
+    private static final int SHIFT = 7;
+
+    /** Returns a delta that turns BASE into TARGET. */
+    static byte[] create(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+        int[] table = index(base);
+        int mask = table.length - 1;
+        int pow = power();
+        int insertStart = 0;
+        int i = 0;
+        int hash = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (i + BLOCK <= target.length) {
+            int candidate = table[hash & mask] - 1;
+            int len = candidate < 0 ? 0 : matchLength(base, candidate,
+                                                      target, i);
+            if (len >= BLOCK) {
+                int back = 0;
+                while (candidate - back > 0 && i - back > insertStart
+                       && base[candidate - back - 1]
+                          == target[i - back - 1]) {
+                    back += 1;
+                }
+                writeInsert(out, target, insertStart, i - back);
+                writeCopy(out, candidate - back, len + back);
+                i += len;
+                insertStart = i;
+                if (i + BLOCK <= target.length) {
+                    hash = hash(target, i);
+                }
+            } else {
+                if (i + BLOCK < target.length) {
+                    hash = (hash - target[i] * pow) * PRIME
+                        + target[i + BLOCK];
+                }
+                i += 1;
+            }
+        }
+        writeInsert(out, target, insertStart, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA to BASE. */
+    static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = { 0 };
+        int baseLength = readVarint(delta, pos);
+        if (baseLength != base.length) {
+            throw new IllegalArgumentException("delta does not match base");
+        }
+        byte[] result = new byte[readVarint(delta, pos)];
+        int size = 0;
+        while (pos[0] < delta.length) {
+            int op = delta[pos[0]];
+            pos[0] += 1;
+            if (op == COPY) {
+                int from = readVarint(delta, pos);
+                int len = readVarint(delta, pos);
+                System.arraycopy(base, from, result, size, len);
+                size += len;
+            } else if (op == INSERT) {
+                int len = readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], result, size, len);
+                pos[0] += len;
+                size += len;
+            } else {
+                throw new IllegalArgumentException("bad delta instruction");
+            }
+        }
+        if (size != result.length) {
+            throw new IllegalArgumentException("truncated delta");
+        }
+        return result;
+    }
+
+    /** Returns a hash table mapping the hash of each block of BASE to
+     *  one plus the offset of that block. */
+    private static int[] index(byte[] base) {
+        int size = 1;
+        while (size < 2 * (base.length / BLOCK + 1)) {
+            size <<= 1;
+        }
+        int[] table = new int[size];
+        for (int off = base.length - BLOCK - (base.length % BLOCK);
+             off >= 0; off -= BLOCK) {
+            table[hash(base, off) & (size - 1)] = off + 1;
+        }
+        return table;
+    }
+
+    /** Returns the hash of the BLOCK bytes of DATA starting at OFF. */
+    private static int hash(byte[] data, int off) {
+        int h = 0;
+        for (int i = off; i < off + BLOCK; i += 1) {
+            h = h * PRIME + data[i];
+        }
+        return h;
+    }
+
+    /** Returns PRIME raised to the power BLOCK - 1. */
+    private static int power() {
+        int p = 1;
+        for (int i = 1; i < BLOCK; i += 1) {
+            p *= PRIME;
+        }
+        return p;
+    }
+
+    /** Returns the length of the common run of BASE starting at FROM
+     *  and TARGET starting at AT. */
+    private static int matchLength(byte[] base, int from, byte[] target,
+                                   int at) {
+        int len = 0;
+        while (from + len < base.length && at + len < target.length
+               && base[from + len] == target[at + len]) {
+            len += 1;
+        }
+        return len;
+    }
+
+    /** Write an instruction inserting DATA[FROM .. TO-1] to OUT, unless
+     *  that range is empty. */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] data,
+                                    int from, int to) {
+        if (to > from) {
+            out.write(INSERT);
+            writeVarint(out, to - from);
+            out.write(data, from, to - from);
+        }
+    }
+
+    /** Write an instruction copying LEN bytes of the base starting at
+     *  FROM to OUT. */
+    private static void writeCopy(ByteArrayOutputStream out, int from,
+                                  int len) {
+        out.write(COPY);
+        writeVarint(out, from);
+        writeVarint(out, len);
+    }
+
+    /** Write the non-negative VALUE to OUT, seven bits per byte. */
+    static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~LOW_BITS) != 0) {
+            out.write((value & LOW_BITS) | MORE);
+            value >>>= SHIFT;
+        }
+        out.write(value);
+    }
+
+    /** Returns the varint in DATA at POS[0], advancing POS[0] past it. */
+    static int readVarint(byte[] data, int[] pos) {
+        int result = 0;
+        int shift = 0;
+        while (true) {
+            int b = data[pos[0]] & 0xff;
+            pos[0] += 1;
+            result |= (b & LOW_BITS) << shift;
+            if ((b & MORE) == 0) {
+                return result;
+            }
+            shift += SHIFT;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Delta class.
+ *  @author Xinyu Fu
+ */
+public class DeltaTest {
+
+    /** Check that a delta from BASE to TARGET reproduces TARGET. */
+    private static byte[] roundTrip(byte[] base, byte[] target) {
+        byte[] delta = Delta.create(base, target);
+        assertArrayEquals(target, Delta.apply(base, delta));
+        return delta;
+    }
+
+    @Test
+    public void emptyAndTiny() {
+        roundTrip(new byte[0], new byte[0]);
+        roundTrip(new byte[0], "abc".getBytes(StandardCharsets.UTF_8));
+        roundTrip("abc".getBytes(StandardCharsets.UTF_8), new byte[0]);
+    }
+
+    @Test
+    public void smallEditIsSmall() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 5000; i += 1) {
+            text.append("line ").append(i).append('\n');
+        }
+        byte[] base = text.toString().getBytes(StandardCharsets.UTF_8);
+        text.insert(20000, "an inserted line\n");
+        text.append("an appended line\n");
+        byte[] target = text.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] delta = roundTrip(base, target);
+        assertTrue(delta.length < 200);
+    }
+
+    @Test
+    public void unrelatedContents() {
+        Random random = new Random(61);
+        byte[] base = new byte[10000];
+        byte[] target = new byte[7777];
+        random.nextBytes(base);
+        random.nextBytes(target);
+        roundTrip(base, target);
+        roundTrip(target, base);
+    }
+}
@@ -0,0 +1,432 @@
+package gitlet;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+/** Line differences between two texts.  Lines are first replaced by
+ *  small integers, equal lines by equal integers, so that comparing
+ *  lines costs one int comparison.  Two algorithms find the edits.
+ *  MYERS is Myers' O(ND) algorithm in its linear-space form, which
+ *  splits the problem at the middle snake of a shortest edit script
+ *  and solves each half the same way.  HISTOGRAM, the default, is the
+ *  variant of patience diff used by JGit: it matches up the rarest
+ *  lines the two texts share first, extending each such match as far
+ *  as the texts agree, and solves the regions either side of the match
+ *  the same way, handing a region to Myers when every line it shares
+ *  is too common to be a useful anchor.  It produces edits that line up
+ *  with the structure of source text more often than Myers does, and
+ *  is usually faster.  Both work on one region at a time from an
+ *  explicit stack, so deep recursion never overflows.
+ *  @author Xinyu Fu
+ */
+class Diff {
+
+    /** Myers' algorithm. */
+    static final int MYERS = 0;
+    /** Histogram diff. */
+    static final int HISTOGRAM = 1;
+    /** Names of the algorithms, indexed by algorithm. */
+    static final List<String> NAMES = Arrays.asList("myers", "histogram");
+    /** Lines occurring more often than this in a region are not used as
+     *  histogram anchors. */
+    static final int MAX_CHAIN = 64;
+    /** Myers gives up on a minimal diff of a region after searching
+     *  this many steps, or the square root of the region's size if that
+     *  is more, and splits the region where its search got furthest. */
+    static final int MAX_COST = 256;
+    /** Lines of context around each hunk of a unified diff. */
+    static final int CONTEXT = 3;
+
+    /** A replacement of lines [beginA, endA) of the first text by lines
+     *  [beginB, endB) of the second.  Either range may be empty. */
+    static class Edit {
+        /** An edit replacing lines [BEGINA, ENDA) by [BEGINB, ENDB). */
+        Edit(int beginA, int endA, int beginB, int endB) {
+            this.beginA = beginA;
+            this.endA = endA;
+            this.beginB = beginB;
+            this.endB = endB;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Edit)) {
+                return false;
+            }
+            Edit other = (Edit) obj;
+            return beginA == other.beginA && endA == other.endA
+                && beginB == other.beginB && endB == other.endB;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((beginA * 31 + endA) * 31 + beginB) * 31 + endB;
+        }
+
+        @Override
+        public String toString() {
+            return "Edit[" + beginA + "-" + endA + "," + beginB + "-"
+                + endB + "]";
+        }
+
+        /** First replaced line of the first text. */
+        final int beginA;
+        /** End of the replaced lines of the first text. */
+        final int endA;
+        /** First replacing line of the second text. */
+        final int beginB;
+        /** End of the replacing lines of the second text. */
+        final int endB;
+    }
+
+    /** Returns the lines of TEXT, each with its line terminator; the last
+     *  line has none if TEXT does not end with one. */
+    static List<String> lines(String text) {
+        List<String> result = new ArrayList<>();
+        int start = 0;
+        for (int i = text.indexOf('\n'); i >= 0;
+             i = text.indexOf('\n', start)) {
+            result.add(text.substring(start, i + 1));
+            start = i + 1;
+        }
+        if (start < text.length()) {
+            result.add(text.substring(start));
+        }
+        return result;
+    }
+
+    /** Returns true iff TEXT looks binary, containing a NUL. */
+    static boolean isBinary(String text) {
+        return text.indexOf('\0') >= 0;
+    }
+
+    /** Returns the edits turning lines A into lines B, found by
+     *  ALGORITHM, in order. */
+    static List<Edit> diff(List<String> a, List<String> b, int algorithm) {
+        HashMap<String, Integer> ids = new HashMap<>();
+        int[] x = symbols(a, ids), y = symbols(b, ids);
+        return new Diff(x, y, ids.size()).run(algorithm);
+    }
+
+    /** Returns the ids of LINES, numbering new lines as they are added
+     *  to IDS. */
+    private static int[] symbols(List<String> lines,
+                                 HashMap<String, Integer> ids) {
+        int[] result = new int[lines.size()];
+        for (int i = 0; i < result.length; i += 1) {
+            Integer id = ids.putIfAbsent(lines.get(i), ids.size());
+            result[i] = id == null ? ids.size() - 1 : id;
+        }
+        return result;
+    }
+
+    /** A diff of the line ids A and B, drawn from NSYMBOLS ids. */
+    private Diff(int[] a, int[] b, int nsymbols) {
+        _a = a;
+        _b = b;
+        _nsymbols = nsymbols;
+    }
+
+    /** Returns the edits found by ALGORITHM, in order, with touching
+     *  edits joined. */
+    private List<Edit> run(int algorithm) {
+        ArrayDeque<int[]> regions = new ArrayDeque<>();
+        regions.push(new int[] { 0, _a.length, 0, _b.length });
+        while (!regions.isEmpty()) {
+            int[] r = regions.pop();
+            if (algorithm == HISTOGRAM) {
+                histogram(r[0], r[1], r[2], r[3], regions);
+            } else {
+                myers(r[0], r[1], r[2], r[3], regions);
+            }
+        }
+        _edits.sort(Comparator.comparingInt((Edit e) -> e.beginA)
+                    .thenComparingInt(e -> e.beginB));
+        List<Edit> result = new ArrayList<>();
+        for (Edit e : _edits) {
+            Edit last = result.isEmpty() ? null
+                : result.get(result.size() - 1);
+            if (last != null && last.endA == e.beginA
+                && last.endB == e.beginB) {
+                result.set(result.size() - 1, new Edit(last.beginA, e.endA,
+                                                       last.beginB, e.endB));
+            } else {
+                result.add(e);
+            }
+        }
+        return result;
+    }
+
+    /** Trim the lines common to the ends of region [A0, A1) x [B0, B1),
+     *  returning the remaining region, or null after recording it as an
+     *  edit if either side is then empty. */
+    private int[] trim(int a0, int a1, int b0, int b1) {
+        while (a0 < a1 && b0 < b1 && _a[a0] == _b[b0]) {
+            a0 += 1;
+            b0 += 1;
+        }
+        while (a0 < a1 && b0 < b1 && _a[a1 - 1] == _b[b1 - 1]) {
+            a1 -= 1;
+            b1 -= 1;
+        }
+        if (a0 == a1 || b0 == b1) {
+            if (a0 != a1 || b0 != b1) {
+                _edits.add(new Edit(a0, a1, b0, b1));
+            }
+            return null;
+        }
+        return new int[] { a0, a1, b0, b1 };
+    }
+
+    /** Diff region [A0, A1) x [B0, B1) by Myers' algorithm, pushing the
+     *  regions either side of its middle snake on REGIONS. */
+    private void myers(int a0, int a1, int b0, int b1,
+                       ArrayDeque<int[]> regions) {
+        int[] r = trim(a0, a1, b0, b1);
+        if (r == null) {
+            return;
+        }
+        a0 = r[0];
+        a1 = r[1];
+        b0 = r[2];
+        b1 = r[3];
+        int n = a1 - a0, m = b1 - b0, delta = n - m;
+        boolean odd = (delta & 1) != 0;
+        int max = (n + m + 1) / 2, off = max + 1;
+        int limit = Math.max(MAX_COST, (int) Math.sqrt(n + m));
+        int[] vf = new int[2 * max + 3], vb = new int[2 * max + 3];
+        vf[off + 1] = 0;
+        vb[off + 1] = 0;
+        for (int d = 0; d <= max; d += 1) {
+            for (int k = -d; k <= d; k += 2) {
+                int x = k == -d || (k != d && vf[off + k - 1]
+                                    < vf[off + k + 1])
+                    ? vf[off + k + 1] : vf[off + k - 1] + 1;
+                int y = x - k, xs = x, ys = y;
+                while (x < n && y < m && _a[a0 + x] == _b[b0 + y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vf[off + k] = x;
+                int kr = delta - k;
+                if (odd && kr >= -(d - 1) && kr <= d - 1
+                    && x + vb[off + kr] >= n) {
+                    split(a0, a1, b0, b1, xs, ys, x, y, regions);
+                    return;
+                }
+            }
+            for (int kr = -d; kr <= d; kr += 2) {
+                int x = kr == -d || (kr != d && vb[off + kr - 1]
+                                     < vb[off + kr + 1])
+                    ? vb[off + kr + 1] : vb[off + kr - 1] + 1;
+                int y = x - kr, xs = x, ys = y;
+                while (x < n && y < m
+                       && _a[a1 - 1 - x] == _b[b1 - 1 - y]) {
+                    x += 1;
+                    y += 1;
+                }
+                vb[off + kr] = x;
+                int k = delta - kr;
+                if (!odd && k >= -d && k <= d && x + vf[off + k] >= n) {
+                    split(a0, a1, b0, b1, n - x, m - y, n - xs, m - ys,
+                          regions);
+                    return;
+                }
+            }
+            if (d >= limit) {
+                cut(r, d, off, vf, vb, regions);
+                return;
+            }
+        }
+        throw new IllegalStateException("no middle snake");
+    }
+
+    /** Having searched D steps from both ends of REGION, { A0, A1, B0,
+     *  B1 }, without meeting, reaching the points VF and VB offset by
+     *  OFF, split the region at the point that got furthest from its
+     *  end, pushing the halves on REGIONS. */
+    private void cut(int[] region, int d, int off, int[] vf, int[] vb,
+                     ArrayDeque<int[]> regions) {
+        int n = region[1] - region[0], m = region[3] - region[2];
+        int bestF = -1, fx = 0, bestB = -1, bx = 0;
+        for (int k = -d; k <= d; k += 2) {
+            int x = vf[off + k], y = x - k;
+            if (x <= n && y >= 0 && y <= m && x + y > bestF) {
+                bestF = x + y;
+                fx = x;
+            }
+            x = vb[off + k];
+            y = x - k;
+            if (x <= n && y >= 0 && y <= m && x + y > bestB) {
+                bestB = x + y;
+                bx = x;
+            }
+        }
+        int x = bestF >= bestB ? fx : n - bx;
+        int y = bestF >= bestB ? bestF - fx : m - (bestB - bx);
+        split(region[0], region[1], region[2], region[3], x, y, x, y,
+              regions);
+    }
+
+    /** Push the regions of [A0, A1) x [B0, B1) before and after the snake
+     *  from (X, Y) to (U, V), relative to (A0, B0), on REGIONS. */
+    private void split(int a0, int a1, int b0, int b1, int x, int y,
+                       int u, int v, ArrayDeque<int[]> regions) {
+        regions.push(new int[] { a0 + u, a1, b0 + v, b1 });
+        regions.push(new int[] { a0, a0 + x, b0, b0 + y });
+    }
+
+    /** Diff region [A0, A1) x [B0, B1) by histogram diff, pushing the
+     *  regions either side of its best match on REGIONS. */
+    private void histogram(int a0, int a1, int b0, int b1,
+                           ArrayDeque<int[]> regions) {
+        int[] r = trim(a0, a1, b0, b1);
+        if (r == null) {
+            return;
+        }
+        a0 = r[0];
+        a1 = r[1];
+        b0 = r[2];
+        b1 = r[3];
+        if (_count == null) {
+            _count = new int[_nsymbols];
+            _head = new int[_nsymbols];
+            Arrays.fill(_head, -1);
+            _next = new int[_a.length];
+        }
+        for (int i = a1 - 1; i >= a0; i -= 1) {
+            _next[i] = _head[_a[i]];
+            _head[_a[i]] = i;
+            _count[_a[i]] += 1;
+        }
+        int bestCount = MAX_CHAIN + 1, bestA = -1, bestB = -1, bestLen = 0;
+        boolean common = false;
+        for (int j = b0; j < b1;) {
+            int s = _b[j], nextJ = j + 1;
+            if (_count[s] > 0) {
+                common = true;
+            }
+            if (_count[s] > 0 && _count[s] <= bestCount) {
+                for (int i = _head[s]; i >= 0; i = _next[i]) {
+                    int as = i, bs = j, ae = i + 1, be = j + 1;
+                    while (as > a0 && bs > b0 && _a[as - 1] == _b[bs - 1]) {
+                        as -= 1;
+                        bs -= 1;
+                    }
+                    while (ae < a1 && be < b1 && _a[ae] == _b[be]) {
+                        ae += 1;
+                        be += 1;
+                    }
+                    int rarity = Integer.MAX_VALUE;
+                    for (int p = as; p < ae; p += 1) {
+                        rarity = Math.min(rarity, _count[_a[p]]);
+                    }
+                    if (rarity < bestCount
+                        || rarity == bestCount && ae - as > bestLen) {
+                        bestCount = rarity;
+                        bestA = as;
+                        bestB = bs;
+                        bestLen = ae - as;
+                    }
+                    nextJ = Math.max(nextJ, be);
+                }
+            }
+            j = nextJ;
+        }
+        for (int i = a0; i < a1; i += 1) {
+            _head[_a[i]] = -1;
+            _count[_a[i]] = 0;
+        }
+        if (bestLen > 0) {
+            regions.push(new int[] { bestA + bestLen, a1,
+                                     bestB + bestLen, b1 });
+            regions.push(new int[] { a0, bestA, b0, bestB });
+        } else if (common) {
+            myers(a0, a1, b0, b1, regions);
+        } else {
+            _edits.add(new Edit(a0, a1, b0, b1));
+        }
+    }
+
+    /** Returns a unified diff, with CONTEXT lines of context, of lines A
+     *  of the file named NAMEA and lines B of the file named NAMEB, whose
+     *  differences are EDITS.  Returns the empty string if there are no
+     *  edits. */
+    static String unified(String nameA, String nameB, List<String> a,
+                          List<String> b, List<Edit> edits) {
+        StringBuilder out = new StringBuilder();
+        if (edits.isEmpty()) {
+            return "";
+        }
+        out.append("--- ").append(nameA).append("\n");
+        out.append("+++ ").append(nameB).append("\n");
+        for (int first = 0, last; first < edits.size(); first = last + 1) {
+            last = first;
+            while (last + 1 < edits.size() && edits.get(last + 1).beginA
+                   - edits.get(last).endA <= 2 * CONTEXT) {
+                last += 1;
+            }
+            Edit e0 = edits.get(first), e1 = edits.get(last);
+            int aStart = Math.max(0, e0.beginA - CONTEXT);
+            int aEnd = Math.min(a.size(), e1.endA + CONTEXT);
+            int bStart = e0.beginB - (e0.beginA - aStart);
+            int bEnd = e1.endB + (aEnd - e1.endA);
+            out.append("@@ -").append(range(aStart, aEnd - aStart))
+                .append(" +").append(range(bStart, bEnd - bStart))
+                .append(" @@\n");
+            int line = aStart;
+            for (int i = first; i <= last; i += 1) {
+                Edit e = edits.get(i);
+                append(out, ' ', a, line, e.beginA);
+                append(out, '-', a, e.beginA, e.endA);
+                append(out, '+', b, e.beginB, e.endB);
+                line = e.endA;
+            }
+            append(out, ' ', a, line, aEnd);
+        }
+        return out.toString();
+    }
+
+    /** Returns the range of LENGTH lines starting at line START, counting
+     *  from 0, as a hunk header gives it. */
+    private static String range(int start, int length) {
+        if (length == 1) {
+            return Integer.toString(start + 1);
+        }
+        return (length == 0 ? start : start + 1) + "," + length;
+    }
+
+    /** Append lines [FROM, TO) of LINES to OUT, each after PREFIX. */
+    private static void append(StringBuilder out, char prefix,
+                               List<String> lines, int from, int to) {
+        for (int i = from; i < to; i += 1) {
+            String line = lines.get(i);
+            out.append(prefix).append(line);
+            if (!line.endsWith("\n")) {
+                out.append("\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+    /** Ids of the lines of the first text. */
+    private final int[] _a;
+    /** Ids of the lines of the second text. */
+    private final int[] _b;
+    /** Number of distinct line ids. */
+    private final int _nsymbols;
+    /** Edits found so far, in no particular order. */
+    private final List<Edit> _edits = new ArrayList<>();
+    /** Histogram: occurrences of each id in the current region of the
+     *  first text. */
+    private int[] _count;
+    /** Histogram: the first position of each id in the current region of
+     *  the first text, or -1. */
+    private int[] _head;
+    /** Histogram: the next position in the current region of the first
+     *  text holding the same id as each position, or -1. */
+    private int[] _next;
+}
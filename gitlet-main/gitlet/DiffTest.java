@@ -0,0 +1,172 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Diff and Merge3 classes.
+ *  @author Xinyu Fu
+ */
+public class DiffTest {
+
+    /** Returns one line for each character of CHARS. */
+    private static List<String> lines(String chars) {
+        List<String> result = new ArrayList<>();
+        for (char c : chars.toCharArray()) {
+            result.add(c + "\n");
+        }
+        return result;
+    }
+
+    /** Returns the text with one line for each character of CHARS. */
+    private static String text(String chars) {
+        return String.join("", lines(chars));
+    }
+
+    /** Returns A with EDITS applied, taking new lines from B, after
+     *  checking that EDITS are in order and do not touch. */
+    private static List<String> apply(List<String> a, List<String> b,
+                                      List<Diff.Edit> edits) {
+        List<String> result = new ArrayList<>();
+        int line = 0, lineB = 0;
+        for (Diff.Edit e : edits) {
+            assertTrue(e.beginA >= line && e.beginB >= lineB);
+            assertTrue(line == 0 || e.beginA > line || e.beginB > lineB);
+            assertEquals(a.subList(line, e.beginA), b.subList(lineB, e.beginB));
+            result.addAll(a.subList(line, e.beginA));
+            result.addAll(b.subList(e.beginB, e.endB));
+            line = e.endA;
+            lineB = e.endB;
+        }
+        result.addAll(a.subList(line, a.size()));
+        return result;
+    }
+
+    /** Returns the number of lines inserted and deleted by EDITS. */
+    private static int cost(List<Diff.Edit> edits) {
+        int result = 0;
+        for (Diff.Edit e : edits) {
+            result += e.endA - e.beginA + e.endB - e.beginB;
+        }
+        return result;
+    }
+
+    /** Returns the length of the longest common subsequence of A and B. */
+    private static int lcs(List<String> a, List<String> b) {
+        int[][] best = new int[a.size() + 1][b.size() + 1];
+        for (int i = 1; i <= a.size(); i += 1) {
+            for (int j = 1; j <= b.size(); j += 1) {
+                best[i][j] = a.get(i - 1).equals(b.get(j - 1))
+                    ? best[i - 1][j - 1] + 1
+                    : Math.max(best[i - 1][j], best[i][j - 1]);
+            }
+        }
+        return best[a.size()][b.size()];
+    }
+
+    /** Returns a random string of LENGTH characters from "abcd". */
+    private static String random(Random rand, int length) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; i += 1) {
+            result.append("abcd".charAt(rand.nextInt(4)));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void findsEdits() {
+        assertEquals(Arrays.asList(new Diff.Edit(1, 2, 1, 2)),
+                     Diff.diff(lines("abc"), lines("axc"), Diff.MYERS));
+        assertEquals(Arrays.asList(new Diff.Edit(1, 2, 1, 2)),
+                     Diff.diff(lines("abc"), lines("axc"), Diff.HISTOGRAM));
+        assertEquals(Arrays.asList(new Diff.Edit(0, 0, 0, 2)),
+                     Diff.diff(lines(""), lines("ab"), Diff.HISTOGRAM));
+        assertEquals(Arrays.asList(), Diff.diff(lines("ab"), lines("ab"),
+                                                Diff.MYERS));
+    }
+
+    @Test
+    public void randomDiffsAreCorrect() {
+        Random rand = new Random(61);
+        for (int trial = 0; trial < 300; trial += 1) {
+            List<String> a = lines(random(rand, rand.nextInt(40)));
+            List<String> b = lines(random(rand, rand.nextInt(40)));
+            int shortest = a.size() + b.size() - 2 * lcs(a, b);
+            for (int algorithm = 0; algorithm < 2; algorithm += 1) {
+                List<Diff.Edit> edits = Diff.diff(a, b, algorithm);
+                assertEquals(b, apply(a, b, edits));
+                if (algorithm == Diff.MYERS) {
+                    assertEquals(shortest, cost(edits));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void largeFilesAreFast() {
+        List<String> a = new ArrayList<>(), b = new ArrayList<>();
+        Random rand = new Random(3);
+        for (int i = 0; i < 100000; i += 1) {
+            String line = "line " + i + "\n";
+            a.add(line);
+            if (rand.nextInt(100) != 0) {
+                b.add(line);
+            }
+            if (rand.nextInt(100) == 0) {
+                b.add("new " + i + "\n");
+            }
+        }
+        for (int algorithm = 0; algorithm < 2; algorithm += 1) {
+            long start = System.nanoTime();
+            List<Diff.Edit> edits = Diff.diff(a, b, algorithm);
+            long millis = (System.nanoTime() - start) / 1000000;
+            assertEquals(b, apply(a, b, edits));
+            assertTrue(Diff.NAMES.get(algorithm) + " took " + millis + "ms",
+                       millis < 2000);
+        }
+    }
+
+    @Test
+    public void formatsUnifiedDiffs() {
+        List<String> a = lines("abcdefghij"), b = lines("abcDefghiJ");
+        b.set(9, "J");
+        assertEquals("--- a/f\n+++ b/f\n@@ -1,10 +1,10 @@\n a\n b\n c\n"
+                     + "-d\n+D\n e\n f\n g\n h\n i\n-j\n+J\n"
+                     + "\\ No newline at end of file\n",
+                     Diff.unified("a/f", "b/f", a, b,
+                                  Diff.diff(a, b, Diff.HISTOGRAM)));
+        assertEquals("--- /dev/null\n+++ b/f\n@@ -0,0 +1 @@\n+a\n",
+                     Diff.unified("/dev/null", "b/f", lines(""), lines("a"),
+                                  Diff.diff(lines(""), lines("a"),
+                                            Diff.MYERS)));
+    }
+
+    @Test
+    public void mergesSeparateEdits() {
+        Merge3 merge = new Merge3(text("abcdefgh"), text("aBcdefgh"),
+                                  text("abcdefGhi"), Diff.HISTOGRAM);
+        assertEquals(0, merge.conflicts());
+        assertEquals(text("aBcdefGhi"), merge.result());
+        merge = new Merge3(text("abc"), text("aXc"), text("aXc"),
+                           Diff.MYERS);
+        assertEquals(0, merge.conflicts());
+        assertEquals(text("aXc"), merge.result());
+    }
+
+    @Test
+    public void marksOverlappingEdits() {
+        Merge3 merge = new Merge3(text("abcdefgh"), text("abXdefgh"),
+                                  text("abYdefgH"), Diff.HISTOGRAM);
+        assertEquals(1, merge.conflicts());
+        assertEquals(text("ab") + Merge3.OURS + text("X") + Merge3.SEPARATOR
+                     + text("Y") + Merge3.THEIRS + text("defgH"),
+                     merge.result());
+        merge = new Merge3("base\n", "ours\n", "theirs\n", Diff.MYERS);
+        assertEquals(Merge3.OURS + "ours\n" + Merge3.SEPARATOR + "theirs\n"
+                     + Merge3.THEIRS, merge.result());
+    }
+}
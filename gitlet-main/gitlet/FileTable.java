@@ -0,0 +1,464 @@
+package gitlet;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/** An immutable map from file names to blob ids, kept as a hash array
+ *  mapped trie.  Each node covers five bits of a name's hash and holds,
+ *  in a bitmap-indexed array, a file or a child node for each value of
+ *  those bits that is in use; names whose hashes are equal in all 32
+ *  bits share a collision node.  A table with one file changed is made
+ *  by copying only the nodes on the path to it, so a commit's table
+ *  shares all the rest with its parent's, and comparing two tables
+ *  skips the nodes they share.  The shape of a trie depends only on
+ *  what it holds, never on the order of changes.
+ *  @author Xinyu Fu
+ */
+final class FileTable extends AbstractMap<String, String> {
+
+    /** The table with no files. */
+    static final FileTable EMPTY = new FileTable(null, 0);
+
+    /** Bits of the hash used at each level. */
+    private static final int BITS = 5;
+    /** Mask selecting the bits of one level. */
+    private static final int MASK = (1 << BITS) - 1;
+
+    /** One file of a table. */
+    private static final class Leaf implements Map.Entry<String, String> {
+        /** The file NAME, whose hash is HASH, with blob ID. */
+        Leaf(String name, int hash, String id) {
+            _name = name;
+            _hash = hash;
+            _id = id;
+        }
+
+        @Override
+        public String getKey() {
+            return _name;
+        }
+
+        @Override
+        public String getValue() {
+            return _id;
+        }
+
+        @Override
+        public String setValue(String value) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) obj;
+            return _name.equals(e.getKey()) && _id.equals(e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return _name.hashCode() ^ _id.hashCode();
+        }
+
+        /** File name. */
+        private final String _name;
+        /** Hash of _name. */
+        private final int _hash;
+        /** Blob id. */
+        private final String _id;
+    }
+
+    /** An inner node: the slots in use, each a Leaf or a child. */
+    private static final class Node {
+        /** A node using the slots whose bits are set in BITMAP, holding
+         *  SLOTS in order, which it keeps. */
+        Node(int bitmap, Object[] slots) {
+            _bitmap = bitmap;
+            _slots = slots;
+        }
+
+        /** Bit i is set iff slot i is in use. */
+        private final int _bitmap;
+        /** The Leaf or child of each slot in use. */
+        private final Object[] _slots;
+    }
+
+    /** Files whose names have the same hash. */
+    private static final class Collision {
+        /** The files LEAVES, which it keeps. */
+        Collision(Leaf[] leaves) {
+            _leaves = leaves;
+        }
+
+        /** The files, at least two. */
+        private final Leaf[] _leaves;
+    }
+
+    /** A table with trie ROOT holding SIZE files. */
+    private FileTable(Node root, int size) {
+        _root = root;
+        _size = size;
+    }
+
+    /** Returns a table holding the files of FILES. */
+    static FileTable of(Map<String, String> files) {
+        if (files instanceof FileTable) {
+            return (FileTable) files;
+        }
+        return EMPTY.with(files);
+    }
+
+    /** Returns the hash used for NAME. */
+    private static int hash(String name) {
+        int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /** Returns the slot of HASH at level SHIFT as a one-bit mask. */
+    private static int bit(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /** Returns the index in the slots of BITMAP of the slot BIT. */
+    private static int index(int bitmap, int bit) {
+        return Integer.bitCount(bitmap & (bit - 1));
+    }
+
+    @Override
+    public int size() {
+        return _size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public String get(Object key) {
+        if (!(key instanceof String)) {
+            return null;
+        }
+        String name = (String) key;
+        int hash = hash(name);
+        Object slot = _root;
+        for (int shift = 0; slot instanceof Node; shift += BITS) {
+            Node node = (Node) slot;
+            int bit = bit(hash, shift);
+            if ((node._bitmap & bit) == 0) {
+                return null;
+            }
+            slot = node._slots[index(node._bitmap, bit)];
+        }
+        if (slot == null || slot instanceof Leaf) {
+            Leaf leaf = (Leaf) slot;
+            return leaf != null && leaf._name.equals(name) ? leaf._id : null;
+        }
+        for (Leaf leaf : ((Collision) slot)._leaves) {
+            if (leaf._name.equals(name)) {
+                return leaf._id;
+            }
+        }
+        return null;
+    }
+
+    /** Returns this table with file NAME mapped to ID, or without it if
+     *  ID is null. */
+    FileTable with(String name, String id) {
+        int hash = hash(name);
+        int[] delta = new int[1];
+        Object root;
+        if (id == null) {
+            root = _root == null ? null : remove(_root, name, hash, 0, delta);
+            if (root instanceof Leaf) {
+                Leaf leaf = (Leaf) root;
+                root = new Node(bit(leaf._hash, 0), new Object[] { leaf });
+            }
+        } else {
+            root = put(_root, new Leaf(name, hash, id), 0, delta);
+        }
+        if (root == _root) {
+            return this;
+        }
+        return new FileTable((Node) root, _size + delta[0]);
+    }
+
+    /** Returns this table with each file of CHANGES mapped to its id
+     *  there, or removed if that is null. */
+    FileTable with(Map<String, String> changes) {
+        FileTable result = this;
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            result = result.with(change.getKey(), change.getValue());
+        }
+        return result;
+    }
+
+    /** Returns SLOT, the Node, Collision or Leaf at level SHIFT, or null
+     *  for an empty root, with LEAF added, adding 1 to DELTA[0] if its
+     *  name is new. */
+    private static Object put(Object slot, Leaf leaf, int shift,
+                              int[] delta) {
+        if (slot == null) {
+            delta[0] += 1;
+            return new Node(bit(leaf._hash, shift), new Object[] { leaf });
+        }
+        if (slot instanceof Leaf) {
+            Leaf old = (Leaf) slot;
+            if (old._name.equals(leaf._name)) {
+                return old._id.equals(leaf._id) ? old : leaf;
+            }
+            delta[0] += 1;
+            return pair(old, leaf, shift);
+        }
+        if (slot instanceof Collision) {
+            Leaf[] leaves = ((Collision) slot)._leaves;
+            for (int i = 0; i < leaves.length; i += 1) {
+                if (leaves[i]._name.equals(leaf._name)) {
+                    if (leaves[i]._id.equals(leaf._id)) {
+                        return slot;
+                    }
+                    leaves = leaves.clone();
+                    leaves[i] = leaf;
+                    return new Collision(leaves);
+                }
+            }
+            delta[0] += 1;
+            leaves = Arrays.copyOf(leaves, leaves.length + 1);
+            leaves[leaves.length - 1] = leaf;
+            return new Collision(leaves);
+        }
+        Node node = (Node) slot;
+        int bit = bit(leaf._hash, shift);
+        int i = index(node._bitmap, bit);
+        if ((node._bitmap & bit) == 0) {
+            delta[0] += 1;
+            Object[] slots = new Object[node._slots.length + 1];
+            System.arraycopy(node._slots, 0, slots, 0, i);
+            slots[i] = leaf;
+            System.arraycopy(node._slots, i, slots, i + 1,
+                             node._slots.length - i);
+            return new Node(node._bitmap | bit, slots);
+        }
+        Object child = node._slots[i];
+        Object updated = put(child, leaf, shift + BITS, delta);
+        if (updated == child) {
+            return node;
+        }
+        Object[] slots = node._slots.clone();
+        slots[i] = updated;
+        return new Node(node._bitmap, slots);
+    }
+
+    /** Returns the node at level SHIFT holding the leaves A and B, whose
+     *  names differ. */
+    private static Object pair(Leaf a, Leaf b, int shift) {
+        if (shift >= Integer.SIZE) {
+            return new Collision(new Leaf[] { a, b });
+        }
+        int bitA = bit(a._hash, shift), bitB = bit(b._hash, shift);
+        if (bitA == bitB) {
+            return new Node(bitA,
+                            new Object[] { pair(a, b, shift + BITS) });
+        }
+        return new Node(bitA | bitB,
+                        Integer.compareUnsigned(bitA, bitB) < 0
+                        ? new Object[] { a, b } : new Object[] { b, a });
+    }
+
+    /** Returns SLOT, a Node or Collision at level SHIFT, without the file
+     *  NAME, whose hash is HASH, subtracting 1 from DELTA[0] if it was
+     *  there.  A result holding one file is returned as that Leaf, and
+     *  one holding none as null. */
+    private static Object remove(Object slot, String name, int hash,
+                                 int shift, int[] delta) {
+        if (slot instanceof Collision) {
+            Leaf[] leaves = ((Collision) slot)._leaves;
+            for (int i = 0; i < leaves.length; i += 1) {
+                if (leaves[i]._name.equals(name)) {
+                    delta[0] -= 1;
+                    if (leaves.length == 2) {
+                        return leaves[1 - i];
+                    }
+                    Leaf[] rest = new Leaf[leaves.length - 1];
+                    System.arraycopy(leaves, 0, rest, 0, i);
+                    System.arraycopy(leaves, i + 1, rest, i,
+                                     rest.length - i);
+                    return new Collision(rest);
+                }
+            }
+            return slot;
+        }
+        Node node = (Node) slot;
+        int bit = bit(hash, shift);
+        if ((node._bitmap & bit) == 0) {
+            return node;
+        }
+        int i = index(node._bitmap, bit);
+        Object child = node._slots[i], updated;
+        if (child instanceof Leaf) {
+            if (!((Leaf) child)._name.equals(name)) {
+                return node;
+            }
+            delta[0] -= 1;
+            updated = null;
+        } else {
+            updated = remove(child, name, hash, shift + BITS, delta);
+            if (updated == child) {
+                return node;
+            }
+        }
+        if (updated != null) {
+            if (node._slots.length == 1 && updated instanceof Leaf) {
+                return updated;
+            }
+            Object[] slots = node._slots.clone();
+            slots[i] = updated;
+            return new Node(node._bitmap, slots);
+        }
+        if (node._slots.length == 1) {
+            return null;
+        }
+        if (node._slots.length == 2 && node._slots[1 - i] instanceof Leaf) {
+            return node._slots[1 - i];
+        }
+        Object[] slots = new Object[node._slots.length - 1];
+        System.arraycopy(node._slots, 0, slots, 0, i);
+        System.arraycopy(node._slots, i + 1, slots, i, slots.length - i);
+        return new Node(node._bitmap & ~bit, slots);
+    }
+
+    /** Add to CHANGES each file whose blob differs between A and B,
+     *  mapped to its ids in A and B, null where it is absent.  Parts of
+     *  the tries that A and B share are skipped. */
+    static void diff(FileTable a, FileTable b,
+                     Map<String, String[]> changes) {
+        diff(a._root, b._root, changes);
+    }
+
+    /** Add to CHANGES the differences between the slots X and Y of the
+     *  same level, either of which may be null. */
+    private static void diff(Object x, Object y,
+                             Map<String, String[]> changes) {
+        if (x == y) {
+            return;
+        }
+        if (x instanceof Node && y instanceof Node) {
+            Node nx = (Node) x, ny = (Node) y;
+            for (int bits = nx._bitmap | ny._bitmap; bits != 0;
+                 bits &= bits - 1) {
+                int bit = bits & -bits;
+                diff((nx._bitmap & bit) == 0 ? null
+                     : nx._slots[index(nx._bitmap, bit)],
+                     (ny._bitmap & bit) == 0 ? null
+                     : ny._slots[index(ny._bitmap, bit)], changes);
+            }
+            return;
+        }
+        FileTable tx = EMPTY.withAll(x), ty = EMPTY.withAll(y);
+        for (Map.Entry<String, String> e : tx.entrySet()) {
+            String other = ty.get(e.getKey());
+            if (!e.getValue().equals(other)) {
+                changes.put(e.getKey(), new String[] { e.getValue(), other });
+            }
+        }
+        for (Map.Entry<String, String> e : ty.entrySet()) {
+            if (!tx.containsKey(e.getKey())) {
+                changes.put(e.getKey(), new String[] { null, e.getValue() });
+            }
+        }
+    }
+
+    /** Returns this table with the files under SLOT added. */
+    private FileTable withAll(Object slot) {
+        FileTable result = this;
+        for (Iterator<Leaf> it = new Leaves(slot); it.hasNext();) {
+            Leaf leaf = it.next();
+            result = result.with(leaf._name, leaf._id);
+        }
+        return result;
+    }
+
+    /** The files under one slot, depth first. */
+    private static final class Leaves implements Iterator<Leaf> {
+        /** The files under SLOT, which may be null. */
+        Leaves(Object slot) {
+            if (slot != null) {
+                _pending.push(slot);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!_pending.isEmpty()
+                   && !(_pending.peek() instanceof Leaf)) {
+                Object slot = _pending.pop();
+                Object[] slots = slot instanceof Node
+                    ? ((Node) slot)._slots : ((Collision) slot)._leaves;
+                for (int i = slots.length - 1; i >= 0; i -= 1) {
+                    _pending.push(slots[i]);
+                }
+            }
+            return !_pending.isEmpty();
+        }
+
+        @Override
+        public Leaf next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return (Leaf) _pending.pop();
+        }
+
+        /** Slots still to visit, next on top. */
+        private final ArrayDeque<Object> _pending = new ArrayDeque<>();
+    }
+
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AbstractSet<Map.Entry<String, String>>() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                Iterator<Leaf> leaves = new Leaves(_root);
+                return new Iterator<Map.Entry<String, String>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return leaves.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<String, String> next() {
+                        return leaves.next();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return _size;
+            }
+
+            @Override
+            public boolean contains(Object obj) {
+                if (!(obj instanceof Map.Entry)) {
+                    return false;
+                }
+                Map.Entry<?, ?> e = (Map.Entry<?, ?>) obj;
+                return Objects.equals(get(e.getKey()), e.getValue());
+            }
+        };
+    }
+
+    /** The trie, or null if the table is empty. */
+    private final Node _root;
+    /** Number of files. */
+    private final int _size;
+}
@@ -0,0 +1,102 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the FileTable class.
+ *  @author Xinyu Fu
+ */
+public class FileTableTest {
+
+    @Test
+    public void matchesHashMap() {
+        Random rand = new Random(22);
+        HashMap<String, String> expected = new HashMap<>();
+        FileTable table = FileTable.EMPTY;
+        for (int i = 0; i < 20000; i += 1) {
+            String name = "dir" + rand.nextInt(20) + "/f" + rand.nextInt(400);
+            String id = rand.nextInt(3) == 0 ? null
+                : Utils.sha1(Integer.toString(rand.nextInt(5)));
+            if (id == null) {
+                expected.remove(name);
+            } else {
+                expected.put(name, id);
+            }
+            table = table.with(name, id);
+        }
+        assertEquals(expected.size(), table.size());
+        assertEquals(expected, table);
+        assertEquals(table, expected);
+        for (String name : expected.keySet()) {
+            assertEquals(expected.get(name), table.get(name));
+        }
+        assertNull(table.get("missing"));
+    }
+
+    @Test
+    public void handlesEqualHashes() {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        FileTable table = FileTable.EMPTY.with("Aa", Utils.sha1("1"))
+            .with("BB", Utils.sha1("2")).with("AaBB", Utils.sha1("3"))
+            .with("BBAa", Utils.sha1("4"));
+        assertEquals(4, table.size());
+        assertEquals(Utils.sha1("2"), table.get("BB"));
+        table = table.with("Aa", null);
+        assertEquals(3, table.size());
+        assertNull(table.get("Aa"));
+        assertEquals(Utils.sha1("2"), table.get("BB"));
+        table = table.with("BB", null).with("AaBB", null).with("BBAa", null);
+        assertTrue(table.isEmpty());
+    }
+
+    @Test
+    public void unchangedTablesAreShared() {
+        FileTable table = FileTable.EMPTY.with("a", Utils.sha1("a"));
+        assertTrue(table == table.with("a", Utils.sha1("a")));
+        assertTrue(table == table.with("b", null));
+        FileTable other = table.with("b", Utils.sha1("b"));
+        assertFalse(table == other);
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void diffFindsChanges() {
+        List<String> names = new ArrayList<>();
+        HashMap<String, String> files = new HashMap<>();
+        for (int i = 0; i < 5000; i += 1) {
+            names.add("f" + i);
+            files.put("f" + i, Utils.sha1("v" + i));
+        }
+        FileTable a = FileTable.of(files);
+        Collections.shuffle(names, new Random(5));
+        FileTable b = FileTable.EMPTY;
+        for (String name : names) {
+            b = b.with(name, files.get(name));
+        }
+        TreeMap<String, String[]> changes = new TreeMap<>();
+        FileTable.diff(a, b, changes);
+        assertTrue(changes.isEmpty());
+        b = b.with("f7", Utils.sha1("new")).with("f8", null)
+            .with("g", Utils.sha1("g"));
+        FileTable.diff(a, b, changes);
+        assertEquals("[f7, f8, g]", changes.keySet().toString());
+        assertEquals(Arrays.asList(Utils.sha1("v7"), Utils.sha1("new")),
+                     Arrays.asList(changes.get("f7")));
+        assertEquals(Arrays.asList(Utils.sha1("v8"), null),
+                     Arrays.asList(changes.get("f8")));
+        assertEquals(Arrays.asList(null, Utils.sha1("g")),
+                     Arrays.asList(changes.get("g")));
+        Map<String, String[]> empty = new HashMap<>();
+        FileTable.diff(b, b, empty);
+        assertTrue(empty.isEmpty());
+    }
+}
@@ -0,0 +1,223 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/** Deletes the loose objects of a repository that nothing reaches.
+ *  Marking starts from the head of every branch, the remote-tracking
+ *  branches that fetch writes included, and from the blobs on the
+ *  stage.  It follows parents on the CommitGraph, and the trees, blobs
+ *  and chunks of each commit.  An unmarked loose object is deleted
+ *  only if it is older than the grace period, so that the objects of a
+ *  command still running, which no branch names yet, survive.  The
+ *  loose objects younger than that are marked from as well, so that
+ *  what they name survives with them.  Packed
+ *  objects are kept.  The marked objects then become the table of new
+ *  Bitmaps, with a bitmap for each head, written before anything is
+ *  deleted.  If commits were deleted, the commit graph, commit index
+ *  and catalog, which may name them, are rebuilt.
+ *  @author Xinyu Fu
+ */
+class GarbageCollector {
+
+    /** Grace period, in seconds, of a repository that does not set
+     *  one. */
+    static final long DEFAULT_GRACE = TimeUnit.DAYS.toSeconds(14);
+
+    /** A collection of the .gitlet directory GITLETDIR, whose stage is
+     *  STAGE, that keeps unreachable objects younger than GRACE
+     *  seconds. */
+    GarbageCollector(File gitletDir, Stage stage, long grace) {
+        _dir = gitletDir;
+        _store = ObjectStore.of(gitletDir);
+        _stage = stage;
+        _grace = grace;
+    }
+
+    /** Returns the grace period, in seconds, set for the .gitlet
+     *  directory GITLETDIR. */
+    static long graceOf(File gitletDir) {
+        String grace = Config.get(gitletDir, Config.GC_GRACE, "");
+        return grace.isEmpty() ? DEFAULT_GRACE : Long.parseLong(grace);
+    }
+
+    /** Mark, write the bitmaps and sweep. */
+    void run() throws IOException {
+        _cutoff = System.currentTimeMillis()
+            - TimeUnit.SECONDS.toMillis(_grace);
+        TreeSet<String> heads = new TreeSet<>();
+        for (String id : Transfer.heads(_dir).values()) {
+            if (Utils.isUid(id) && _store.contains(ObjectStore.COMMITS, id)) {
+                heads.add(id);
+            }
+        }
+        HashSet<String> marked = new HashSet<>();
+        for (String id : heads) {
+            mark(id, marked);
+        }
+        for (String blob : _stage.changes().values()) {
+            if (blob != null) {
+                Blobs.collect(_store, blob, marked, new HashMap<>());
+            }
+        }
+        markRecent(marked);
+        writeBitmaps(heads, marked);
+        sweep(marked);
+        if (_commits > 0) {
+            CommitGraph graph = CommitGraph.of(_dir);
+            graph.invalidate();
+            for (String id : heads) {
+                graph.position(id);
+            }
+            CommitIndex.of(_dir).invalidate();
+            Catalog.of(_dir).invalidate();
+        }
+    }
+
+    /** Returns the number of objects deleted by run. */
+    int removed() {
+        return _removed;
+    }
+
+    /** Add to MARKED commit HEAD and everything it reaches that is not
+     *  already there. */
+    private void mark(String head, Set<String> marked) {
+        CommitGraph graph = CommitGraph.of(_dir);
+        ArrayDeque<Integer> stack = new ArrayDeque<>();
+        if (marked.add(head)) {
+            stack.push(graph.position(head));
+        }
+        walk(graph, stack, marked, null);
+    }
+
+    /** Add to MARKED the loose objects younger than the grace period,
+     *  which sweep keeps, and everything they reach: the ancestors and
+     *  contents of a commit, the contents of a tree and the chunks of a
+     *  blob. */
+    private void markRecent(Set<String> marked) {
+        Map<String, String> scratch = new HashMap<>();
+        for (String kind : ObjectStore.KINDS) {
+            List<String> names = Utils.plainFilenamesIn(new File(_dir, kind));
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                if (!Utils.isUid(name) || marked.contains(name)
+                    || _store.looseFile(kind, name).lastModified()
+                       <= _cutoff) {
+                    continue;
+                }
+                if (kind.equals(ObjectStore.COMMITS)) {
+                    mark(name, marked);
+                } else if (kind.equals(ObjectStore.TREES)) {
+                    Tree.collect(_store, name, marked, scratch);
+                } else {
+                    Blobs.collect(_store, name, marked, scratch);
+                }
+                scratch.clear();
+            }
+        }
+    }
+
+    /** Add to SEEN the contents of the commits in STACK and of their
+     *  ancestors, and the ancestors themselves, popping STACK until it
+     *  is empty.  The commits in STACK are already in SEEN.  If BITMAPS
+     *  is not null, SEEN is a set over it, and the ancestors that are
+     *  heads with bitmaps are added through those instead. */
+    private void walk(CommitGraph graph, ArrayDeque<Integer> stack,
+                      Set<String> seen, Bitmaps bitmaps) {
+        Map<String, String> scratch = new HashMap<>();
+        while (!stack.isEmpty()) {
+            int pos = stack.pop();
+            String id = graph.id(pos);
+            if (bitmaps != null
+                && bitmaps.addReachable((Bitmaps.Reachable) seen, id)) {
+                continue;
+            }
+            Commit commit = Commit.decode(Compression.decode(
+                _store.read(ObjectStore.COMMITS, id)), _store);
+            if (commit.getTree() != null) {
+                Tree.collect(_store, commit.getTree(), seen, scratch);
+            } else {
+                for (String blob : commit.getFiles().values()) {
+                    Blobs.collect(_store, blob, seen, scratch);
+                }
+            }
+            scratch.clear();
+            for (int p : new int[] { graph.parent(pos),
+                                     graph.secondParent(pos) }) {
+                if (p != CommitGraph.NONE && seen.add(graph.id(p))) {
+                    stack.push(p);
+                }
+            }
+        }
+    }
+
+    /** Write bitmaps over MARKED for each of HEADS, doing ancestors first
+     *  so that a head below another is added through its bitmap. */
+    private void writeBitmaps(Set<String> heads, Set<String> marked) {
+        CommitGraph graph = CommitGraph.of(_dir);
+        List<String> order = new ArrayList<>(heads);
+        order.sort((x, y) -> Integer.compare(
+            graph.generation(graph.position(x)),
+            graph.generation(graph.position(y))));
+        Bitmaps bitmaps = new Bitmaps(_dir, marked);
+        for (String head : order) {
+            Bitmaps.Reachable reachable = bitmaps.reachable();
+            reachable.add(head);
+            ArrayDeque<Integer> stack = new ArrayDeque<>();
+            stack.push(graph.position(head));
+            walk(graph, stack, reachable, bitmaps);
+            bitmaps.put(head, reachable);
+        }
+        bitmaps.save();
+    }
+
+    /** Delete the loose objects not in MARKED that are older than the
+     *  grace period. */
+    private void sweep(Set<String> marked) throws IOException {
+        for (String kind : ObjectStore.KINDS) {
+            List<String> names = Utils.plainFilenamesIn(new File(_dir, kind));
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                File file = _store.looseFile(kind, name);
+                if (Utils.isUid(name) && !marked.contains(name)
+                    && file.lastModified() <= _cutoff) {
+                    Files.delete(file.toPath());
+                    _removed += 1;
+                    if (kind.equals(ObjectStore.COMMITS)) {
+                        _commits += 1;
+                    }
+                }
+            }
+        }
+    }
+
+    /** The .gitlet directory collected. */
+    private final File _dir;
+    /** Its objects. */
+    private final ObjectStore _store;
+    /** Its stage. */
+    private final Stage _stage;
+    /** Age in seconds below which unreachable objects are kept. */
+    private final long _grace;
+    /** Time, in milliseconds, at or before which a loose object is past
+     *  the grace period. */
+    private long _cutoff;
+    /** Number of objects deleted. */
+    private int _removed;
+    /** Number of commits deleted. */
+    private int _commits;
+}
@@ -0,0 +1,140 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the GarbageCollector and Bitmaps classes.
+ *  @author Xinyu Fu
+ */
+public class GarbageCollectorTest {
+
+    /** Store in STORE a commit on PARENT with a file NAME holding
+     *  CONTENTS, besides those of PARENT, and return its id. */
+    private static String commit(ObjectStore store, String parent,
+                                 String name, String contents) {
+        Commit base = Commit.decode(Compression.decode(
+            store.read(ObjectStore.COMMITS, parent)), store);
+        HashMap<String, String> files = new HashMap<>(base.getFiles());
+        files.put(name, Blobs.storeRaw(
+            store, contents.getBytes(StandardCharsets.UTF_8)));
+        return new Commit(base, parent, "null", files).store(store);
+    }
+
+    /** Returns the id of a new initial commit in STORE. */
+    private static String initial(ObjectStore store) throws IOException {
+        return new Commit("initial commit", "null", "null").store(store);
+    }
+
+    /** Date every loose object of REPO DAYS days back. */
+    private static void age(File repo, int days) {
+        long time = System.currentTimeMillis()
+            - TimeUnit.DAYS.toMillis(days);
+        for (String kind : ObjectStore.KINDS) {
+            for (String name : Utils.plainFilenamesIn(new File(repo, kind))) {
+                new File(new File(repo, kind), name).setLastModified(time);
+            }
+        }
+    }
+
+    @Test
+    public void sweepsOnlyUnreachable() throws IOException {
+        File repo = TestRepos.tempRepo(ObjectStore.COMMITS, ObjectStore.BLOBS,
+                                       ObjectStore.TREES, "branch");
+        ObjectStore store = ObjectStore.of(repo);
+        String root = initial(store);
+        String one = commit(store, root, "a", "a");
+        String two = commit(store, one, "b", "b");
+        String lost = commit(store, one, "c", "lost");
+        String loose = Blobs.storeRaw(
+            store, "loose".getBytes(StandardCharsets.UTF_8));
+        String staged = Blobs.storeRaw(
+            store, "staged".getBytes(StandardCharsets.UTF_8));
+        Utils.writeContents(new File(repo, "branch/master"), two);
+        Stage stage = new Stage(repo);
+        stage.put("s", new Stage.Entry(staged, Stage.REGULAR, null));
+        CommitGraph.of(repo).position(lost);
+
+        GarbageCollector kept = new GarbageCollector(repo, stage, 3600);
+        kept.run();
+        assertEquals(0, kept.removed());
+
+        GarbageCollector collector = new GarbageCollector(repo, stage, 0);
+        collector.run();
+        assertEquals(3, collector.removed());
+        assertFalse(store.contains(ObjectStore.COMMITS, lost));
+        assertFalse(store.contains(ObjectStore.BLOBS, loose));
+        assertTrue(store.contains(ObjectStore.BLOBS, staged));
+        for (String id : Arrays.asList(root, one, two)) {
+            assertTrue(store.contains(ObjectStore.COMMITS, id));
+        }
+        assertFalse(CommitGraph.of(repo).contains(lost));
+        assertEquals(3, CommitGraph.of(repo).size());
+    }
+
+    @Test
+    public void bitmapsAnswerLikeWalks() throws IOException {
+        File repo = TestRepos.tempRepo(ObjectStore.COMMITS, ObjectStore.BLOBS,
+                                       ObjectStore.TREES, "branch");
+        ObjectStore store = ObjectStore.of(repo);
+        String root = initial(store);
+        String one = commit(store, root, "a", "a");
+        String two = commit(store, one, "b", "b");
+        String side = commit(store, one, "c", "c");
+        Utils.writeContents(new File(repo, "branch/master"), two);
+        Utils.writeContents(new File(repo, "branch/side"), side);
+        new GarbageCollector(repo, new Stage(repo), 0).run();
+        Bitmaps bitmaps = Bitmaps.of(repo);
+        assertEquals(2, bitmaps.size());
+        Bitmaps.Reachable reachable = bitmaps.reachable();
+        assertTrue(bitmaps.addReachable(reachable, two));
+        assertFalse(bitmaps.addReachable(reachable, one));
+        assertTrue(reachable.contains(root));
+        assertFalse(reachable.contains(side));
+
+        String three = commit(store, two, "d", "d");
+        String four = commit(store, three, "a", "a2");
+        List<String> haves = Collections.singletonList(side);
+        List<String> commits = Transfer.commits(repo, four, haves);
+        assertEquals(Arrays.asList(two, three, four), commits);
+        HashMap<String, String> objects =
+            new HashMap<>(Transfer.objects(store, commits, haves));
+        bitmaps.invalidate();
+        assertEquals(commits, Transfer.commits(repo, four, haves));
+        assertEquals(new HashMap<>(Transfer.objects(store, commits, haves)),
+                     objects);
+        assertEquals(3, objects.size());
+    }
+
+    @Test
+    public void keepsWhatRecentOrphansReach() throws IOException {
+        File repo = TestRepos.tempRepo(ObjectStore.COMMITS, ObjectStore.BLOBS,
+                                       ObjectStore.TREES, "branch");
+        ObjectStore store = ObjectStore.of(repo);
+        String root = initial(store);
+        String one = commit(store, root, "x", "old");
+        Utils.writeContents(new File(repo, "branch/master"), root);
+        age(repo, 30);
+        String two = commit(store, one, "y", "new");
+
+        GarbageCollector collector =
+            new GarbageCollector(repo, new Stage(repo), 14 * 24 * 3600);
+        collector.run();
+        assertEquals(0, collector.removed());
+        Commit orphan = Commit.decode(Compression.decode(
+            store.read(ObjectStore.COMMITS, two)), store);
+        File dest = File.createTempFile("gitlet-gc", ".txt");
+        dest.deleteOnExit();
+        Blobs.restore(store, orphan.getFiles().get("x"), dest);
+        assertEquals("old", Utils.readContentsAsString(dest));
+        assertTrue(store.contains(ObjectStore.COMMITS, one));
+    }
+}
@@ -0,0 +1,242 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/** A cache of the SHA-1 ids of working files, kept in .gitlet/index, so
+ *  that an unchanged file is never read again.  Each entry records a
+ *  working file's modification time, size and inode as of the moment
+ *  it was hashed, along with the id; a later lookup that finds the
+ *  same three values returns the recorded id after a single stat.
+ *  A file modified within RACY_WINDOW of being hashed is not recorded,
+ *  since a second change within the file system's timestamp resolution
+ *  could leave all three values as they were.
+ *  @author Xinyu Fu
+ */
+class Index {
+
+    /** Name of the index within a .gitlet directory. */
+    static final String FILE = "index";
+    /** Magic number at the start of the index. */
+    static final String MAGIC = "GIND";
+    /** Current version of the index format. */
+    static final int VERSION = 1;
+    /** Files modified less than this many milliseconds before they are
+     *  hashed are not recorded. */
+    static final long RACY_WINDOW = 2000;
+
+    /** The index of the .gitlet directory GITLETDIR. */
+    Index(File gitletDir) {
+        _file = new File(gitletDir, FILE);
+        load();
+    }
+
+    /** Returns the index of the .gitlet directory in the current
+     *  directory, loading it on first use. */
+    static synchronized Index local() {
+        if (_local == null) {
+            _local = new Index(new File(".gitlet"));
+        }
+        return _local;
+    }
+
+    /** Write the index of the current directory if it has changed. */
+    static void saveLocal() {
+        if (_local != null) {
+            _local.save();
+        }
+    }
+
+    /** Drop the index of the current directory, unsaved changes and
+     *  all, so that local reads it again. */
+    static synchronized void forgetLocal() {
+        _local = null;
+    }
+
+    /** Returns the id of the working file FILE, named NAME relative to
+     *  the working directory, as computed by HASHER from its contents,
+     *  looking it up first by FILE's status.  Several threads may call
+     *  this at once; they hash outside the lock. */
+    String sha1(String name, File file, Hasher hasher) {
+        Stat stat = Stat.of(file);
+        Entry entry;
+        synchronized (this) {
+            entry = _entries.get(name);
+        }
+        if (entry != null && stat != null && entry.stat.equals(stat)) {
+            return entry.sha1;
+        }
+        String result = hasher.hash(file);
+        synchronized (this) {
+            if (stat != null && System.currentTimeMillis()
+                - TimeUnit.NANOSECONDS.toMillis(stat.mtime) >= RACY_WINDOW) {
+                _entries.put(name, new Entry(stat, result));
+                _dirty = true;
+            } else if (entry != null) {
+                _entries.remove(name);
+                _dirty = true;
+            }
+        }
+        return result;
+    }
+
+    /** Forget any entry for the working file NAME. */
+    synchronized void forget(String name) {
+        if (_entries.remove(name) != null) {
+            _dirty = true;
+        }
+    }
+
+    /** Write the index if it has changed since it was read. */
+    synchronized void save() {
+        if (!_dirty) {
+            return;
+        }
+        File tmp = new File(_file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(
+                     tmp.toPath())))) {
+            out.writeBytes(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(_entries.size());
+            for (Map.Entry<String, Entry> each : _entries.entrySet()) {
+                Entry entry = each.getValue();
+                out.writeUTF(each.getKey());
+                out.writeLong(entry.stat.mtime);
+                out.writeLong(entry.stat.size);
+                out.writeLong(entry.stat.inode);
+                out.write(Utils.uidToBytes(entry.sha1));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        try {
+            Files.move(tmp.toPath(), _file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _dirty = false;
+    }
+
+    /** Read the index file, if any.  An unreadable index is treated as
+     *  empty, since it only caches what can be recomputed. */
+    private void load() {
+        _entries = new TreeMap<>();
+        if (!_file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                 new ByteArrayInputStream(Utils.readContents(_file)))) {
+            byte[] magic = new byte[MAGIC.length()];
+            in.readFully(magic);
+            if (!MAGIC.equals(new String(magic, "US-ASCII"))
+                || in.readInt() != VERSION) {
+                return;
+            }
+            int count = in.readInt();
+            byte[] id = new byte[Utils.UID_BYTES];
+            for (int i = 0; i < count; i += 1) {
+                String name = in.readUTF();
+                Stat stat = new Stat(in.readLong(), in.readLong(),
+                                     in.readLong());
+                in.readFully(id);
+                _entries.put(name, new Entry(stat,
+                                             Utils.uidFromBytes(id, 0)));
+            }
+        } catch (IOException excp) {
+            _entries.clear();
+        }
+    }
+
+    /** Computes the id of a file from its contents. */
+    interface Hasher {
+        /** Returns the id of FILE. */
+        String hash(File file);
+    }
+
+    /** The status of a file that the index compares. */
+    static class Stat {
+        /** A status with modification time MTIME in nanoseconds, size
+         *  SIZE and inode INODE. */
+        Stat(long mtime, long size, long inode) {
+            this.mtime = mtime;
+            this.size = size;
+            this.inode = inode;
+        }
+
+        /** Returns the status of FILE, or null if it cannot be read. */
+        static Stat of(File file) {
+            try {
+                BasicFileAttributes attrs = Files.readAttributes(
+                    file.toPath(), BasicFileAttributes.class);
+                if (!attrs.isRegularFile()) {
+                    return null;
+                }
+                Object key = attrs.fileKey();
+                return new Stat(attrs.lastModifiedTime()
+                                .to(TimeUnit.NANOSECONDS),
+                                attrs.size(),
+                                key == null ? 0 : key.hashCode());
+            } catch (IOException excp) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Stat)) {
+                return false;
+            }
+            Stat other = (Stat) obj;
+            return mtime == other.mtime && size == other.size
+                && inode == other.inode;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(mtime ^ size ^ inode);
+        }
+
+        /** Modification time in nanoseconds. */
+        final long mtime;
+        /** Size in bytes. */
+        final long size;
+        /** Inode, or a hash of whatever identifies the file. */
+        final long inode;
+    }
+
+    /** One cached file. */
+    private static class Entry {
+        /** An entry for a file with status STAT and id SHA1. */
+        Entry(Stat stat, String sha1) {
+            this.stat = stat;
+            this.sha1 = sha1;
+        }
+
+        /** Status of the file when it was hashed. */
+        final Stat stat;
+        /** Id of the file. */
+        final String sha1;
+    }
+
+    /** The index of the current directory, or null if not yet loaded. */
+    private static Index _local;
+
+    /** The index file. */
+    private final File _file;
+    /** The entries, by file name. */
+    private TreeMap<String, Entry> _entries;
+    /** True iff the entries differ from the index file. */
+    private boolean _dirty;
+}
@@ -0,0 +1,67 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Index class.
+ *  @author Xinyu Fu
+ */
+public class IndexTest {
+
+    /** Counts the files it hashes. */
+    private static class CountingHasher implements Index.Hasher {
+        @Override
+        public String hash(File file) {
+            count += 1;
+            return Utils.sha1(Utils.readContentsAsString(file));
+        }
+
+        /** Number of files hashed. */
+        int count;
+    }
+
+    /** Write CONTENTS to FILE, dating it an hour back. */
+    private static void writeOld(File file, String contents)
+        throws IOException {
+        Utils.writeContents(file, contents);
+        file.deleteOnExit();
+        Files.setLastModifiedTime(file.toPath(), FileTime.fromMillis(
+            System.currentTimeMillis() - 3600 * 1000));
+    }
+
+    @Test
+    public void unchangedFileIsNotRehashed() throws IOException {
+        File dir = TestRepos.tempRepo();
+        File file = new File(dir, "a.txt");
+        writeOld(file, "hello");
+        CountingHasher hasher = new CountingHasher();
+        Index index = new Index(dir);
+        String first = index.sha1("a.txt", file, hasher);
+        index.save();
+        Index again = new Index(dir);
+        assertEquals(first, again.sha1("a.txt", file, hasher));
+        assertEquals(1, hasher.count);
+        writeOld(file, "world!");
+        assertEquals(Utils.sha1("world!"),
+                     again.sha1("a.txt", file, hasher));
+        assertEquals(2, hasher.count);
+    }
+
+    @Test
+    public void recentFileIsNotRecorded() throws IOException {
+        File dir = TestRepos.tempRepo();
+        File file = new File(dir, "b.txt");
+        Utils.writeContents(file, "hello");
+        file.deleteOnExit();
+        CountingHasher hasher = new CountingHasher();
+        Index index = new Index(dir);
+        index.sha1("b.txt", file, hasher);
+        index.sha1("b.txt", file, hasher);
+        assertEquals(2, hasher.count);
+    }
+}
@@ -0,0 +1,334 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/** A fast compressor in the style of LZ4.  Data is cut into blocks of
+ *  at most BLOCK_SIZE bytes that are compressed independently; each
+ *  block is written as its raw length and compressed length followed
+ *  by a sequence of LZ4 tokens (a run of literals and then a match at
+ *  most 64 KiB back).  Compression looks up each four-byte sequence in
+ *  a single hash table, trading ratio for speed.
+ *  @author Xinyu Fu
+ */
+class Lz4 {
+
+    /** Largest number of raw bytes in one block. */
+    static final int BLOCK_SIZE = 1 << 16;
+    /** Shortest match that is encoded. */
+    private static final int MIN_MATCH = 4;
+    /** Number of bytes at the end of a block that are always literal. */
+    private static final int LAST_LITERALS = 5;
+    /** No match may start within this many bytes of the end of a block. */
+    private static final int MATCH_LIMIT = 12;
+    /** Farthest distance back that a match may refer to. */
+    private static final int MAX_OFFSET = 0xffff;
+    /** Bits in a hash table index. */
+    private static final int HASH_BITS = 14;
+    /** Multiplier used to hash four-byte sequences. */
+    private static final int HASH_PRIME = -1640531535;
+    /** Largest length that fits in a token nibble. */
+    private static final int NIBBLE = 15;
+    /** Largest value of one length-extension byte. */
+    private static final int BYTE = 255;
+    /** Bits in a nibble. */
+    private static final int NIBBLE_BITS = 4;
+    /** Bits in a byte. */
+    private static final int BYTE_BITS = 8;
+
+    /** Returns the compressed form of DATA. */
+    static byte[] compress(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int[] table = new int[1 << HASH_BITS];
+        for (int start = 0; start < data.length; start += BLOCK_SIZE) {
+            int len = Math.min(BLOCK_SIZE, data.length - start);
+            byte[] block = frameBlock(data, start, len, table);
+            out.write(block, 0, block.length);
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns a stream that writes the compressed form of the data
+     *  written to it to OUT, one block at a time.  Closing it closes
+     *  OUT. */
+    static OutputStream output(OutputStream out) {
+        return new BlockOutput(out);
+    }
+
+    /** Returns a stream of the data whose compressed form is read from
+     *  IN, decompressing one block at a time. */
+    static InputStream input(InputStream in) {
+        return new BlockInput(in);
+    }
+
+    /** Returns the data whose compressed form is the LEN bytes of
+     *  COMPRESSED starting at OFF. */
+    static byte[] decompress(byte[] compressed, int off, int len) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int pos = off;
+        while (pos < off + len) {
+            int rawLength = readInt(compressed, pos);
+            int blockLength = readInt(compressed, pos + 4);
+            pos += 2 * 4;
+            byte[] raw = new byte[rawLength];
+            decompressBlock(compressed, pos, blockLength, raw);
+            out.write(raw, 0, rawLength);
+            pos += blockLength;
+        }
+        return out.toByteArray();
+    }
+
+    /** Returns the block holding the compressed form of the LEN bytes
+     *  of SRC starting at OFF, preceded by its raw and compressed
+     *  lengths, using TABLE as scratch space. */
+    private static byte[] frameBlock(byte[] src, int off, int len,
+                                     int[] table) {
+        ByteArrayOutputStream block = new ByteArrayOutputStream();
+        compressBlock(src, off, len, table, block);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInt(out, len);
+        writeInt(out, block.size());
+        byte[] bytes = block.toByteArray();
+        out.write(bytes, 0, bytes.length);
+        return out.toByteArray();
+    }
+
+    /** Compress the LEN bytes of SRC starting at OFF onto OUT, using
+     *  TABLE as scratch space. */
+    private static void compressBlock(byte[] src, int off, int len,
+                                      int[] table,
+                                      ByteArrayOutputStream out) {
+        Arrays.fill(table, -1);
+        int end = off + len;
+        int anchor = off;
+        int i = off;
+        while (i < end - MATCH_LIMIT) {
+            int seq = readInt(src, i);
+            int h = (seq * HASH_PRIME) >>> (Integer.SIZE - HASH_BITS);
+            int ref = table[h];
+            table[h] = i;
+            if (ref >= off && i - ref <= MAX_OFFSET
+                && readInt(src, ref) == seq) {
+                int matchLen = MIN_MATCH;
+                while (i + matchLen < end - LAST_LITERALS
+                       && src[ref + matchLen] == src[i + matchLen]) {
+                    matchLen += 1;
+                }
+                writeSequence(out, src, anchor, i - anchor, i - ref,
+                              matchLen);
+                i += matchLen;
+                anchor = i;
+            } else {
+                i += 1;
+            }
+        }
+        writeSequence(out, src, anchor, end - anchor, 0, 0);
+    }
+
+    /** Write a token with the LITLEN literals of SRC starting at FROM
+     *  and a match of MATCHLEN bytes OFFSET back to OUT.  A MATCHLEN of
+     *  0 marks the final run of literals of a block. */
+    private static void writeSequence(ByteArrayOutputStream out, byte[] src,
+                                      int from, int litLen, int offset,
+                                      int matchLen) {
+        int matchCode = matchLen == 0 ? 0 : matchLen - MIN_MATCH;
+        out.write((Math.min(litLen, NIBBLE) << NIBBLE_BITS)
+                  | Math.min(matchCode, NIBBLE));
+        writeLength(out, litLen);
+        out.write(src, from, litLen);
+        if (matchLen > 0) {
+            out.write(offset & BYTE);
+            out.write(offset >>> BYTE_BITS);
+            writeLength(out, matchCode);
+        }
+    }
+
+    /** Write the extension bytes of a length LEN that overflowed its
+     *  nibble to OUT. */
+    private static void writeLength(ByteArrayOutputStream out, int len) {
+        if (len >= NIBBLE) {
+            len -= NIBBLE;
+            while (len >= BYTE) {
+                out.write(BYTE);
+                len -= BYTE;
+            }
+            out.write(len);
+        }
+    }
+
+    /** Decompress the LEN bytes of SRC starting at OFF into DEST, which
+     *  is exactly the size of the raw block. */
+    private static void decompressBlock(byte[] src, int off, int len,
+                                        byte[] dest) {
+        int ip = off;
+        int op = 0;
+        int end = off + len;
+        while (ip < end) {
+            int token = src[ip] & BYTE;
+            ip += 1;
+            int litLen = token >>> NIBBLE_BITS;
+            if (litLen == NIBBLE) {
+                int b;
+                do {
+                    b = src[ip] & BYTE;
+                    ip += 1;
+                    litLen += b;
+                } while (b == BYTE);
+            }
+            System.arraycopy(src, ip, dest, op, litLen);
+            ip += litLen;
+            op += litLen;
+            if (ip >= end) {
+                break;
+            }
+            int offset = (src[ip] & BYTE)
+                | ((src[ip + 1] & BYTE) << BYTE_BITS);
+            ip += 2;
+            int matchLen = token & NIBBLE;
+            if (matchLen == NIBBLE) {
+                int b;
+                do {
+                    b = src[ip] & BYTE;
+                    ip += 1;
+                    matchLen += b;
+                } while (b == BYTE);
+            }
+            matchLen += MIN_MATCH;
+            for (int k = 0; k < matchLen; k += 1) {
+                dest[op + k] = dest[op - offset + k];
+            }
+            op += matchLen;
+        }
+        if (op != dest.length) {
+            throw new IllegalArgumentException("corrupt compressed block");
+        }
+    }
+
+    /** Returns the big-endian int in DATA at POS. */
+    private static int readInt(byte[] data, int pos) {
+        return ((data[pos] & BYTE) << (3 * BYTE_BITS))
+            | ((data[pos + 1] & BYTE) << (2 * BYTE_BITS))
+            | ((data[pos + 2] & BYTE) << BYTE_BITS)
+            | (data[pos + 3] & BYTE);
+    }
+
+    /** Write VALUE to OUT as a big-endian int. */
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> (3 * BYTE_BITS));
+        out.write(value >>> (2 * BYTE_BITS));
+        out.write(value >>> BYTE_BITS);
+        out.write(value);
+    }
+
+    /** A stream that compresses what is written to it block by block. */
+    private static class BlockOutput extends OutputStream {
+        /** A stream writing compressed blocks to OUT. */
+        BlockOutput(OutputStream out) {
+            _out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                int n = Math.min(len, BLOCK_SIZE - _size);
+                System.arraycopy(b, off, _buffer, _size, n);
+                _size += n;
+                off += n;
+                len -= n;
+                if (_size == BLOCK_SIZE) {
+                    writeBlock();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (_size > 0) {
+                writeBlock();
+            }
+            _out.close();
+        }
+
+        /** Compress and write the buffered data. */
+        private void writeBlock() throws IOException {
+            _out.write(frameBlock(_buffer, 0, _size, _table));
+            _size = 0;
+        }
+
+        /** Where compressed blocks go. */
+        private final OutputStream _out;
+        /** Raw data not yet compressed. */
+        private final byte[] _buffer = new byte[BLOCK_SIZE];
+        /** Hash table used while compressing. */
+        private final int[] _table = new int[1 << HASH_BITS];
+        /** Number of bytes in _buffer. */
+        private int _size;
+    }
+
+    /** A stream that decompresses blocks read from another. */
+    private static class BlockInput extends InputStream {
+        /** A stream decompressing the blocks read from IN. */
+        BlockInput(InputStream in) {
+            _in = new DataInputStream(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & BYTE;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (_pos == _raw.length && !nextBlock()) {
+                return -1;
+            }
+            int n = Math.min(len, _raw.length - _pos);
+            System.arraycopy(_raw, _pos, b, off, n);
+            _pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            _in.close();
+        }
+
+        /** Read and decompress the next block, returning false if there
+         *  is none. */
+        private boolean nextBlock() throws IOException {
+            int rawLength;
+            try {
+                rawLength = _in.readInt();
+            } catch (EOFException excp) {
+                return false;
+            }
+            byte[] block = new byte[_in.readInt()];
+            _in.readFully(block);
+            _raw = new byte[rawLength];
+            decompressBlock(block, 0, block.length, _raw);
+            _pos = 0;
+            return true;
+        }
+
+        /** Where compressed blocks come from. */
+        private final DataInputStream _in;
+        /** The current decompressed block. */
+        private byte[] _raw = new byte[0];
+        /** Position of the next byte of _raw to deliver. */
+        private int _pos;
+    }
+}
@@ -1,36 +1,50 @@
 package gitlet;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.Serializable;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 /** Driver class for Gitlet, the tiny stupid version-control system.
  *  @author Xinyu Fu
  */
 public class Main implements Serializable {
-    /** main method.
-     */
-    private static final int WINNING_VALUE = Integer.MAX_VALUE - 20;
-
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND> .... */
     public static void main(String... args) throws Exception {
+        _failed = false;
         if (args.length == 0) {
             String[] command = new String [1];
             command[0] = "empty";
             process(command);
         } else if (!isValidCommand(args[0])) {
-            System.out.println("No command with that name exists.");
+            fail("No command with that name exists.");
+        } else if (args[0].equals("batch")) {
+            batch();
         } else {
             if (alreadyInit()) {
                 process(args);
+                Index.saveLocal();
+                Stage.saveLocal();
             } else {
                 if (args[0].equals("init")) {
                     init();
                 } else {
-                    System.out.println("Not in an "
+                    fail("Not in an "
                             + "initialized Gitlet directory.");
                 }
             }
@@ -38,6 +52,19 @@ public class Main implements Serializable {
 
     }
 
+    /** whether the last command run by main failed.
+     * @return true iff it printed an error message. */
+    static boolean failed() {
+        return _failed;
+    }
+
+    /** print the error message of a command that failed.
+     * @param msg error message. */
+    private static void fail(String msg) {
+        System.out.println(msg);
+        _failed = true;
+    }
+
     /** check whether the given command is a valid one.
      * @param  args all arguments.
      * @return boolean. */
@@ -45,7 +72,8 @@ public class Main implements Serializable {
         String [] allCommand = {"init", "add", "commit", "rm", "log",
             "global-log", "find", "status", "checkout", "branch", "rm-branch",
             "reset", "merge", "add-remote", "rm-remote", "push",
-            "fetch", "pull"};
+            "fetch", "pull", "repack", "config", "migrate", "serve", "daemon",
+            "batch", "diff", "gc"};
         for (String command: allCommand) {
             if (command.equals(args)) {
                 return true;
@@ -58,26 +86,23 @@ public class Main implements Serializable {
     private static void init()  throws IOException  {
         final File getLetFolder = new File(".gitlet");
         getLetFolder.mkdir();
+        Config.set(getLetFolder, Config.COMPRESSION, Compression.DEFAULT);
+        Config.set(getLetFolder, Config.BLOB_FORMAT,
+                Integer.toString(Blobs.CHUNKED));
         final File commit = new File(".gitlet/commit");
         commit.mkdir();
         Commit commit1 = new Commit("initial commit",
                 "null", "null");
-        byte[] serializedCode = Utils.serialize(commit1);
-        String sha1 = Utils.sha1(serializedCode);
-        final File initcommitFile = new File(".gitlet/commit/" + sha1);
-        initcommitFile.createNewFile();
-        Utils.writeObject(initcommitFile, commit1);
+        String sha1 = commit1.store(ObjectStore.local());
+        CommitGraph.local().add(sha1, "null", "null");
         final File branch = new File(".gitlet/branch");
         branch.mkdir();
         final File master = new File(".gitlet/branch/master");
         master.createNewFile();
         Utils.writeContents(master, sha1);
-        final File stagedForAddition = new File(".gitlet/additionStage");
-        stagedForAddition.mkdir();
-        final File stagedForRemoval = new File(".gitlet/removalStage");
-        stagedForRemoval.mkdir();
         final File blobs = new File(".gitlet/blobs");
         blobs.mkdir();
+        new File(".gitlet/" + ObjectStore.TREES).mkdir();
         final File activeBranch = new File(".gitlet/activeBranch");
         activeBranch.createNewFile();
         Utils.writeContents(activeBranch, "master");
@@ -98,18 +123,24 @@ public class Main implements Serializable {
         String command = args[0];
         switch (command) {
         case "empty":
-            System.out.println("Please enter a command."); break;
+            fail("Please enter a command."); break;
         case "init":
-            System.out.println("A Gitlet version-control system "
+            fail("A Gitlet version-control system "
                     + "already exists in the current directory.");
             break;
-        case "add": add(args[1]); break;
+        case "add":
+            if (args.length < 2) {
+                fail("Incorrect operands.");
+            } else {
+                add(Arrays.copyOfRange(args, 1, args.length));
+            }
+            break;
         case "commit":
             if (args.length == 1) {
-                System.out.println("Please enter a commit message");
+                fail("Please enter a commit message");
             } else if (args.length == 2) {
                 if (args[1].length() == 0) {
-                    System.out.println("Please enter a commit message");
+                    fail("Please enter a commit message");
                 } else {
                     commit(args[1], "null");
                 }
@@ -126,7 +157,7 @@ public class Main implements Serializable {
                 checkout(args[2]);
             } else if (len == 4) {
                 if (!args[2].equals("--")) {
-                    System.out.println("Incorrect operands.");
+                    fail("Incorrect operands.");
                     break;
                 } else {
                     checkout(args[1], args[3]);
@@ -150,6 +181,25 @@ public class Main implements Serializable {
             fetch(args[1], args[2]); break;
         case "pull":
             pull(args[1], args[2]); break;
+        case "repack": repack(); break;
+        case "migrate": migrate(); break;
+        case "gc": gc(); break;
+        case "serve":
+            serve(args.length > 1 ? Integer.parseInt(args[1])
+                    : Protocol.DEFAULT_PORT);
+            break;
+        case "daemon":
+            daemon();
+            break;
+        case "diff": diff(Arrays.copyOfRange(args, 1, args.length)); break;
+        case "config":
+            if (args.length == 2) {
+                System.out.println(Config.get(new File(".gitlet"), args[1],
+                        ""));
+            } else {
+                config(args[1], args[2]);
+            }
+            break;
         default: int a = 1;
         }
 
@@ -163,61 +213,37 @@ public class Main implements Serializable {
             throws IOException {
         File remotedir = Utils.join(".gitlet/remoteDir", remoteName);
         String remotePathway = Utils.readContentsAsString(remotedir);
+        if (SocketRemote.isUrl(remotePathway)) {
+            pushSocket(remotePathway, remoteBranchName);
+            return;
+        }
         File remoteGitlet = Utils.join(remotePathway);
         if (!remoteGitlet.exists()) {
-            System.out.println("Remote directory not found.");
+            fail("Remote directory not found.");
+            return;
+        }
+        if (!sameBlobFormat(remoteGitlet)) {
             return;
         }
         File remoteBranchFile = Utils.join(remotePathway
                 + "/branch", remoteBranchName);
-        String remoteBranchSha1 = Utils.readContentsAsString(remoteBranchFile);
-        Commit localHead = deserializedHeadCommit();
-        HashMap<String, Integer> allLocalParentMap =
-                allParents(localHead, 0, new HashMap<>());
-        String activeBranch = readActiveBranch();
-        String currLocalID = comiID(activeBranch);
-        allLocalParentMap.put(currLocalID, 0);
-        Set<String> allLocalParentID = allLocalParentMap.keySet();
-        File localBlobFolder = Utils.join(".gitlet", "blobs");
-        List<String> blobFiles = Utils.plainFilenamesIn(localBlobFolder);
-        if (allLocalParentMap.get(remoteBranchSha1) != null) {
-            for (String eachID: allLocalParentID) {
-                File remoteCommitFile = Utils.join(remotePathway
-                        + "/commit", eachID);
-                if (!remoteCommitFile.exists()) {
-                    File addRemoteFile = new File(remotePathway
-                            + "/commit/" + eachID);
-                    addRemoteFile.createNewFile();
-                    File curLocalCommit = Utils.join(".gitlet/commit", eachID);
-                    byte[] commitContent = Utils.readContents(curLocalCommit);
-                    Utils.writeContents(addRemoteFile, commitContent);
-                }
-            }
-            for (String eachBlob: blobFiles) {
-                File eachBlobFile = Utils.join(remotePathway
-                        + "/blobs", eachBlob);
-                if (!eachBlobFile.exists()) {
-                    File remoteBlob = new File(remotePathway
-                            + "/blobs/" + eachBlob);
-                    remoteBlob.createNewFile();
-                    File curlocalBlob = Utils.join(".gitlet/blobs", eachBlob);
-                    byte[] blobContent = Utils.readContents(curlocalBlob);
-                    Utils.writeContents(remoteBlob, blobContent);
-                }
+        String currLocalID = comiID(readActiveBranch());
+        if (remoteBranchFile.exists()) {
+            String remoteBranchSha1 =
+                    Utils.readContentsAsString(remoteBranchFile);
+            CommitGraph graph = CommitGraph.local();
+            if (!ObjectStore.local().contains(ObjectStore.COMMITS,
+                    remoteBranchSha1)
+                    || !graph.isAncestor(graph.position(remoteBranchSha1),
+                            graph.position(currLocalID))) {
+                fail("Please pull down "
+                        + "remote changes before pushing.");
+                return;
             }
-        } else {
-            System.out.println("Please pull down "
-                    + "remote changes before pushing.");
-            return;
-        }
-        if (!remoteBranchFile.exists()) {
-            File addRemoteBranchFile = new File(remotePathway
-                    + "/branch/" + remoteBranchName);
-            addRemoteBranchFile.createNewFile();
-            File localBranch = Utils.join(".gitlet/branch", remoteBranchName);
-            String localBranchID = Utils.readContentsAsString(localBranch);
-            Utils.writeContents(addRemoteBranchFile, localBranchID);
         }
+        new Transfer(new File(".gitlet"), remoteGitlet, linkObjects())
+                .run(currLocalID);
+        Utils.writeContents(remoteBranchFile, currLocalID);
     }
 
     /** fetch files from remote dir.
@@ -231,57 +257,142 @@ public class Main implements Serializable {
             throws IOException {
         File remotedir = Utils.join(".gitlet/remoteDir", remoteName);
         String remotePathway = Utils.readContentsAsString(remotedir);
+        if (SocketRemote.isUrl(remotePathway)) {
+            fetchSocket(remoteName, remotePathway, remoteBranchName);
+            return;
+        }
         File remoteGitlet = Utils.join(remotePathway);
         if (!remoteGitlet.exists()) {
-            System.out.println("Remote directory not found.");
+            fail("Remote directory not found.");
+            return;
+        }
+        if (!sameBlobFormat(remoteGitlet)) {
             return;
         }
         File remoteBranchFile = Utils.join(remotePathway
                 + "/branch", remoteBranchName);
         if (!remoteBranchFile.exists()) {
-            System.out.println("That remote does not have that branch.");
+            fail("That remote does not have that branch.");
             return;
         }
         String remoteBranchSha1 = Utils.readContentsAsString(remoteBranchFile);
-        File remoteBranCo = Utils.join(remotePathway
-                + "/commit", remoteBranchSha1);
-        Commit remotebrachHead = Utils.readObject(remoteBranCo, Commit.class);
-        HashMap<String, Integer> allLocalParentMap =
-                allParents(remotebrachHead, 0, new HashMap<>());
-        allLocalParentMap.put(remoteBranchSha1, 0);
-        Set<String> allRemoteID = allLocalParentMap.keySet();
-        File remoteBlobFolder = Utils.join(remotePathway, "blobs");
-        List<String> blobFiles = Utils.plainFilenamesIn(remoteBlobFolder);
-        for (String eachRemoteID: allRemoteID) {
-            File localFile = Utils.join(".gitlet/commit", eachRemoteID);
-            if (!localFile.exists()) {
-                File addLocalFile = Utils.join(".gitlet/commit/"
-                        + eachRemoteID);
-                addLocalFile.createNewFile();
-                File eachRemoteCommit = Utils.join(remotePathway
-                        + "/commit", eachRemoteID);
-                byte[] commitContent = Utils.readContents(eachRemoteCommit);
-                Utils.writeContents(addLocalFile, commitContent);
+        new Transfer(remoteGitlet, new File(".gitlet"), linkObjects())
+                .run(remoteBranchSha1);
+        File remoteBranch = Utils.join(".gitlet/branch/"
+                + remoteName + "-" + remoteBranchName);
+        Utils.writeContents(remoteBranch, remoteBranchSha1);
+    }
+
+    /** push the current branch to a served remote.
+     * @param url the remote's URL.
+     * @param remoteBranchName remote branch name. */
+    private static void pushSocket(String url, String remoteBranchName)
+            throws IOException {
+        SocketRemote remote = connect(url);
+        if (remote == null) {
+            return;
+        }
+        try (SocketRemote conn = remote) {
+            if (conn.blobFormat() != Blobs.formatOf(new File(".gitlet"))) {
+                fail("Remote uses another blob format; "
+                        + "run migrate in both repositories.");
+                return;
+            }
+            Map<String, String> heads = conn.heads();
+            String remoteHead = heads.get(remoteBranchName);
+            String currLocalID = comiID(readActiveBranch());
+            CommitGraph graph = CommitGraph.local();
+            if (remoteHead != null && (!ObjectStore.local().contains(
+                    ObjectStore.COMMITS, remoteHead)
+                    || !graph.isAncestor(graph.position(remoteHead),
+                            graph.position(currLocalID)))) {
+                fail("Please pull down "
+                        + "remote changes before pushing.");
+                return;
             }
+            conn.push(new File(".gitlet"), remoteBranchName, heads,
+                    currLocalID);
+        } catch (GitletException excp) {
+            fail(excp.getMessage());
+        }
+    }
+
+    /** fetch a branch of a served remote.
+     * @param remoteName remote name.
+     * @param url the remote's URL.
+     * @param remoteBranchName remote branch name. */
+    private static void fetchSocket(String remoteName, String url,
+            String remoteBranchName) throws IOException {
+        SocketRemote remote = connect(url);
+        if (remote == null) {
+            return;
         }
-        for (String eachBlob: blobFiles) {
-            File eachBlobFile = Utils.join(".gitlet/blobs", eachBlob);
-            if (!eachBlobFile.exists()) {
-                File localBlob = new File(".gitlet/blobs/"
-                        + eachBlob);
-                localBlob.createNewFile();
-                File remoteBlob = Utils.join(remotePathway
-                        + "/blobs", eachBlob);
-                byte[] blobContent = Utils.readContents(remoteBlob);
-                Utils.writeContents(remoteBlob, blobContent);
+        try (SocketRemote conn = remote) {
+            if (conn.blobFormat() != Blobs.formatOf(new File(".gitlet"))) {
+                fail("Remote uses another blob format; "
+                        + "run migrate in both repositories.");
+                return;
             }
+            String remoteHead = conn.heads().get(remoteBranchName);
+            if (remoteHead == null) {
+                fail("That remote does not have that branch.");
+                return;
+            }
+            conn.fetch(remoteHead, new TreeSet<>(Transfer.heads(
+                    new File(".gitlet")).values()), ObjectStore.local());
+            CommitGraph.local().position(remoteHead);
+            Utils.writeContents(Utils.join(".gitlet/branch/"
+                    + remoteName + "-" + remoteBranchName), remoteHead);
+        } catch (GitletException excp) {
+            fail(excp.getMessage());
         }
-        File remoteBranch = Utils.join(".gitlet/branch/"
-                + remoteName + "-" + remoteBranchName);
-        if (!remoteBranch.exists()) {
-            Utils.writeContents(remoteBranch, remoteBranchSha1);
+    }
+
+    /** connect to a served remote.
+     * @param url the remote's URL.
+     * @return the connection, or null after reporting that there is no
+     * server at URL. */
+    private static SocketRemote connect(String url) {
+        try {
+            return new SocketRemote(url);
+        } catch (IOException | IllegalArgumentException excp) {
+            fail("Remote directory not found.");
+            return null;
         }
+    }
 
+    /** serve this repository to remotes until killed.
+     * @param port the port to listen on, or 0 for any free one. */
+    private static void serve(int port) throws IOException {
+        Server server = new Server(new File(".gitlet").getAbsoluteFile(),
+                port);
+        System.out.println("Serving on " + Protocol.SCHEME + "localhost:"
+                + server.port());
+        server.serve();
+    }
+
+    /** run the commands read from standard input, reporting the status
+     * of each on standard error, and exit with status 1 if any failed. */
+    private static void batch() throws IOException {
+        if (Batch.run(new BufferedReader(new InputStreamReader(System.in)),
+                System.err) > 0) {
+            System.exit(1);
+        }
+    }
+
+    /** run commands sent by gitlet.Client until killed. */
+    private static void daemon() throws IOException {
+        Daemon daemon = new Daemon(new File(".gitlet").getAbsoluteFile());
+        System.out.println("Daemon listening on localhost:"
+                + daemon.port());
+        daemon.serve();
+    }
+
+    /** whether transfers hard-link objects.
+     * @return true iff the transfer setting is "link". */
+    private static boolean linkObjects() {
+        return Config.get(new File(".gitlet"), Config.TRANSFER, "copy")
+                .equals("link");
     }
 
     /** pull commit from remote dir.
@@ -297,12 +408,83 @@ public class Main implements Serializable {
         merge(remoteName + "-" + remoteBranchName);
 
     }
+    /** set a repository setting.
+     * @param key setting name.
+     * @param value new value. */
+    private static void config(String key, String value) {
+        if (key.equals(Config.COMPRESSION)
+                && Compression.codec(value) < 0) {
+            fail("Unknown compression codec.");
+            return;
+        }
+        if (key.equals(Config.TRANSFER)
+                && !value.equals("copy") && !value.equals("link")) {
+            fail("Unknown transfer mode.");
+            return;
+        }
+        if (key.equals(Config.DIFF) && !Diff.NAMES.contains(value)) {
+            fail("Unknown diff algorithm.");
+            return;
+        }
+        if (key.equals(Config.BLOB_FORMAT)) {
+            fail("Use migrate to change the blob format.");
+            return;
+        }
+        if (key.equals(Config.GC_GRACE) && !value.matches("[0-9]+")) {
+            fail("Grace period must be a number of seconds.");
+            return;
+        }
+        Config.set(new File(".gitlet"), key, value);
+    }
+
+    /** rewrite the blobs of this repository in the chunked format.*/
+    private static void migrate() throws IOException {
+        Migration migration = new Migration(new File(".gitlet"),
+                Stage.local());
+        if (!migration.run()) {
+            System.out.println("Already migrated.");
+            return;
+        }
+        System.out.println("Migrated " + migration.blobs() + " blobs and "
+                + migration.commits() + " commits.");
+    }
+
+    /** delete the loose objects that no branch or staged file reaches,
+     * and write reachability bitmaps for the branches. */
+    private static void gc() throws IOException {
+        File gitletDir = new File(".gitlet");
+        GarbageCollector collector = new GarbageCollector(gitletDir,
+                Stage.local(), GarbageCollector.graceOf(gitletDir));
+        collector.run();
+        System.out.println("Removed " + collector.removed()
+                + " objects.");
+    }
+
+    /** check that the remote stores blobs as this repository does.
+     * @param remoteGitlet the remote .gitlet directory.
+     * @return boolean. */
+    private static boolean sameBlobFormat(File remoteGitlet) {
+        if (Blobs.formatOf(new File(".gitlet"))
+                != Blobs.formatOf(remoteGitlet)) {
+            fail("Remote uses another blob format; "
+                    + "run migrate in both repositories.");
+            return false;
+        }
+        return true;
+    }
+
+    /** move loose objects into a pack.*/
+    private static void repack() throws IOException {
+        int moved = ObjectStore.local().repack();
+        System.out.println("Packed " + moved + " objects.");
+    }
+
   /** remove this remote.
    * @param remoteName remotename. */
     private static void removeRemote(String remoteName) {
         File remoteFile = Utils.join(".gitlet/remoteDir", remoteName);
         if (!remoteFile.exists()) {
-            System.out.println("A remote with that name does not exist.");
+            fail("A remote with that name does not exist.");
             return;
         }
         remoteFile.delete();
@@ -317,77 +499,24 @@ public class Main implements Serializable {
             throws IOException {
         File remoteFile = Utils.join(".gitlet/remoteDir", remoteName);
         if (remoteFile.exists()) {
-            System.out.println("A remote with that name already exists.");
+            fail("A remote with that name already exists.");
             return;
         }
         File remoteFile1 = new File(".gitlet/remoteDir/" + remoteName);
         remoteFile.createNewFile();
         Utils.writeContents(remoteFile1, remoteDirName);
     }
-    /** get all parents of a commit.
-     * @param commit given commit.
-     * @param distance distance from head commit.
-     * @param  parents all parents on that commit tree.
-     * @return  all parents with distance. */
-    private static HashMap<String, Integer>
-        allParents(Commit commit, int distance, HashMap<String,
-            Integer> parents) {
-        if (commit.getParent().equals("null")) {
-            if (commit.getSecondParent().equals("null")) {
-                return parents;
-            }
-        } else if (commit.getSecondParent().equals("null")) {
-            if (!commit.getParent().equals("null")) {
-                String firstParent = commit.getParent();
-                parents.put(firstParent, distance + 1);
-                Commit firstParentCommit = deserilazedGivenCommit(firstParent);
-                allParents(firstParentCommit, distance + 1, parents);
-            }
-        } else {
-            String firstParent = commit.getParent();
-            String secondParent = commit.getSecondParent();
-            parents.put(firstParent, distance + 1);
-            parents.put(secondParent, distance + 1);
-            Commit firstParentCommit = deserilazedGivenCommit(firstParent);
-            Commit secondParentCommit = deserilazedGivenCommit(secondParent);
-            allParents(firstParentCommit, distance + 1, parents);
-            allParents(secondParentCommit, distance + 1, parents);
-        }
-        return parents;
-    }
-
-    /** find the split point.
-     * @param givenCommit givenCommit.
-     * @param headCommit current head commit.
+    /** find the split point, the latest common ancestor. After a
+     * criss-cross merge there may be several; take the newest.
      * @param currID current commit ID.
      * @param givenID given commit ID.
      * @return split point sha1. */
-    private static String splitPoint(Commit givenCommit, Commit headCommit,
-                                     String currID, String givenID) {
-        HashMap<String, Integer> currentParents =
-                allParents(headCommit, 0, new HashMap<>());
-        HashMap<String, Integer> givenParents =
-                allParents(givenCommit, 0, new HashMap<>());
-        HashMap<String, Integer> commonAncestor = new HashMap<>();
-        currentParents.put(currID, 0);
-        givenParents.put(givenID, 0);
-        Set<String> curParentID = currentParents.keySet();
-        for (String cur: curParentID) {
-            if (givenParents.containsKey(cur)) {
-                commonAncestor.put(cur, currentParents.get(cur));
-            }
-        }
-        Set<String> commonAncestorID = commonAncestor.keySet();
-        int shortest = WINNING_VALUE;
-        String splitPoint = "";
-        for (String each: commonAncestorID) {
-            int dis = commonAncestor.get(each);
-            if (dis < shortest) {
-                shortest = dis;
-                splitPoint = each;
-            }
+    private static String splitPoint(String currID, String givenID) {
+        List<String> bases = CommitGraph.local().mergeBases(currID, givenID);
+        if (bases.isEmpty()) {
+            return "";
         }
-        return splitPoint;
+        return bases.get(0);
     }
     /** merge current branch to branchName.
      * @param branchName givenbranch name.*/
@@ -395,38 +524,35 @@ public class Main implements Serializable {
     private static void merge(String branchName) throws Exception {
         boolean isConflict = false;
         String cwd = System.getProperty("user.dir");
-        List<String> fAdd = Utils.plainFilenamesIn(".gitlet/additionStage");
+        List<String> fAdd = Stage.names(Stage.ADDITION);
         String activeBranchID1 = readGivenBranch(readActiveBranch());
         String actBranStr = readActiveBranch();
-        List<String> cwdFile = Utils.plainFilenamesIn(cwd);
+        List<String> cwdFile = workingFiles();
         File branch = Utils.join(".gitlet/branch", branchName);
         if (!branch.exists()) {
-            System.out.println("A branch with that name does not exist.");
+            fail("A branch with that name does not exist.");
             return;
         }
         String giveID = comiID(branchName); String currID = comiID(actBranStr);
         Commit givenCommit = deserializedGivenCommit(branchName);
         Commit headCommit = deserializedHeadCommit();
-        HashMap<String, String> giveFiles = givenCommit.getFiles();
-        HashMap<String, String> currentFiles = headCommit.getFiles();
-        Set<String> givenFileNames = giveFiles.keySet();
-        Set<String> currentFileNames = currentFiles.keySet();
-        String splitPoint = splitPoint(givenCommit, headCommit, currID, giveID);
+        Set<String> headFileNames = headCommit.getFiles().keySet();
+        String splitPoint = splitPoint(currID, giveID);
         for (String eachCwdFile: cwdFile) {
-            if (!currentFileNames.contains(eachCwdFile)) {
+            if (!headFileNames.contains(eachCwdFile)) {
                 if (!fAdd.contains(eachCwdFile)) {
-                    System.out.println("There is an untracked file in the way; "
+                    fail("There is an untracked file in the way; "
                         + "delete it, or add and commit it first.");
                     return;
                 }
             }
         }
-        List<String> filesToRe = Utils.plainFilenamesIn(".gitlet/removalStage");
+        List<String> filesToRe = Stage.names(Stage.REMOVAL);
         if (fAdd.size() != 0 || filesToRe.size() != 0) {
-            System.out.println("You have uncommitted changes."); return;
+            fail("You have uncommitted changes."); return;
         }
         if (branchName.equals(actBranStr)) {
-            System.out.println("Cannot merge a branch with itself."); return;
+            fail("Cannot merge a branch with itself."); return;
         }
         if (splitPoint.equals(activeBranchID1)) {
             System.out.println("Current branch fast-forwarded.");
@@ -439,8 +565,25 @@ public class Main implements Serializable {
             return;
         }
         File splitpointFile = Utils.join(".gitlet/commit", splitPoint);
-        Commit splitCommit = Utils.readObject(splitpointFile, Commit.class);
-        HashMap<String, String> splitFiles = splitCommit.getFiles();
+        Commit splitCommit = Commit.read(splitpointFile);
+        TreeMap<String, String[]> ours = Tree.changes(ObjectStore.local(),
+                splitCommit, headCommit);
+        TreeMap<String, String[]> theirs = Tree.changes(ObjectStore.local(),
+                splitCommit, givenCommit);
+        HashMap<String, String> splitFiles = new HashMap<>();
+        HashMap<String, String> currentFiles = new HashMap<>();
+        HashMap<String, String> giveFiles = new HashMap<>();
+        TreeSet<String> touched = new TreeSet<>(ours.keySet());
+        touched.addAll(theirs.keySet());
+        for (String name : touched) {
+            String[] mine = ours.get(name), yours = theirs.get(name);
+            String base = mine != null ? mine[0] : yours[0];
+            putIfPresent(splitFiles, name, base);
+            putIfPresent(currentFiles, name, mine != null ? mine[1] : base);
+            putIfPresent(giveFiles, name, yours != null ? yours[1] : base);
+        }
+        Set<String> givenFileNames = giveFiles.keySet();
+        Set<String> currentFileNames = currentFiles.keySet();
         Set<String> splitSet = splitFiles.keySet();
         isConflict = whetherConflictnornot(isConflict, cwd,
                 giveFiles, currentFiles, givenFileNames, splitFiles);
@@ -513,13 +656,8 @@ public class Main implements Serializable {
                 if (currentSha1 != null) {
                     if (!givenSha1.equals(splitSha1)) {
                         if (splitSha1.equals(currentSha1)) {
-                            File giveBlob = Utils.join(".gitlet/blobs",
-                                    givenSha1);
-                            String givenBlobContent = Utils.readObject(giveBlob,
-                                    String.class);
                             File thisFile = new File(cwd + "/" + givenFile);
-                            thisFile.createNewFile();
-                            Utils.writeContents(thisFile, givenBlobContent);
+                            Blobs.restore(givenSha1, thisFile);
                             add(givenFile);
                         } else {
                             if (givenSha1.equals(currentSha1)) {
@@ -533,9 +671,7 @@ public class Main implements Serializable {
                     }
                 } else {
                     if (!givenSha1.equals(splitSha1)) {
-                        File givenBlob = Utils.join(".gitlet/blobs", givenSha1);
-                        String givenBlobContent = Utils.readObject(givenBlob,
-                                String.class);
+                        String givenBlobContent = Blobs.readString(givenSha1);
                         String content = "<<<<<<< HEAD\n" + "=======\n"
                                 + givenBlobContent + ">>>>>>>\n";
                         File fileinCwd = Utils.join(cwd, givenFile);
@@ -549,11 +685,7 @@ public class Main implements Serializable {
                 if (currentSha1 == null) {
                     if (givenSha1 != null) {
                         File thisFile = new File(cwd + "/" + givenFile);
-                        File givenBlob = Utils.join(".gitlet/blobs", givenSha1);
-                        String givenBlobContent = Utils.readObject(givenBlob,
-                                String.class);
-                        thisFile.createNewFile();
-                        Utils.writeContents(thisFile, givenBlobContent);
+                        Blobs.restore(givenSha1, thisFile);
                         add(givenFile);
                     }
                 }
@@ -587,13 +719,8 @@ public class Main implements Serializable {
                     int f = 0;
                 } else {
                     if (!gisha.equals(cursha1)) {
-                        File givenBlob = Utils.join(".gitlet/blobs", gisha);
-                        String givenBlobContent = Utils.readObject(givenBlob,
-                                String.class);
-                        File currBlob = Utils.join(".gitlet/blobs",
-                                cursha1);
-                        String currContent =  Utils.readObject(currBlob,
-                                String.class);
+                        String givenBlobContent = Blobs.readString(gisha);
+                        String currContent = Blobs.readString(cursha1);
                         String content = "<<<<<<< HEAD\n" + currContent
                                 + "=======\n"
                                 + givenBlobContent + ">>>>>>>\n";
@@ -605,8 +732,7 @@ public class Main implements Serializable {
             } else {
                 if (gisha == null) {
                     if (!splitsha1.equals(cursha1)) {
-                        File curBl = Utils.join(".gitlet/blobs", cursha1);
-                        String currCon =  Utils.readObject(curBl, String.class);
+                        String currCon = Blobs.readString(cursha1);
                         String content = "<<<<<<< HEAD\n" + currCon
                                 + "=======\n" + ">>>>>>>\n";
                         File fileinCwd = Utils.join(cwd, eachcurrFile);
@@ -616,19 +742,10 @@ public class Main implements Serializable {
                 } else {
                     if (!gisha.equals(cursha1)) {
                         if (!gisha.equals(splitsha1)) {
-                            if (!cursha1.equals(splitsha1)) {
-                                File giBlo = Utils.join(".gitlet/blobs", gisha);
-                                String giveBCon = Utils.readObject(giBlo,
-                                        String.class);
-                                File currBlob = Utils.join(".gitlet/blobs",
-                                        cursha1);
-                                String currContent =  Utils.readObject(currBlob,
-                                        String.class);
-                                String content = "<<<<<<< HEAD\n" + currContent
-                                        + "=======\n" + giveBCon + ">>>>>>>\n";
-                                File fileinCwd = Utils.join(cwd, eachcurrFile);
-                                Utils.writeContents(fileinCwd, content);
-                                add(eachcurrFile); isConflict = true;
+                            if (!cursha1.equals(splitsha1)
+                                    && mergeFile(cwd, eachcurrFile,
+                                    splitsha1, cursha1, gisha)) {
+                                isConflict = true;
                             }
                         }
                     }
@@ -638,70 +755,144 @@ public class Main implements Serializable {
         return isConflict;
     }
 
+    /** merge line by line the changes made to a file on both sides of a
+     * merge, writing the result to the working file and staging it.
+     * Binary files conflict as a whole.
+     * @param cwd cwd.
+     * @param name the file.
+     * @param splitSha1 its id at the split point.
+     * @param currSha1 its id in the current commit.
+     * @param givenSha1 its id in the given commit.
+     * @return true iff the merge left conflicts. */
+    private static boolean mergeFile(String cwd, String name,
+                                     String splitSha1, String currSha1,
+                                     String givenSha1) throws Exception {
+        String base = Blobs.readString(splitSha1);
+        String ours = Blobs.readString(currSha1);
+        String theirs = Blobs.readString(givenSha1);
+        String content;
+        boolean conflict;
+        if (Diff.isBinary(base) || Diff.isBinary(ours)
+                || Diff.isBinary(theirs)) {
+            content = Merge3.OURS + ours + Merge3.SEPARATOR + theirs
+                    + Merge3.THEIRS;
+            conflict = true;
+        } else {
+            Merge3 merge = new Merge3(base, ours, theirs, diffAlgorithm());
+            content = merge.result();
+            conflict = merge.conflicts() > 0;
+        }
+        Utils.writeContents(Utils.join(cwd, name), content);
+        add(name);
+        return conflict;
+    }
+
+    /** the diff algorithm set for this repository.
+     * @return a Diff algorithm. */
+    private static int diffAlgorithm() {
+        return Diff.NAMES.indexOf(Config.get(new File(".gitlet"),
+                Config.DIFF, Diff.NAMES.get(Diff.HISTOGRAM)));
+    }
+
+    /** print a unified diff between two commits, or between a commit,
+     * the head by default, and the working files.  An operand of
+     * --myers or --histogram picks the algorithm.
+     * @param operands the options and commit ids. */
+    private static void diff(String... operands) {
+        int algorithm = diffAlgorithm();
+        List<String> ids = new ArrayList<>();
+        for (String operand : operands) {
+            if (operand.startsWith("--")
+                    && Diff.NAMES.contains(operand.substring(2))) {
+                algorithm = Diff.NAMES.indexOf(operand.substring(2));
+            } else {
+                ids.add(operand);
+            }
+        }
+        if (ids.size() > 2) {
+            fail("Incorrect operands.");
+            return;
+        }
+        Commit[] commits = new Commit[ids.size()];
+        for (int i = 0; i < ids.size(); i += 1) {
+            String id = resolveCommit(ids.get(i));
+            if (id == null) {
+                return;
+            }
+            commits[i] = Commit.read(Utils.join(".gitlet/commit", id));
+        }
+        if (commits.length == 2) {
+            for (Map.Entry<String, String[]> change : Tree.changes(
+                    ObjectStore.local(), commits[0], commits[1]).entrySet()) {
+                System.out.print(diffFile(change.getKey(),
+                        change.getValue()[0], change.getValue()[1], true,
+                        algorithm));
+            }
+            return;
+        }
+        Map<String, String> before = commits.length == 0
+                ? deserializedHeadCommit().getFiles() : commits[0].getFiles();
+        TreeSet<String> names = new TreeSet<>(before.keySet());
+        Map<String, String> after = new HashMap<>();
+        names.addAll(Stage.names(Stage.ADDITION));
+        String cwd = System.getProperty("user.dir");
+        for (String name : names) {
+            File file = Utils.join(cwd, name);
+            if (file.isFile()) {
+                after.put(name, getFileSHA1(file));
+            }
+        }
+        for (String name : names) {
+            String old = before.get(name), now = after.get(name);
+            if (old == null ? now != null : !old.equals(now)) {
+                System.out.print(diffFile(name, old, now,
+                        false, algorithm));
+            }
+        }
+    }
+
+    /** a unified diff of one file.
+     * @param name the file.
+     * @param old its old id, or null if it did not exist.
+     * @param now its new id, or null if it does not exist.
+     * @param committed whether the new version is a blob rather than
+     * the working file.
+     * @param algorithm the Diff algorithm.
+     * @return the diff, with a header naming the file. */
+    private static String diffFile(String name, String old, String now,
+                                   boolean committed, int algorithm) {
+        String a = old == null ? "" : Blobs.readString(old);
+        String b = now == null ? "" : committed ? Blobs.readString(now)
+                : Utils.readContentsAsString(new File(name));
+        String header = "diff --gitlet a/" + name + " b/" + name + "\n";
+        if (Diff.isBinary(a) || Diff.isBinary(b)) {
+            return header + "Binary files differ\n";
+        }
+        List<String> linesA = Diff.lines(a), linesB = Diff.lines(b);
+        return header + Diff.unified(old == null ? "/dev/null" : "a/" + name,
+                now == null ? "/dev/null" : "b/" + name, linesA, linesB,
+                Diff.diff(linesA, linesB, algorithm));
+    }
+
     /** reset a certain commit.
      *
      * @param commitID commit Sha1 ID.
      *
      */
-    private static void reset(String commitID) throws IOException {
-        String cwd = System.getProperty("user.dir");
-        File givenCommitFile = Utils.join(".gitlet/commit", commitID);
-        if (!givenCommitFile.exists()) {
-            System.out.println("No commit with that id exists."); return;
-        }
-        Commit givenCommit = Utils.readObject(givenCommitFile, Commit.class);
-        Commit headCommit = deserializedHeadCommit();
-        HashMap<String, String> allFilesGivenCommit = givenCommit.getFiles();
-        HashMap<String, String> allFilesCurCommit = headCommit.getFiles();
-        Set<String> currentFileNames = allFilesCurCommit.keySet();
-        Set<String> givenFilesNames = allFilesGivenCommit.keySet();
-        for (String eachCurrentFile: currentFileNames) {
-            File fileCWD = Utils.join(cwd, eachCurrentFile);
-            String fileCWDSha1 = getFileSHA1(fileCWD);
-            String fileInCurrentSha1 = allFilesCurCommit.get(eachCurrentFile);
-            String fileInGivenSha1 = allFilesGivenCommit.get(eachCurrentFile);
-            if (fileInGivenSha1 == null) {
-                fileCWD.delete();
-            } else {
-                File givenBlob = Utils.join(".gitlet/blobs", fileInGivenSha1);
-                String blobContent = Utils.readObject(givenBlob, String.class);
-                if (fileCWDSha1.equals(fileInCurrentSha1)) {
-                    if (givenFilesNames.contains(eachCurrentFile)) {
-                        Utils.writeContents(fileCWD, blobContent);
-                    } else {
-                        fileCWD.delete();
-                    }
-                }
-            }
+    private static void reset(String commitID) throws Exception {
+        commitID = resolveCommit(commitID);
+        if (commitID == null) {
+            return;
         }
-        for (String givenFiles: givenFilesNames) {
-            File givenFileNamesCWD = Utils.join(cwd, givenFiles);
-            if (!givenFileNamesCWD.exists()) {
-                File givenFileCWD = new File(cwd + "/", givenFiles);
-                givenFileCWD.createNewFile();
-                String sha1 = allFilesGivenCommit.get(givenFiles);
-                File blob = Utils.join(".gitlet/blobs", sha1);
-                String content = Utils.readObject(blob, String.class);
-                Utils.writeContents(givenFileCWD, content);
-            } else {
-                if (!currentFileNames.contains(givenFiles)) {
-                    System.out.println("There is an untracked file in the way;"
-                            + " delete it, or add and commit it first.");
-                    return;
-                }
-            }
+        File givenCommitFile = Utils.join(".gitlet/commit", commitID);
+        Commit givenCommit = Commit.read(givenCommitFile);
+        if (!checkoutFiles(givenCommit)) {
+            return;
         }
         String activeBranch = readActiveBranch();
         File head = Utils.join(".gitlet/branch", activeBranch);
         Utils.writeContents(head, commitID);
-        List<String> addiFile = Utils.plainFilenamesIn(".gitlet/additionStage");
-        for (String fileadd: addiFile) {
-            removefromStage(fileadd);
-        }
-        List<String> remolFile = Utils.plainFilenamesIn(".gitlet/removalStage");
-        for (String fileRemove: remolFile) {
-            removefromStage(fileRemove);
-        }
+        Stage.local().clear();
     }
     /** read active branch.
      * @return activeBranchName.*/
@@ -722,11 +913,11 @@ public class Main implements Serializable {
         File branchID = Utils.join(".gitlet/branch", branchName);
         String activeBranch = readActiveBranch();
         if (activeBranch.equals(branchName)) {
-            System.out.println("Cannot remove the current branch.");
+            fail("Cannot remove the current branch.");
             return;
         }
         if (!branchID.exists()) {
-            System.out.println("A branch with that name does not exist.");
+            fail("A branch with that name does not exist.");
             return;
         }
         branchID.delete();
@@ -745,7 +936,7 @@ public class Main implements Serializable {
     private static void branch(String branchName) throws IOException {
         File branchExist = Utils.join(".gitlet/branch", branchName);
         if (branchExist.exists()) {
-            System.out.println("A branch with that name already exists.");
+            fail("A branch with that name already exists.");
             return;
         }
         File newBranch = new File(".gitlet/branch/" + branchName);
@@ -760,21 +951,12 @@ public class Main implements Serializable {
      * @param fileName given File name. */
     private static void overwriteCwdFile(Commit commit, String fileName) {
         String cwd = System.getProperty("user.dir");
-        HashMap<String, String> blobs = commit.getFiles();
+        Map<String, String> blobs = commit.getFiles();
         String sha1 = blobs.get(fileName);
         if (sha1 == null) {
-            System.out.println("File does not exist in that commit.");
+            fail("File does not exist in that commit.");
         } else {
-            File blob = Utils.join(".gitlet/blobs/" + sha1);
-            String content = Utils.readObject(blob, String.class);
-            File fileCWD = Utils.join(cwd + "/" + fileName);
-            if (fileCWD.exists()) {
-                Utils.writeContents(fileCWD, content);
-
-            } else {
-                File newFileCWD = new File(cwd, fileName);
-                Utils.writeContents(newFileCWD, content);
-            }
+            Blobs.restore(sha1, new File(cwd, fileName));
         }
     }
     /** checkout this file.
@@ -782,54 +964,58 @@ public class Main implements Serializable {
     private static void checkout(String fileName) {
         String cwd = System.getProperty("user.dir");
         Commit head = deserializedHeadCommit();
-        HashMap<String, String> blobs  = head.getFiles();
+        Map<String, String> blobs  = head.getFiles();
         String sha1 = blobs.get(fileName);
         if (sha1 == null) {
-            System.out.println("File does not exist in that commit.");
+            fail("File does not exist in that commit.");
         } else {
-            File blob = Utils.join(".gitlet/blobs/" + sha1);
-            String content =  Utils.readObject(blob, String.class);
-            File fileCWD = Utils.join(cwd + "/" + fileName);
-            if (fileCWD.exists()) {
-                Utils.writeContents(fileCWD, content);
-            } else {
-                File newFileCWD = new File(cwd, fileName);
-                Utils.writeContents(newFileCWD, content);
-            }
+            Blobs.restore(sha1, new File(cwd, fileName));
         }
     }
     /** checkout given commit.
      * @param commitID given commit id.
      * @param  fileName given file name.*/
     private static void checkout(String commitID, String fileName) {
-        int len = commitID.length();
-        boolean exist = false;
-        List<String> allcommit = Utils.plainFilenamesIn(".gitlet/commit");
-        for (String each: allcommit) {
-            String abrra = each.substring(0, len);
-            if (abrra.equals(commitID)) {
-                File commitFile = Utils.join(".gitlet/commit", each);
-                Commit commit = Utils.readObject(commitFile, Commit.class);
-                overwriteCwdFile(commit, fileName);
-                exist = true;
-            }
+        String id = resolveCommit(commitID);
+        if (id != null) {
+            Commit commit = Commit.read(Utils.join(".gitlet/commit", id));
+            overwriteCwdFile(commit, fileName);
         }
-        if (!exist) {
-            System.out.println("No commit with that id exists.");
+    }
+    /** resolve a commit id, which may be abbreviated, reporting a
+     * missing or ambiguous one.
+     * @param commitID the id or a prefix of it.
+     * @return the full id, or null if there is none.*/
+    private static String resolveCommit(String commitID) {
+        try {
+            return CommitIndex.local().resolve(commitID);
+        } catch (GitletException excp) {
+            fail(excp.getMessage());
+            return null;
         }
     }
-    /** get sha1 of this file.
+    /** get sha1 of this file, consulting the stat cache for working
+     * files.
      * @param  thisFile this file.
      * @return  return a sha1. */
     private static String getFileSHA1(File thisFile) {
-        String content = Utils.readContentsAsString(thisFile);
-        byte[] ser = Utils.serialize(content);
-        String sha1 = Utils.sha1(ser);
-        return sha1;
+        Path cwd = Paths.get(System.getProperty("user.dir"));
+        Path path = thisFile.toPath().toAbsolutePath().normalize();
+        if (!path.startsWith(cwd) || path.startsWith(cwd.resolve(".gitlet"))) {
+            return hashContents(thisFile);
+        }
+        return Index.local().sha1(cwd.relativize(path).toString(), thisFile,
+                                  Main::hashContents);
+    }
+    /** hash the contents of this file.
+     * @param  thisFile this file.
+     * @return  return a sha1. */
+    private static String hashContents(File thisFile) {
+        return Blobs.id(thisFile);
     }
     /** checkout given branch.
      * @param branchName given branch name.*/
-    private static void checkoutBranch(String branchName) throws IOException {
+    private static void checkoutBranch(String branchName) throws Exception {
         boolean contains = false;
 
         branchName = branchName.replaceAll("\\/", "-");
@@ -838,100 +1024,75 @@ public class Main implements Serializable {
 
         File branchID = Utils.join(".gitlet/branch", branchName);
         if (!branchID.exists()) {
-            System.out.println("No such branch exists.");
+            fail("No such branch exists.");
             return;
         }
         String branchContent = Utils.readContentsAsString(branchID);
         String activeBranch = readActiveBranch();
         if (branchName.equals(activeBranch)) {
-            System.out.println("No need to checkout the current branch.");
+            fail("No need to checkout the current branch.");
             return;
         }
         File givenCommitFile = Utils.join(".gitlet/commit", branchContent);
-        if (!givenCommitFile.exists()) {
-            System.out.println("No commit with that id exists.");
+        if (!ObjectStore.local().contains(ObjectStore.COMMITS,
+                branchContent)) {
+            fail("No commit with that id exists.");
             return;
         }
-        Commit givenCommit = Utils.readObject(givenCommitFile, Commit.class);
-        Commit headCommit = deserializedHeadCommit();
-        HashMap<String, String> allFilesGivenCommit = givenCommit.getFiles();
-        HashMap<String, String> allFilesCurCommit = headCommit.getFiles();
-        Set<String> currentFileNames = allFilesCurCommit.keySet();
-        Set<String> givenFilesNames = allFilesGivenCommit.keySet();
-        currentfiles(cwd, allFilesGivenCommit,
-                allFilesCurCommit, currentFileNames, givenFilesNames);
-        for (String givenFiles: givenFilesNames) {
-            File givenFileNamesCWD = Utils.join(cwd, givenFiles);
-            if (!givenFileNamesCWD.exists()) {
-                File givenFileCWD = new File(cwd + "/", givenFiles);
-                givenFileCWD.createNewFile();
-                String sha1 = allFilesGivenCommit.get(givenFiles);
-                File blob = Utils.join(".gitlet/blobs", sha1);
-                String content = Utils.readObject(blob, String.class);
-                Utils.writeContents(givenFileCWD, content);
-            } else {
-                if (!currentFileNames.contains(givenFiles)) {
-                    System.out.println("There is an untracked file in the "
-                            + "way; delete it, or add and commit it first.");
-                    return;
-                }
-            }
+        Commit givenCommit = Commit.read(givenCommitFile);
+        if (!checkoutFiles(givenCommit)) {
+            return;
         }
         File activeBranchFileString = Utils.join(".gitlet", "activeBranch");
         File head = Utils.join(".gitlet/branch", activeBranch);
         Utils.writeContents(activeBranchFileString, branchName);
-        List<String> addFile = Utils.plainFilenamesIn(".gitlet/additionStage");
-        for (String fileadd: addFile) {
-            removefromStage(fileadd);
-        }
-        List<String> remoFile = Utils.plainFilenamesIn(".gitlet/removalStage");
-        for (String fileRemove: remoFile) {
-            removefromStage(fileRemove);
-        }
+        Stage.local().clear();
     }
 
-    /** find current files in cwd.
-     * @param cwd cwd
-     * @param allFilesGivenCommit  allFilesGivenCommit.
-     * @param allFilesCurCommit  allFilesCurCommit.
-     * @param currentFileNames currentFileNames.
-     * @param givenFilesNames givenFilesNames.
-     */
-    private static void currentfiles(String cwd,
-                                     HashMap<String, String>
-                                             allFilesGivenCommit,
-                                     HashMap<String, String> allFilesCurCommit,
-                                     Set<String> currentFileNames,
-                                     Set<String> givenFilesNames) {
-        for (String eachCurrentFile: currentFileNames) {
-            File fileCWD = Utils.join(cwd, eachCurrentFile);
-            String fileCWDSha1 = getFileSHA1(fileCWD);
-            String fileInCurrentSha1 = allFilesCurCommit.get(eachCurrentFile);
-            String fileInGivenSha1 = allFilesGivenCommit.get(eachCurrentFile);
-            if (fileInGivenSha1 == null) {
-                fileCWD.delete();
-            } else {
-                File givenBlob = Utils.join(".gitlet/blobs", fileInGivenSha1);
-                String blobContent = Utils.readObject(givenBlob, String.class);
-                if (fileCWDSha1.equals(fileInCurrentSha1)) {
-                    if (givenFilesNames.contains(eachCurrentFile)) {
-                        Utils.writeContents(fileCWD, blobContent);
-                    } else {
-                        fileCWD.delete();
-                        System.out.println("should not enter here to delete");
-                    }
-                }
-            }
+    /** Make the working directory hold the files of GIVEN in place of
+     *  those of the head commit.
+     * @param given the commit checked out.
+     * @return false, having changed nothing, if an untracked file is in
+     * the way.*/
+    private static boolean checkoutFiles(Commit given) throws Exception {
+        String cwd = System.getProperty("user.dir");
+        HashMap<String, String> current = new HashMap<>();
+        HashMap<String, String> target = new HashMap<>();
+        for (Map.Entry<String, String[]> change : Tree.changes(
+                ObjectStore.local(), deserializedHeadCommit(), given)
+                .entrySet()) {
+            putIfPresent(current, change.getKey(), change.getValue()[0]);
+            putIfPresent(target, change.getKey(), change.getValue()[1]);
+        }
+        Checkout checkout = new Checkout(new File(cwd), current, target,
+            name -> getFileSHA1(new File(cwd, name)));
+        if (checkout.plan() != null) {
+            fail("There is an untracked file in the way; "
+                + "delete it, or add and commit it first.");
+            return false;
+        }
+        checkout.run();
+        return true;
+    }
+
+    /** add a file to a map of files unless it is absent.
+     * @param files names and blob ids.
+     * @param name the file.
+     * @param id its blob id, or null if it is absent.*/
+    private static void putIfPresent(Map<String, String> files, String name,
+                                     String id) {
+        if (id != null) {
+            files.put(name, id);
         }
     }
 
     /** print out current status.*/
-    private static void status() {
+    private static void status() throws IOException {
         Set<String> untracked = new HashSet<>();
         String cwd = System.getProperty("user.dir");
         Set<String>  modificationsNotStaged = new HashSet<>();
         Commit currentCommit = deserializedHeadCommit();
-        HashMap<String, String> currentCommitFiles = currentCommit.getFiles();
+        Map<String, String> currentCommitFiles = currentCommit.getFiles();
         Set<String> currentCommitFileNames = currentCommitFiles.keySet();
         String activeBranch = readActiveBranch();
         System.out.println("=== Branches ===");
@@ -947,14 +1108,14 @@ public class Main implements Serializable {
         System.out.println();
         System.out.println("=== Staged Files ===");
         List<String> additionStage =
-                Utils.plainFilenamesIn(".gitlet/additionStage");
+                Stage.names(Stage.ADDITION);
         for (String add: additionStage) {
-            File fileInAddition = Utils.join(".gitlet/additionStage", add);
-            String addSha1 = getFileSHA1(fileInAddition);
+            Stage.Entry staged = Stage.local().get(add);
             File fileInCWD = Utils.join(cwd, add);
             if (fileInCWD.exists()) {
-                String sha1FileCWD  = getFileSHA1(fileInCWD);
-                if (addSha1.equals(sha1FileCWD)) {
+                if (staged.stat != null
+                        && staged.stat.equals(Index.Stat.of(fileInCWD))
+                        || staged.id.equals(getFileSHA1(fileInCWD))) {
                     System.out.println(add);
                 } else {
                     modificationsNotStaged.add(add + " (modified)");
@@ -965,7 +1126,7 @@ public class Main implements Serializable {
         }
         System.out.println();
         System.out.println("=== Removed Files ===");
-        List<String> removal = Utils.plainFilenamesIn(".gitlet/removalStage");
+        List<String> removal = Stage.names(Stage.REMOVAL);
         for (String remove: removal) {
             System.out.println(remove);
             File removelStillCWD = Utils.join(cwd, remove);
@@ -998,10 +1159,11 @@ public class Main implements Serializable {
      */
     private static void modification(Set<String> untracked, String cwd,
                                      Set<String> modificationsNotStaged,
-                                     HashMap<String, String> currentCommitFiles,
+                                     Map<String, String> currentCommitFiles,
                                      Set<String> currentCommitFileNames,
                                      List<String> additionStage,
-                                     List<String> removal) {
+                                     List<String> removal)
+            throws IOException {
         for (String eachCurFile:currentCommitFileNames) {
             File fileCWD = Utils.join(cwd, eachCurFile);
             if (!fileCWD.exists()) {
@@ -1021,7 +1183,7 @@ public class Main implements Serializable {
         for (String eachModified: modificationsNotStaged) {
             System.out.println(eachModified);
         }
-        List<String> cwdFiles = Utils.plainFilenamesIn(cwd);
+        List<String> cwdFiles = workingFiles();
         for (String eachCwdFile: cwdFiles) {
             if (!currentCommitFileNames.contains(eachCwdFile)) {
                 if (!additionStage.contains(eachCwdFile)) {
@@ -1033,20 +1195,13 @@ public class Main implements Serializable {
 
     /** find commit based on message.
      * @param findMessage find a message. .*/
-    private static void find(String findMessage) {
-        List<String> allcommit = Utils.plainFilenamesIn(".gitlet/commit");
-        boolean exist = false;
-        for (String each: allcommit) {
-            File commit  = Utils.join(".gitlet/commit/" + each);
-            Commit eachCommit = Utils.readObject(commit, Commit.class);
-            String message = eachCommit.getMessage();
-            if (message.equals(findMessage)) {
-                System.out.println(each);
-                exist = true;
-            }
+    private static void find(String findMessage) throws IOException {
+        List<String> found = Catalog.local().find(findMessage);
+        for (String each: found) {
+            System.out.println(each);
         }
-        if (!exist) {
-            System.out.println("Found no commit with that message.");
+        if (found.isEmpty()) {
+            fail("Found no commit with that message.");
         }
     }
 
@@ -1057,38 +1212,28 @@ public class Main implements Serializable {
      *      A commit message.
      */
 
-    private static void globalLog() {
-        List<String>  allCommit = Utils.plainFilenamesIn(".gitlet/commit");
-        for (String each: allCommit) {
-            File commit  = Utils.join(".gitlet/commit/" + each);
-            Commit eachCommit = Utils.readObject(commit, Commit.class);
+    private static void globalLog() throws IOException {
+        Catalog.local().forEach(entry -> {
             System.out.println("===");
-            System.out.println("commit " + each);
-            System.out.println("Date: " + eachCommit.getDate());
-            System.out.println(eachCommit.getMessage());
+            System.out.println("commit " + entry.id);
+            System.out.println("Date: " + entry.date);
+            System.out.println(entry.message);
             System.out.println();
-        }
+        });
     }
     /** print out log info.*/
     private static void log() {
         String cwd = System.getProperty("user.dir");
         String activeBranch = readActiveBranch();
         File head = Utils.join(cwd + "/.gitlet/branch", activeBranch);
-        String parentSha1 = Utils.readContentsAsString(head);
-        File currentCommit = Utils.join(cwd + "/.gitlet/commit", parentSha1);
-        Commit current = Utils.readObject(currentCommit, Commit.class);
-        while (true) {
+        String headSha1 = Utils.readContentsAsString(head);
+        for (String eachID: CommitGraph.local().firstParents(headSha1)) {
+            Commit current = deserilazedGivenCommit(eachID);
             System.out.println("===");
-            System.out.println("commit " + parentSha1);
+            System.out.println("commit " + eachID);
             System.out.println("Date: " + current.getDate());
             System.out.println(current.getMessage());
             System.out.println();
-            parentSha1 = current.getParent();
-            if (parentSha1.equals("null")) {
-                break;
-            }
-            File parent = Utils.join(".gitlet/commit", parentSha1);
-            current = Utils.readObject(parent, Commit.class);
         }
     }
     /** remove command.
@@ -1097,24 +1242,14 @@ public class Main implements Serializable {
     private static void remove(String file) throws IOException {
         boolean neitherStageNorHead = true;
         String cwd = System.getProperty("user.dir");
-        List<String> filesToAdd =
-                Utils.plainFilenamesIn(".gitlet/additionStage");
-        for (String eachFile: filesToAdd) {
-            if (eachFile.equals(file)) {
-                File thisFile = Utils.join(".gitlet/additionStage/" + file);
-                thisFile.delete();
-                neitherStageNorHead = false;
-            }
+        if (Stage.names(Stage.ADDITION).contains(file)) {
+            Stage.local().unstage(file);
+            neitherStageNorHead = false;
         }
         Commit headCommit = deserializedHeadCommit();
-        HashMap<String, String> files = headCommit.getFiles();
+        Map<String, String> files = headCommit.getFiles();
         if (files.get(file) != null) {
-            String sha1 = files.get(file);
-            File blob = Utils.join(".gitlet/blobs/" + sha1);
-            String content = Utils.readObject(blob, String.class);
-            File thisBlob = new File(cwd + "/.gitlet/removalStage/" + file);
-            thisBlob.createNewFile();
-            Utils.writeContents(thisBlob, content);
+            Stage.local().remove(file);
             File cwdFile = Utils.join(cwd + "/" + file);
             if (cwdFile.exists()) {
                 cwdFile.delete();
@@ -1122,7 +1257,7 @@ public class Main implements Serializable {
             neitherStageNorHead = false;
         }
         if (neitherStageNorHead) {
-            System.out.println("No reason to remove the file");
+            fail("No reason to remove the file");
         }
     }
     /** find headcommit sha1.
@@ -1144,11 +1279,11 @@ public class Main implements Serializable {
                                String secondPa) throws IOException {
         if (alreadyInit()) {
             List<String> filesToAdd =
-                    Utils.plainFilenamesIn(".gitlet/additionStage");
+                    Stage.names(Stage.ADDITION);
             List<String> filesToRemove =
-                    Utils.plainFilenamesIn(".gitlet/removalStage");
+                    Stage.names(Stage.REMOVAL);
             if (filesToAdd.size() == 0 && filesToRemove.size() == 0) {
-                System.out.println("No changes added to the commit.");
+                fail("No changes added to the commit.");
                 return;
             }
             String activeBranch = readActiveBranch();
@@ -1156,11 +1291,8 @@ public class Main implements Serializable {
             File head = Utils.join(cwd + "/.gitlet/branch", activeBranch);
             String headCommit = findHeadCommitSHA1();
             Commit commit = new Commit(message, headCommit, secondPa);
-            byte[] ser = Utils.serialize(commit);
-            String shA = Utils.sha1(ser);
-            File commitFile = new File(cwd + "/.gitlet/commit/" + shA);
-            commitFile.createNewFile();
-            Utils.writeObject(commitFile, commit);
+            String shA = commit.store(ObjectStore.local());
+            CommitGraph.local().add(shA, headCommit, secondPa);
             Utils.writeContents(head, shA);
             File activebranch = Utils.join(".gitlet/branch", activeBranch);
             Utils.writeContents(activebranch, shA);
@@ -1171,7 +1303,7 @@ public class Main implements Serializable {
      * @return commit a commit*/
     private static Commit deserilazedGivenCommit(String commitID) {
         File givenCommit = Utils.join(".gitlet/commit", commitID);
-        Commit commit = Utils.readObject(givenCommit, Commit.class);
+        Commit commit = Commit.read(givenCommit);
         return commit;
     }
     /** deserialized GivenCommit.
@@ -1181,7 +1313,7 @@ public class Main implements Serializable {
         File givenBranch = Utils.join(".gitlet/branch", branchName);
         String givenCommitID =  Utils.readContentsAsString(givenBranch);
         File givenCommit = Utils.join(".gitlet/commit", givenCommitID);
-        Commit commit = Utils.readObject(givenCommit, Commit.class);
+        Commit commit = Commit.read(givenCommit);
         return commit;
     }
     /** return a commitID of a branch.
@@ -1199,76 +1331,97 @@ public class Main implements Serializable {
         File head = Utils.join(cwd + "/.gitlet/branch", activeBranch);
         String headCommit = Utils.readContentsAsString(head);
         File currentCommit = Utils.join(cwd + "/.gitlet/commit", headCommit);
-        Commit current = Utils.readObject(currentCommit, Commit.class);
+        Commit current = Commit.read(currentCommit);
         return current;
     }
-    /**Adds a copy of the file as it currently exists to the staging area
-     *the command.
-     @param file a file. */
-    private static void add(String file) throws Exception {
+    /**Adds copies of the given files, and of every file under the given
+     *directories, as they currently exist to the staging area. Files are
+     *hashed and staged on a bounded pool of worker threads; nothing is
+     *staged unless every path exists.
+     @param paths files and directories. */
+    private static void add(String... paths) throws Exception {
         String cwd = System.getProperty("user.dir");
-        File fileContent = Utils.join(cwd, file);
-        String stringContent = "";
-        if (fileContent.exists()) {
-            stringContent = Utils.readContentsAsString(fileContent);
-        } else {
-            System.out.println("File does not exist."); return;
-        }
-        String content = Utils.readContentsAsString(fileContent);
-        byte []ser = Utils.serialize(content);
-        String fileSha1 = Utils.sha1(ser);
-        Commit current = deserializedHeadCommit();
+        Path root = Paths.get(cwd).toAbsolutePath().normalize();
+        TreeSet<String> names = new TreeSet<>();
+        for (String path: paths) {
+            Path start = root.resolve(path).normalize();
+            if (!Files.exists(start) || !start.startsWith(root)) {
+                fail("File does not exist."); return;
+            }
+            collectFiles(root, start, names);
+        }
+        Map<String, String> headFiles =
+                deserializedHeadCommit().getFiles();
+        List<String> toStage = new ArrayList<>(names);
+        List<String> shas = Workers.map(toStage,
+            name -> getFileSHA1(new File(cwd, name)));
+        HashMap<String, String> changed = new HashMap<>();
+        for (int i = 0; i < toStage.size(); i += 1) {
+            changed.put(toStage.get(i), shas.get(i));
+        }
+        Workers.map(toStage, name -> {
+            removefromStage(name);
+            if (!changed.get(name).equals(headFiles.get(name))) {
+                Stage.add(name, new File(cwd, name), changed.get(name));
+            }
+            return name;
+        });
+    }
+
+    /** the names of every file under the working directory, outside
+     * .gitlet, in order.
+     * @return the names, with '/' between directories.*/
+    private static List<String> workingFiles() throws IOException {
+        Path root = Paths.get(System.getProperty("user.dir"))
+                .toAbsolutePath().normalize();
+        TreeSet<String> names = new TreeSet<>();
+        collectFiles(root, root, names);
+        return new ArrayList<>(names);
+    }
 
-        HashMap<String, String> getFiles = current.getFiles();
-        boolean isSame = false;
-        if (getFiles.get(file) != null) {
-            String id = getFiles.get(file);
-            if (fileSha1.equals(id)) {
-                isSame = true;
+    /** add the names of START, if it is a file, or of the files under it,
+     * if it is a directory, relative to ROOT, to NAMES. The .gitlet
+     * directory is skipped.
+     * @param root the working directory.
+     * @param start a file or directory under it.
+     * @param names the names found. */
+    private static void collectFiles(Path root, Path start,
+                                     Set<String> names) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir,
+                    BasicFileAttributes attrs) {
+                if (dir.getFileName() != null
+                        && dir.getFileName().toString().equals(".gitlet")) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
             }
-        }
-        if (isInStageArea(file)) {
-            removefromStage(file);
-        }
-        if (isSame) {
-            return;
-        }
-        File fileToAdd = new File(cwd + "/.gitlet/additionStage/" + file);
-        fileToAdd.createNewFile();
-        Utils.writeContents(fileToAdd, stringContent);
+
+            @Override
+            public FileVisitResult visitFile(Path file,
+                    BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    names.add(Stage.name(root, file));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
     }
     /** remove this file from stage area.
      * @param file a file.*/
     public static void removefromStage(String file) {
-        File thisfileAdd = Utils.join(".gitlet/additionStage", file);
-        if (thisfileAdd.exists()) {
-            thisfileAdd.delete();
-        }
-        File thisfileRemove = Utils.join(".gitlet/removalStage", file);
-        if (thisfileRemove.exists()) {
-            thisfileRemove.delete();
-        }
+        Stage.local().unstage(file);
     }
 
     /** check whether a file is int stage Area.
      * @param  file a file.
      * @return return a boolean.*/
     public static boolean isInStageArea(String file) {
-        List<String> filesToAdd =
-                Utils.plainFilenamesIn(".gitlet/additionStage");
-        for (String each: filesToAdd) {
-            if (file.equals(each)) {
-                return true;
-            }
-        }
-        List<String> filesToRemove =
-                Utils.plainFilenamesIn(".gitlet/removalStage");
-        for (String each: filesToRemove) {
-            if (file.equals(each)) {
-                return true;
-            }
-        }
-        return false;
+        return Stage.local().contains(file);
     }
+
+    /** Whether the last command run by main printed an error. */
+    private static boolean _failed;
 }
 
@@ -0,0 +1,100 @@
+package gitlet;
+
+import java.util.List;
+
+/** A three-way merge of the lines of two texts, ours and theirs, that
+ *  both descend from a base, in the manner of diff3.  The edits each
+ *  side made to the base are found by Diff and walked together in base
+ *  order.  Edits of one side that overlap or touch no edit of the other
+ *  are taken as they are.  A run of edits from both sides that overlap
+ *  or touch is a conflict unless both sides made the same change; a
+ *  conflict is written with ours and theirs between markers, as whole
+ *  file conflicts always were, and the base lines around it are kept.
+ *  @author Xinyu Fu
+ */
+class Merge3 {
+
+    /** Starts a conflict; ours follows. */
+    static final String OURS = "<<<<<<< HEAD\n";
+    /** Separates ours from theirs in a conflict. */
+    static final String SEPARATOR = "=======\n";
+    /** Ends a conflict. */
+    static final String THEIRS = ">>>>>>>\n";
+
+    /** A merge of OURS and THEIRS, which descend from BASE, using the
+     *  diff algorithm ALGORITHM. */
+    Merge3(String base, String ours, String theirs, int algorithm) {
+        List<String> b = Diff.lines(base), o = Diff.lines(ours),
+            t = Diff.lines(theirs);
+        List<Diff.Edit> eo = Diff.diff(b, o, algorithm),
+            et = Diff.diff(b, t, algorithm);
+        StringBuilder out = new StringBuilder();
+        int line = 0, deltaO = 0, deltaT = 0;
+        for (int i = 0, j = 0; i < eo.size() || j < et.size();) {
+            boolean fromO = j == et.size() || i < eo.size()
+                && eo.get(i).beginA <= et.get(j).beginA;
+            int lo = fromO ? eo.get(i).beginA : et.get(j).beginA;
+            int hi = lo, i0 = i, j0 = j;
+            while (true) {
+                if (i < eo.size() && eo.get(i).beginA <= hi) {
+                    hi = Math.max(hi, eo.get(i).endA);
+                    i += 1;
+                } else if (j < et.size() && et.get(j).beginA <= hi) {
+                    hi = Math.max(hi, et.get(j).endA);
+                    j += 1;
+                } else {
+                    break;
+                }
+            }
+            append(out, b, line, lo);
+            int oLo = lo + deltaO, tLo = lo + deltaT;
+            for (int k = i0; k < i; k += 1) {
+                Diff.Edit e = eo.get(k);
+                deltaO += (e.endB - e.beginB) - (e.endA - e.beginA);
+            }
+            for (int k = j0; k < j; k += 1) {
+                Diff.Edit e = et.get(k);
+                deltaT += (e.endB - e.beginB) - (e.endA - e.beginA);
+            }
+            List<String> mine = o.subList(oLo, hi + deltaO),
+                yours = t.subList(tLo, hi + deltaT);
+            if (j == j0 || i == i0 || mine.equals(yours)) {
+                append(out, j == j0 ? o : t, j == j0 ? oLo : tLo,
+                       j == j0 ? hi + deltaO : hi + deltaT);
+            } else {
+                out.append(OURS);
+                append(out, mine, 0, mine.size());
+                out.append(SEPARATOR);
+                append(out, yours, 0, yours.size());
+                out.append(THEIRS);
+                _conflicts += 1;
+            }
+            line = hi;
+        }
+        append(out, b, line, b.size());
+        _result = out.toString();
+    }
+
+    /** Append lines [FROM, TO) of LINES to OUT. */
+    private static void append(StringBuilder out, List<String> lines,
+                               int from, int to) {
+        for (int i = from; i < to; i += 1) {
+            out.append(lines.get(i));
+        }
+    }
+
+    /** Returns the merged text. */
+    String result() {
+        return _result;
+    }
+
+    /** Returns the number of conflicts. */
+    int conflicts() {
+        return _conflicts;
+    }
+
+    /** The merged text. */
+    private final String _result;
+    /** Number of conflicts. */
+    private int _conflicts;
+}
@@ -0,0 +1,189 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/** Rewrites a repository whose blobs are in the SERIALIZED or RAW
+ *  format so that they are CHUNKED.  Blobs whose id changes are those
+ *  of a SERIALIZED repository and the large blobs of a RAW one.  If any
+ *  does, every commit is rewritten, parents first, to name the new blobs
+ *  and the new parents, the branches are moved to the new commits and
+ *  the files staged for addition to the new blobs.
+ *  The old objects and all packs are then deleted, leaving the new
+ *  objects loose, and the commit graph, commit index, catalog, bitmaps
+ *  and stat cache, which name old ids, are dropped.  A migration that is
+ *  interrupted may simply be run again.
+ *  @author Xinyu Fu
+ */
+class Migration {
+
+    /** A migration of the .gitlet directory GITLETDIR, whose stage is
+     *  STAGE. */
+    Migration(File gitletDir, Stage stage) {
+        _dir = gitletDir;
+        _store = ObjectStore.of(gitletDir);
+        _stage = stage;
+    }
+
+    /** Migrate the repository, returning false if its blobs are already
+     *  CHUNKED. */
+    boolean run() throws IOException {
+        if (Blobs.formatOf(_dir) == Blobs.CHUNKED) {
+            return false;
+        }
+        HashMap<String, String> blobs = new HashMap<>();
+        boolean renamed = false;
+        File tmp = File.createTempFile("migrate", ".tmp", _dir);
+        try {
+            for (String id : _store.ids(ObjectStore.BLOBS)) {
+                Blobs.restore(_store, id, tmp);
+                String newId = Blobs.store(_store, tmp, Blobs.CHUNKED);
+                loosen(newId);
+                for (String chunk : Blobs.chunks(_store, newId)) {
+                    loosen(chunk);
+                }
+                blobs.put(id, newId);
+                if (!newId.equals(id)) {
+                    renamed = true;
+                    _blobs += 1;
+                }
+            }
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+        if (renamed) {
+            rewrite(blobs);
+        }
+        Config.set(_dir, Config.BLOB_FORMAT,
+                   Integer.toString(Blobs.CHUNKED));
+        return true;
+    }
+
+    /** Rewrite every commit to name the new ids of its blobs under
+     *  BLOBS, then move the branches and the stage and drop the old
+     *  objects. */
+    private void rewrite(HashMap<String, String> blobs) throws IOException {
+        HashMap<String, Commit> commits = new HashMap<>();
+        for (String id : _store.ids(ObjectStore.COMMITS)) {
+            commits.put(id, Commit.read(
+                _store.looseFile(ObjectStore.COMMITS, id)));
+        }
+        HashMap<String, String> renamed = new HashMap<>();
+        for (String id : ObjectStore.parentsFirst(commits)) {
+            Commit commit = commits.get(id);
+            HashMap<String, String> files = new HashMap<>();
+            for (Map.Entry<String, String> file
+                     : commit.getFiles().entrySet()) {
+                files.put(file.getKey(), rename(blobs, file.getValue()));
+            }
+            Commit migrated = new Commit(commit,
+                rename(renamed, commit.getParent()),
+                rename(renamed, commit.getSecondParent()), files);
+            byte[] bytes = migrated.encode();
+            String newId = Utils.sha1(bytes);
+            File file = _store.looseFile(ObjectStore.COMMITS, newId);
+            if (!file.isFile()) {
+                Utils.writeContents(file, Compression.encode(
+                    bytes, Compression.codecOf(_dir)));
+            }
+            renamed.put(id, newId);
+        }
+        moveBranches(renamed);
+        restage(blobs);
+        deleteOld(ObjectStore.BLOBS, blobs);
+        deleteOld(ObjectStore.COMMITS, renamed);
+        _store.dropPacks();
+        Files.deleteIfExists(new File(_dir, CommitGraph.FILE).toPath());
+        Files.deleteIfExists(new File(_dir, Index.FILE).toPath());
+        CommitIndex.of(_dir).invalidate();
+        Catalog.of(_dir).invalidate();
+        Bitmaps.of(_dir).invalidate();
+        _commits = commits.size();
+    }
+
+    /** Make sure that blob ID, which may be packed, is also loose, so
+     *  that it survives the dropping of the packs. */
+    private void loosen(String id) {
+        File loose = _store.looseFile(ObjectStore.BLOBS, id);
+        if (!loose.isFile()) {
+            loose.getParentFile().mkdir();
+            Utils.writeContents(loose, _store.read(ObjectStore.BLOBS, id));
+        }
+    }
+
+    /** Returns the number of blobs rewritten by run. */
+    int blobs() {
+        return _blobs;
+    }
+
+    /** Returns the number of commits rewritten by run. */
+    int commits() {
+        return _commits;
+    }
+
+    /** Returns the new id of ID according to RENAMED, or ID itself if it
+     *  was not renamed. */
+    private static String rename(Map<String, String> renamed, String id) {
+        String result = renamed.get(id);
+        return result == null ? id : result;
+    }
+
+    /** Point each branch at the new id of its commit under RENAMED. */
+    private void moveBranches(Map<String, String> renamed) {
+        File branches = new File(_dir, "branch");
+        List<String> names = Utils.plainFilenamesIn(branches);
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            File branch = new File(branches, name);
+            String id = Utils.readContentsAsString(branch).trim();
+            if (renamed.containsKey(id)) {
+                Utils.writeContents(branch, renamed.get(id));
+            }
+        }
+    }
+
+    /** Stage each file staged for addition as the new id of its blob
+     *  under BLOBS, and save the stage. */
+    private void restage(Map<String, String> blobs) {
+        for (Map.Entry<String, String> change
+                 : _stage.changes().entrySet()) {
+            String id = change.getValue();
+            if (id != null && !rename(blobs, id).equals(id)) {
+                Stage.Entry entry = _stage.get(change.getKey());
+                _stage.put(change.getKey(), new Stage.Entry(
+                    rename(blobs, id), entry.mode, entry.stat));
+            }
+        }
+        _stage.save();
+    }
+
+    /** Delete the loose objects of kind KIND named by the keys of
+     *  RENAMED, except those that are also new ids. */
+    private void deleteOld(String kind, Map<String, String> renamed)
+        throws IOException {
+        HashSet<String> kept = new HashSet<>(renamed.values());
+        for (String id : renamed.keySet()) {
+            if (!kept.contains(id)) {
+                Files.deleteIfExists(_store.looseFile(kind, id).toPath());
+            }
+        }
+    }
+
+    /** The .gitlet directory migrated. */
+    private final File _dir;
+    /** Its objects. */
+    private final ObjectStore _store;
+    /** Its stage. */
+    private final Stage _stage;
+    /** Number of blobs rewritten. */
+    private int _blobs;
+    /** Number of commits rewritten. */
+    private int _commits;
+}
@@ -0,0 +1,41 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Migration class.
+ *  @author Xinyu Fu
+ */
+public class MigrationTest {
+
+    @Test
+    public void restagesRenamedBlobs() throws IOException {
+        File repo = TestRepos.tempRepo(ObjectStore.COMMITS, ObjectStore.BLOBS,
+                                       ObjectStore.TREES, "branch");
+        ObjectStore store = ObjectStore.of(repo);
+        Utils.writeContents(new File(repo, "branch/master"),
+            new Commit("initial commit", "null", "null").store(store));
+        File work = File.createTempFile("gitlet-migration", ".txt");
+        work.deleteOnExit();
+        Utils.writeContents(work, "two");
+        String old = Blobs.store(store, work, Blobs.SERIALIZED);
+        Stage stage = new Stage(repo);
+        stage.put("a.txt", new Stage.Entry(old, Stage.REGULAR, null));
+        stage.remove("b.txt");
+        stage.save();
+
+        assertTrue(new Migration(repo, stage).run());
+        String id = new Stage(repo).get("a.txt").id;
+        assertEquals(Blobs.id(work, Blobs.CHUNKED), id);
+        assertFalse(id.equals(old));
+        assertFalse(store.contains(ObjectStore.BLOBS, old));
+        File dest = File.createTempFile("gitlet-migration", ".txt");
+        dest.deleteOnExit();
+        Blobs.restore(store, id, dest);
+        assertEquals("two", Utils.readContentsAsString(dest));
+        assertEquals(null, new Stage(repo).get("b.txt").id);
+    }
+}
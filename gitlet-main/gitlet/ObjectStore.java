@@ -0,0 +1,437 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** The objects of one .gitlet directory.  New objects are written loose,
+ *  one file per object under blobs/, commit/ and tree/, as before;
+ *  the repack command gathers loose and packed objects into a single
+ *  immutable pack under pack/, storing each version of a file as a
+ *  delta against the version before it where that pays.  Every read
+ *  checks the loose file first and then the packs.
+ *  @author Xinyu Fu
+ */
+class ObjectStore {
+
+    /** Directory (and kind name) of commits. */
+    static final String COMMITS = "commit";
+    /** Directory (and kind name) of blobs. */
+    static final String BLOBS = "blobs";
+    /** Directory (and kind name) of trees. */
+    static final String TREES = "tree";
+    /** Directory holding packs. */
+    static final String PACKS = "pack";
+    /** All kinds of object, indexed by their code in a pack. */
+    static final List<String> KINDS = Arrays.asList(COMMITS, BLOBS, TREES);
+
+    /** The store of the .gitlet directory GITLETDIR. */
+    ObjectStore(File gitletDir) {
+        _dir = gitletDir;
+    }
+
+    /** Returns the store of the .gitlet directory in the current
+     *  directory. */
+    static ObjectStore local() {
+        return of(new File(".gitlet"));
+    }
+
+    /** Forget every store already opened, closing its packs, so that
+     *  each is read again when next used. */
+    static void forgetAll() throws IOException {
+        for (ObjectStore store : STORES.values()) {
+            if (store._packs != null) {
+                for (Pack pack : store._packs) {
+                    pack.close();
+                }
+            }
+        }
+        STORES.clear();
+    }
+
+    /** Returns the store of the .gitlet directory GITLETDIR. */
+    static ObjectStore of(File gitletDir) {
+        String key = gitletDir.getAbsoluteFile().toPath().normalize()
+            .toString();
+        return STORES.computeIfAbsent(key, k -> new ObjectStore(gitletDir));
+    }
+
+    /** Returns the contents of the packed object that would be stored
+     *  loose in FILE, that is, FILE is <gitlet>/<kind>/<id>.  Returns
+     *  null if FILE does not name an object in any pack. */
+    static byte[] readPacked(File file) {
+        File kindDir = file.getAbsoluteFile().getParentFile();
+        if (kindDir == null || kindDir.getParentFile() == null
+            || !KINDS.contains(kindDir.getName())
+            || !Utils.isUid(file.getName())) {
+            return null;
+        }
+        File gitletDir = kindDir.getParentFile();
+        if (!new File(gitletDir, PACKS).isDirectory()) {
+            return null;
+        }
+        return of(gitletDir).readFromPacks(kindCode(kindDir.getName()),
+                                           file.getName());
+    }
+
+    /** Returns the numeric code of KIND. */
+    static int kindCode(String kind) {
+        int code = KINDS.indexOf(kind);
+        if (code < 0) {
+            throw new IllegalArgumentException("unknown object kind " + kind);
+        }
+        return code;
+    }
+
+    /** Returns the .gitlet directory of this store. */
+    File dir() {
+        return _dir;
+    }
+
+    /** Returns true iff this store holds an object of kind KIND with
+     *  id ID. */
+    boolean contains(String kind, String id) {
+        if (looseFile(kind, id).isFile()) {
+            return true;
+        }
+        if (!Utils.isUid(id)) {
+            return false;
+        }
+        int code = kindCode(kind);
+        for (Pack pack : packs()) {
+            if (pack.contains(code, id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the contents of the object of kind KIND with id ID.
+     *  Throws IllegalArgumentException if there is none. */
+    byte[] read(String kind, String id) {
+        File loose = looseFile(kind, id);
+        if (loose.isFile()) {
+            return Utils.readContents(loose);
+        }
+        byte[] result = Utils.isUid(id)
+            ? readFromPacks(kindCode(kind), id) : null;
+        if (result == null) {
+            throw new IllegalArgumentException("no such object " + id);
+        }
+        return result;
+    }
+
+    /** Returns a stream of the contents of the object of kind KIND with
+     *  id ID.  A loose object is read from its file as the stream is
+     *  read; a packed one is read whole first. */
+    InputStream open(String kind, String id) throws IOException {
+        File loose = looseFile(kind, id);
+        if (loose.isFile()) {
+            return new BufferedInputStream(Files.newInputStream(
+                loose.toPath()));
+        }
+        return new ByteArrayInputStream(read(kind, id));
+    }
+
+    /** Store CONTENTS as the object of kind KIND with id ID, unless it
+     *  is already present.  New commits are added to the CommitIndex
+     *  and the Catalog. */
+    void write(String kind, String id, byte[] contents) {
+        if (!contains(kind, id)) {
+            looseFile(kind, id).getParentFile().mkdir();
+            Utils.writeContents(looseFile(kind, id), contents);
+            added(kind, id, contents);
+        }
+    }
+
+    /** Store the object of kind KIND with id ID from FROM, unless it is
+     *  already present.  A loose object is hard-linked into place if
+     *  LINK is true and the file system allows it, and otherwise copied
+     *  file to file, so its contents never pass through the heap.  A
+     *  packed object is read and written whole. */
+    void copy(ObjectStore from, String kind, String id, boolean link)
+        throws IOException {
+        if (contains(kind, id)) {
+            return;
+        }
+        File source = from.looseFile(kind, id);
+        if (!source.isFile()) {
+            write(kind, id, from.read(kind, id));
+            return;
+        }
+        Path dest = looseFile(kind, id).toPath();
+        dest.getParent().toFile().mkdir();
+        if (!link || !link(source.toPath(), dest)) {
+            File tmp = File.createTempFile(".copy", ".tmp",
+                                           dest.getParent().toFile());
+            try {
+                Files.copy(source.toPath(), tmp.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING);
+                Files.move(tmp.toPath(), dest,
+                           StandardCopyOption.REPLACE_EXISTING,
+                           StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tmp.toPath());
+            }
+        }
+        if (kind.equals(COMMITS)) {
+            added(kind, id, Utils.readContents(dest.toFile()));
+        }
+    }
+
+    /** Make DEST a hard link to SOURCE, returning false if that cannot be
+     *  done, as between file systems. */
+    private static boolean link(Path source, Path dest) {
+        try {
+            Files.createLink(dest, source);
+            return true;
+        } catch (FileAlreadyExistsException excp) {
+            return true;
+        } catch (IOException | UnsupportedOperationException
+                 | SecurityException excp) {
+            return false;
+        }
+    }
+
+    /** Note that the object of kind KIND with id ID, whose stored form is
+     *  CONTENTS, has been added: new commits go into the CommitIndex and
+     *  the Catalog. */
+    private void added(String kind, String id, byte[] contents) {
+        if (kind.equals(COMMITS)) {
+            CommitIndex.of(_dir).add(id);
+            Catalog.of(_dir).add(id, Commit.decode(
+                Compression.decode(contents)));
+        }
+    }
+
+    /** Returns the ids of all objects of kind KIND, loose or packed, in
+     *  lexicographic order. */
+    List<String> ids(String kind) {
+        TreeSet<String> result = new TreeSet<>();
+        List<String> loose = Utils.plainFilenamesIn(new File(_dir, kind));
+        if (loose != null) {
+            result.addAll(loose);
+        }
+        int code = kindCode(kind);
+        for (Pack pack : packs()) {
+            result.addAll(pack.ids(code));
+        }
+        return new ArrayList<>(result);
+    }
+
+    /** Move every loose object, together with the contents of all
+     *  existing packs, into a single new pack.  Returns the number of
+     *  loose objects moved. */
+    int repack() throws IOException {
+        SortedMap<String, Integer> loose = new TreeMap<>();
+        for (String kind : KINDS) {
+            List<String> names =
+                Utils.plainFilenamesIn(new File(_dir, kind));
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                if (Utils.isUid(name)) {
+                    loose.put(name, kindCode(kind));
+                }
+            }
+        }
+        List<Pack> old = packs();
+        if (loose.isEmpty() && old.size() <= 1) {
+            return 0;
+        }
+        SortedMap<String, Integer> all = new TreeMap<>(loose);
+        for (Pack pack : old) {
+            for (int kind = 0; kind < KINDS.size(); kind += 1) {
+                for (String id : pack.ids(kind)) {
+                    all.put(id, kind);
+                }
+            }
+        }
+        File packDir = new File(_dir, PACKS);
+        packDir.mkdir();
+        String name = "pack-" + Utils.sha1(String.join("", all.keySet()));
+        File packFile = new File(packDir, name + ".pack");
+        if (!new File(packDir, name + ".idx").exists()) {
+            Pack.write(packDir, name, all, deltaBases(all), this);
+        }
+        for (Pack pack : old) {
+            pack.close();
+            if (!pack.packFile().equals(packFile)) {
+                String base = pack.packFile().getPath();
+                base = base.substring(0, base.length() - ".pack".length());
+                Files.delete(new File(base + ".idx").toPath());
+                Files.delete(pack.packFile().toPath());
+            }
+        }
+        _packs = null;
+        for (SortedMap.Entry<String, Integer> entry : loose.entrySet()) {
+            Files.delete(looseFile(KINDS.get(entry.getValue()),
+                                   entry.getKey()).toPath());
+        }
+        return loose.size();
+    }
+
+    /** Returns the delta bases to use for the blobs in OBJECTS, which
+     *  maps ids to kind codes.  Commits are visited parents first, and
+     *  each blob that first appears as a new version of some file takes
+     *  the previous version of that file as its base, provided that
+     *  keeps delta chains no longer than Pack.MAX_DEPTH. */
+    private Map<String, String> deltaBases(SortedMap<String, Integer> objects) {
+        int commitCode = kindCode(COMMITS);
+        HashMap<String, Commit> commits = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : objects.entrySet()) {
+            if (entry.getValue() == commitCode) {
+                commits.put(entry.getKey(), Commit.read(
+                    looseFile(COMMITS, entry.getKey())));
+            }
+        }
+        HashMap<String, String> bases = new HashMap<>();
+        HashMap<String, Integer> depths = new HashMap<>();
+        HashMap<String, String> latest = new HashMap<>();
+        for (String id : parentsFirst(commits)) {
+            TreeMap<String, String> files =
+                new TreeMap<>(commits.get(id).getFiles());
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                String blob = file.getValue();
+                String previous = latest.put(file.getKey(), blob);
+                if (depths.containsKey(blob)) {
+                    continue;
+                }
+                depths.put(blob, 0);
+                if (previous != null && objects.containsKey(previous)
+                    && objects.containsKey(blob)
+                    && depths.get(previous) < Pack.MAX_DEPTH) {
+                    bases.put(blob, previous);
+                    depths.put(blob, depths.get(previous) + 1);
+                }
+            }
+        }
+        return bases;
+    }
+
+    /** Returns the ids of COMMITS ordered so that every commit comes
+     *  after those of its parents that are in COMMITS. */
+    static List<String> parentsFirst(HashMap<String, Commit> commits) {
+        List<String> result = new ArrayList<>();
+        HashSet<String> done = new HashSet<>();
+        ArrayDeque<String> stack = new ArrayDeque<>();
+        for (String start : new TreeSet<>(commits.keySet())) {
+            stack.push(start);
+            while (!stack.isEmpty()) {
+                String id = stack.peek();
+                if (done.contains(id)) {
+                    stack.pop();
+                    continue;
+                }
+                Commit commit = commits.get(id);
+                boolean ready = true;
+                for (String parent : new String[] {
+                        commit.getParent(), commit.getSecondParent() }) {
+                    if (commits.containsKey(parent)
+                        && !done.contains(parent)) {
+                        stack.push(parent);
+                        ready = false;
+                    }
+                }
+                if (ready) {
+                    stack.pop();
+                    done.add(id);
+                    result.add(id);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Delete every pack.  The caller must already hold each object
+     *  that it still needs loose. */
+    void dropPacks() throws IOException {
+        for (Pack pack : packs()) {
+            pack.close();
+            String base = pack.packFile().getPath();
+            base = base.substring(0, base.length() - ".pack".length());
+            Files.delete(new File(base + ".idx").toPath());
+            Files.delete(pack.packFile().toPath());
+        }
+        _packs = null;
+    }
+
+    /** Returns the file that holds the object of kind KIND and id ID
+     *  when it is loose. */
+    File looseFile(String kind, String id) {
+        return Utils.join(_dir, kind, id);
+    }
+
+    /** Returns the contents of the object of kind code KIND with id ID
+     *  from the packs, or null if no pack holds it. */
+    private byte[] readFromPacks(int kind, String id) {
+        for (Pack pack : packs()) {
+            byte[] result = pack.read(kind, id);
+            if (result != null) {
+                return result;
+            }
+        }
+        return null;
+    }
+
+    /** Returns the packs of this store, loading them on first use.  The
+     *  list is filled before it is published, so threads that call this
+     *  at once all see every pack. */
+    private List<Pack> packs() {
+        List<Pack> result = _packs;
+        if (result != null) {
+            return result;
+        }
+        synchronized (this) {
+            if (_packs == null) {
+                List<Pack> packs = new ArrayList<>();
+                List<String> names =
+                    Utils.plainFilenamesIn(new File(_dir, PACKS));
+                if (names != null) {
+                    for (String name : names) {
+                        if (name.endsWith(".idx")) {
+                            String base =
+                                name.substring(0, name.length() - 4);
+                            File pack =
+                                Utils.join(_dir, PACKS, base + ".pack");
+                            if (pack.isFile()) {
+                                packs.add(new Pack(pack,
+                                    Utils.join(_dir, PACKS, name)));
+                            }
+                        }
+                    }
+                }
+                _packs = Collections.unmodifiableList(packs);
+            }
+            return _packs;
+        }
+    }
+
+    /** Stores already opened, keyed by normalized .gitlet path. */
+    private static final ConcurrentHashMap<String, ObjectStore> STORES =
+        new ConcurrentHashMap<>();
+
+    /** The .gitlet directory of this store. */
+    private final File _dir;
+    /** The packs of this store, or null if not yet loaded. */
+    private volatile List<Pack> _packs;
+}
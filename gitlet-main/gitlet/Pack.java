@@ -0,0 +1,332 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+/** An immutable pack of objects together with its sorted index.
+ *  A pack file holds a short header followed by the objects one after
+ *  the other, each either whole or as a delta against another object
+ *  of the same pack (see Delta).  Its index file holds a 256-entry
+ *  fan-out table on the first byte of each id, the sorted ids
+ *  themselves, the kind of each object and the offset of each object in
+ *  the pack, so that finding an object is a binary search over a small
+ *  range of the index.
+ *  @author Xinyu Fu
+ */
+class Pack {
+
+    /** Magic number at the start of every pack file. */
+    static final String PACK_MAGIC = "GPAK";
+    /** Magic number at the start of every index file. */
+    static final String INDEX_MAGIC = "GIDX";
+    /** Current version of both file formats. */
+    static final int VERSION = 1;
+    /** Number of entries in the fan-out table. */
+    static final int FANOUT = 256;
+    /** Size of the header of a pack file: magic, version, count. */
+    static final int PACK_HEADER = 12;
+    /** Size of the header of an index file: magic, version, count. */
+    static final int INDEX_HEADER = 12;
+    /** Entry type of an object stored whole. */
+    static final byte FULL = 0;
+    /** Entry type of an object stored as a delta against a base. */
+    static final byte DELTA = 1;
+    /** Longest chain of deltas that a pack may contain. */
+    static final int MAX_DEPTH = 10;
+    /** Size of the header of each pack entry: type and length. */
+    static final int ENTRY_HEADER = 5;
+
+    /** The pack whose data is in PACKFILE and whose index is in
+     *  INDEXFILE. */
+    Pack(File packFile, File indexFile) {
+        _packFile = packFile;
+        try (FileChannel idx = FileChannel.open(indexFile.toPath())) {
+            _index = idx.map(FileChannel.MapMode.READ_ONLY, 0, idx.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        byte[] magic = new byte[INDEX_MAGIC.length()];
+        _index.get(magic);
+        if (!INDEX_MAGIC.equals(new String(magic, StandardCharsets.UTF_8))
+            || _index.getInt() != VERSION) {
+            throw new IllegalArgumentException("bad pack index "
+                                               + indexFile);
+        }
+        _count = _index.getInt();
+        _idsStart = INDEX_HEADER + FANOUT * 4;
+        _kindsStart = _idsStart + _count * Utils.UID_BYTES;
+        _offsetsStart = _kindsStart + _count;
+    }
+
+    /** Returns the number of objects in this pack. */
+    int size() {
+        return _count;
+    }
+
+    /** Returns the position in the index of the object with
+     *  hexadecimal id ID, or -1 if it is not in this pack. */
+    int find(String id) {
+        byte[] key = Utils.uidToBytes(id);
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : _index.getInt(INDEX_HEADER
+                                               + (first - 1) * 4);
+        int hi = _index.getInt(INDEX_HEADER + first * 4) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareId(mid, key);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns true iff this pack holds an object of kind KIND with
+     *  id ID. */
+    boolean contains(int kind, String id) {
+        int pos = find(id);
+        return pos >= 0 && kindAt(pos) == kind;
+    }
+
+    /** Returns the contents of the object of kind KIND with id ID, or
+     *  null if this pack does not hold it. */
+    byte[] read(int kind, String id) {
+        int pos = find(id);
+        if (pos < 0 || kindAt(pos) != kind) {
+            return null;
+        }
+        return readAt(offsetAt(pos));
+    }
+
+    /** Returns the ids of all objects of kind KIND in this pack, in
+     *  sorted order. */
+    List<String> ids(int kind) {
+        List<String> result = new ArrayList<>();
+        byte[] id = new byte[Utils.UID_BYTES];
+        for (int i = 0; i < _count; i += 1) {
+            if (kindAt(i) == kind) {
+                idAt(i, id);
+                result.add(Utils.uidFromBytes(id, 0));
+            }
+        }
+        return result;
+    }
+
+    /** Returns the kind of the object at position POS of the index. */
+    int kindAt(int pos) {
+        return _index.get(_kindsStart + pos);
+    }
+
+    /** Returns the offset in the pack of the object at position POS of
+     *  the index. */
+    long offsetAt(int pos) {
+        return _index.getLong(_offsetsStart + pos * 8);
+    }
+
+    /** Copy the id at position POS of the index into ID. */
+    void idAt(int pos, byte[] id) {
+        for (int i = 0; i < Utils.UID_BYTES; i += 1) {
+            id[i] = _index.get(_idsStart + pos * Utils.UID_BYTES + i);
+        }
+    }
+
+    /** Returns the contents of the entry at OFFSET in the pack, as they
+     *  would be stored in a loose object. */
+    byte[] readAt(long offset) {
+        try {
+            FileChannel pack = channel();
+            ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER);
+            readFully(pack, header, offset);
+            header.flip();
+            byte type = header.get();
+            ByteBuffer body = ByteBuffer.allocate(header.getInt());
+            readFully(pack, body, offset + ENTRY_HEADER);
+            if (type == FULL) {
+                return body.array();
+            } else if (type != DELTA) {
+                throw new IllegalArgumentException("unknown pack entry type");
+            }
+            String baseId = Utils.uidFromBytes(body.array(), 0);
+            int basePos = find(baseId);
+            if (basePos < 0) {
+                throw new IllegalArgumentException("missing delta base "
+                                                   + baseId);
+            }
+            byte[] delta = new byte[body.capacity() - Utils.UID_BYTES];
+            System.arraycopy(body.array(), Utils.UID_BYTES, delta, 0,
+                             delta.length);
+            return Delta.apply(Compression.decode(readAt(offsetAt(basePos))),
+                               Compression.decode(delta));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Compare the id at position POS of the index with KEY. */
+    private int compareId(int pos, byte[] key) {
+        int base = _idsStart + pos * Utils.UID_BYTES;
+        for (int i = 0; i < Utils.UID_BYTES; i += 1) {
+            int diff = (_index.get(base + i) & 0xff) - (key[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return 0;
+    }
+
+    /** Release the open pack file, if any. */
+    synchronized void close() throws IOException {
+        if (_channel != null) {
+            _channel.close();
+            _channel = null;
+        }
+    }
+
+    /** Returns the pack file itself. */
+    File packFile() {
+        return _packFile;
+    }
+
+    /** Returns an open channel on the pack file, which threads may share
+     *  since it is only read at given positions. */
+    private synchronized FileChannel channel() throws IOException {
+        if (_channel == null) {
+            _channel = FileChannel.open(_packFile.toPath(),
+                                        StandardOpenOption.READ);
+        }
+        return _channel;
+    }
+
+    /** Fill BUF from CHANNEL starting at POSITION. */
+    private static void readFully(FileChannel channel, ByteBuffer buf,
+                                  long position) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new IOException("truncated pack");
+            }
+        }
+    }
+
+    /** Write a new pack named NAME into directory DIR holding every
+     *  object in OBJECTS, which maps ids in sorted order to their kinds,
+     *  reading each object's contents from SOURCE.  An object that BASES
+     *  maps to another object of OBJECTS is stored as a delta against
+     *  it when that saves at least half its size.  Objects and deltas
+     *  are compressed with SOURCE's codec.  Returns the pack. */
+    static Pack write(File dir, String name,
+                      SortedMap<String, Integer> objects,
+                      Map<String, String> bases,
+                      ObjectStore source) throws IOException {
+        File packFile = new File(dir, name + ".pack");
+        File indexFile = new File(dir, name + ".idx");
+        File tmpPack = new File(dir, name + ".pack.tmp");
+        File tmpIndex = new File(dir, name + ".idx.tmp");
+        long[] offsets = new long[objects.size()];
+        int codec = Compression.codecOf(source.dir());
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(
+                     tmpPack.toPath())))) {
+            out.write(PACK_MAGIC.getBytes(StandardCharsets.UTF_8));
+            out.writeInt(VERSION);
+            out.writeInt(objects.size());
+            long position = PACK_HEADER;
+            int i = 0;
+            for (Map.Entry<String, Integer> entry : objects.entrySet()) {
+                String id = entry.getKey();
+                int kind = entry.getValue();
+                byte[] contents = Compression.decode(
+                    source.read(ObjectStore.KINDS.get(kind), id));
+                offsets[i] = position;
+                String base = bases.get(id);
+                byte[] delta = null;
+                if (base != null && objects.get(base) != null) {
+                    delta = Delta.create(Compression.decode(source.read(
+                        ObjectStore.KINDS.get(objects.get(base)), base)),
+                        contents);
+                }
+                if (delta != null && 2 * delta.length < contents.length) {
+                    delta = Compression.encode(delta, codec);
+                    out.writeByte(DELTA);
+                    out.writeInt(Utils.UID_BYTES + delta.length);
+                    out.write(Utils.uidToBytes(base));
+                    out.write(delta);
+                    position += ENTRY_HEADER + Utils.UID_BYTES + delta.length;
+                } else {
+                    contents = Compression.encode(contents, codec);
+                    out.writeByte(FULL);
+                    out.writeInt(contents.length);
+                    out.write(contents);
+                    position += ENTRY_HEADER + contents.length;
+                }
+                i += 1;
+            }
+        }
+        writeIndex(tmpIndex, objects, offsets);
+        Files.move(tmpPack.toPath(), packFile.toPath());
+        Files.move(tmpIndex.toPath(), indexFile.toPath());
+        return new Pack(packFile, indexFile);
+    }
+
+    /** Write the index of OBJECTS, whose entries start at OFFSETS in
+     *  their pack, to FILE. */
+    private static void writeIndex(File file,
+                                   SortedMap<String, Integer> objects,
+                                   long[] offsets) throws IOException {
+        int[] fanout = new int[FANOUT];
+        for (String id : objects.keySet()) {
+            fanout[Integer.parseInt(id.substring(0, 2), 16)] += 1;
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(Files.newOutputStream(
+                     file.toPath())))) {
+            out.write(INDEX_MAGIC.getBytes(StandardCharsets.UTF_8));
+            out.writeInt(VERSION);
+            out.writeInt(objects.size());
+            int total = 0;
+            for (int count : fanout) {
+                total += count;
+                out.writeInt(total);
+            }
+            for (String id : objects.keySet()) {
+                out.write(Utils.uidToBytes(id));
+            }
+            for (int kind : objects.values()) {
+                out.writeByte(kind);
+            }
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+        }
+    }
+
+    /** The file holding the objects themselves. */
+    private final File _packFile;
+    /** The mapped contents of the index file. */
+    private final MappedByteBuffer _index;
+    /** Number of objects in this pack. */
+    private final int _count;
+    /** Start of the sorted ids in the index. */
+    private final int _idsStart;
+    /** Start of the object kinds in the index. */
+    private final int _kindsStart;
+    /** Start of the object offsets in the index. */
+    private final int _offsetsStart;
+    /** Channel on the pack file, opened on first use. */
+    private FileChannel _channel;
+}
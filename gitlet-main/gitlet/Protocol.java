@@ -0,0 +1,236 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/** The framing spoken between SocketRemote and Server.  Every message
+ *  is a frame: a type byte, an int length, and that many bytes of
+ *  payload.  Objects travel in OBJECTS frames, each a batch of up to
+ *  BATCH bytes of objects, encoded with a Compression codec whose header
+ *  leads the payload: CODEC if any object in the batch is stored
+ *  uncompressed, and none otherwise, since compressing compressed
+ *  objects again only costs time.  A transfer ends with an END frame
+ *  giving the number of objects sent.  The sender writes batches back
+ *  to back without waiting, so a transfer costs one round trip however
+ *  many objects it carries.  Within a batch each object is its kind code,
+ *  its 20-byte id, an int length, and its stored form.
+ *  @author Xinyu Fu
+ */
+class Protocol {
+
+    /** Prefix of the URL of a remote reached through a socket. */
+    static final String SCHEME = "gitlet://";
+    /** Port served when none is given. */
+    static final int DEFAULT_PORT = 9418;
+    /** Version of the protocol, sent in HELLO. */
+    static final int VERSION = 1;
+    /** Client greeting, with the version; the reply gives the blob
+     *  format. */
+    static final byte HELLO = 'H';
+    /** Request for the branch heads; the reply lists names and ids. */
+    static final byte HEADS = 'L';
+    /** Fetch request: the wanted id and the haves.  Answered by OBJECTS
+     *  and END. */
+    static final byte FETCH = 'F';
+    /** Push request: branch, expected old id and new id, followed by
+     *  OBJECTS and END.  Answered by OK or ERROR. */
+    static final byte PUSH = 'P';
+    /** A batch of objects. */
+    static final byte OBJECTS = 'O';
+    /** End of a run of OBJECTS frames, with the number of objects. */
+    static final byte END = 'E';
+    /** Success. */
+    static final byte OK = 'K';
+    /** Failure, with a message. */
+    static final byte ERROR = 'X';
+    /** Bytes of objects gathered before a batch is sent. */
+    static final int BATCH = 1 << 20;
+    /** Codec for OBJECTS frames. */
+    static final int CODEC = Compression.LZ4;
+
+    /** One frame as read. */
+    static class Frame {
+        /** Its type. */
+        final byte type;
+        /** Its payload. */
+        final ByteBuffer payload;
+
+        /** A frame of type TYPE with payload PAYLOAD. */
+        Frame(byte type, byte[] payload) {
+            this.type = type;
+            this.payload = ByteBuffer.wrap(payload);
+        }
+
+        /** Returns this frame, throwing if its type is not TYPE.  An
+         *  ERROR frame becomes a GitletException with its message. */
+        Frame expect(byte type) {
+            if (this.type == ERROR) {
+                throw new GitletException(readString(payload));
+            }
+            if (this.type != type) {
+                throw new IllegalArgumentException("unexpected frame "
+                                                   + (char) this.type);
+            }
+            return this;
+        }
+    }
+
+    /** Write a frame of type TYPE with payload PAYLOAD to OUT. */
+    static void write(DataOutputStream out, byte type, byte[] payload)
+        throws IOException {
+        out.writeByte(type);
+        out.writeInt(payload.length);
+        out.write(payload);
+    }
+
+    /** Returns the next frame from IN. */
+    static Frame read(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+        int length = in.readInt();
+        if (length < 0) {
+            throw new IllegalArgumentException("bad frame length");
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new Frame(type, payload);
+    }
+
+    /** Returns the payload built by WRITER. */
+    static byte[] payload(Payload writer) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** Something that writes a payload. */
+    interface Payload {
+        /** Write the payload to OUT. */
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /** Write STR to OUT as an int length and UTF-8 bytes. */
+    static void writeString(DataOutputStream out, String str)
+        throws IOException {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /** Returns a string, an int length and UTF-8 bytes, read from IN. */
+    static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Returns a 20-byte id read from IN. */
+    static String readId(ByteBuffer in) {
+        byte[] id = new byte[Utils.UID_BYTES];
+        in.get(id);
+        return Utils.uidFromBytes(id, 0);
+    }
+
+    /** Sends objects in batches. */
+    static class Sender {
+        /** A sender writing to OUT. */
+        Sender(DataOutputStream out) {
+            _out = out;
+        }
+
+        /** Send the object of kind KIND with id ID from STORE. */
+        void send(ObjectStore store, String kind, String id)
+            throws IOException {
+            byte[] stored = store.read(kind, id);
+            _batch.writeByte(ObjectStore.kindCode(kind));
+            _batch.write(Utils.uidToBytes(id));
+            _batch.writeInt(stored.length);
+            _batch.write(stored);
+            _count += 1;
+            if (!Compression.isEncoded(stored)
+                || stored[3] == Compression.NONE) {
+                _compress = true;
+            }
+            if (_bytes.size() >= BATCH) {
+                flush();
+            }
+        }
+
+        /** Send what remains and the END frame. */
+        void finish() throws IOException {
+            flush();
+            write(_out, END, ByteBuffer.allocate(4).putInt(_count).array());
+            _out.flush();
+        }
+
+        /** Send the objects gathered so far as one batch. */
+        private void flush() throws IOException {
+            _batch.flush();
+            if (_bytes.size() > 0) {
+                write(_out, OBJECTS,
+                      Compression.encode(_bytes.toByteArray(), _compress
+                                         ? CODEC : Compression.NONE));
+                _bytes.reset();
+                _compress = false;
+            }
+        }
+
+        /** Where batches go. */
+        private final DataOutputStream _out;
+        /** The batch being gathered. */
+        private final ByteArrayOutputStream _bytes =
+            new ByteArrayOutputStream();
+        /** Writes to _bytes. */
+        private final DataOutputStream _batch = new DataOutputStream(_bytes);
+        /** Number of objects sent. */
+        private int _count;
+        /** True iff the batch holds an object stored uncompressed. */
+        private boolean _compress;
+    }
+
+    /** Read OBJECTS frames from IN up to the END frame, storing each
+     *  object in STORE after checking that its contents match its id.
+     *  Blobs and commits are stored in the order they arrive, which the
+     *  sender makes parents first.  Returns the number of objects. */
+    static int receive(DataInputStream in, ObjectStore store)
+        throws IOException {
+        int count = 0;
+        while (true) {
+            Frame frame = read(in);
+            if (frame.type == END) {
+                if (frame.payload.getInt() != count) {
+                    throw new IllegalArgumentException("objects lost");
+                }
+                return count;
+            }
+            ByteBuffer batch = ByteBuffer.wrap(Compression.decode(
+                frame.expect(OBJECTS).payload.array()));
+            while (batch.hasRemaining()) {
+                String kind = ObjectStore.KINDS.get(batch.get());
+                String id = readId(batch);
+                byte[] stored = new byte[batch.getInt()];
+                batch.get(stored);
+                if (!Utils.sha1(Compression.decode(stored)).equals(id)) {
+                    throw new IllegalArgumentException("corrupt object "
+                                                       + id);
+                }
+                store.write(kind, id, stored);
+                count += 1;
+            }
+        }
+    }
+
+    /** Read OBJECTS frames from IN up to the END frame and drop them,
+     *  so that a request refused before its objects are stored leaves
+     *  IN at the next request. */
+    static void skip(DataInputStream in) throws IOException {
+        for (Frame frame = read(in); frame.type != END; frame = read(in)) {
+            frame.expect(OBJECTS);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package gitlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Protocol class.
+ *  @author Xinyu Fu
+ */
+public class ProtocolTest {
+
+    /** Returns the stored form of a blob holding CONTENTS, compressed
+     *  with CODEC. */
+    private static byte[] blob(String contents, int codec) {
+        return Compression.encode(contents.getBytes(), codec);
+    }
+
+    /** Returns the bytes STORE sends for blobs ID0 and ID1. */
+    private static byte[] send(ObjectStore store, String id0, String id1)
+        throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        Protocol.Sender sender = new Protocol.Sender(out);
+        sender.send(store, ObjectStore.BLOBS, id0);
+        sender.send(store, ObjectStore.BLOBS, id1);
+        sender.finish();
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void objectsRoundTrip() throws IOException {
+        ObjectStore from = TestRepos.tempStore(ObjectStore.BLOBS),
+            to = TestRepos.tempStore(ObjectStore.BLOBS);
+        String a = Utils.sha1("a".getBytes()), b = Utils.sha1("b".getBytes());
+        from.write(ObjectStore.BLOBS, a, blob("a", Compression.NONE));
+        from.write(ObjectStore.BLOBS, b, blob("b", Compression.DEFLATE));
+        byte[] sent = send(from, a, b);
+        assertEquals(2, Protocol.receive(new DataInputStream(
+            new ByteArrayInputStream(sent)), to));
+        assertArrayEquals(from.read(ObjectStore.BLOBS, a),
+                          to.read(ObjectStore.BLOBS, a));
+        assertArrayEquals(from.read(ObjectStore.BLOBS, b),
+                          to.read(ObjectStore.BLOBS, b));
+        to.looseFile(ObjectStore.BLOBS, a).deleteOnExit();
+        to.looseFile(ObjectStore.BLOBS, b).deleteOnExit();
+    }
+
+    @Test
+    public void rejectsCorruptObjects() throws IOException {
+        ObjectStore from = TestRepos.tempStore(ObjectStore.BLOBS),
+            to = TestRepos.tempStore(ObjectStore.BLOBS);
+        String a = Utils.sha1("a".getBytes()), b = Utils.sha1("b".getBytes());
+        from.write(ObjectStore.BLOBS, a, blob("a", Compression.NONE));
+        from.write(ObjectStore.BLOBS, b, blob("c", Compression.NONE));
+        try {
+            Protocol.receive(new DataInputStream(
+                new ByteArrayInputStream(send(from, a, b))), to);
+            fail("expected a corrupt object");
+        } catch (IllegalArgumentException excp) {
+            assertTrue(excp.getMessage().contains(b));
+        }
+        assertTrue(to.contains(ObjectStore.BLOBS, a));
+        assertFalse(to.contains(ObjectStore.BLOBS, b));
+        to.looseFile(ObjectStore.BLOBS, a).deleteOnExit();
+    }
+
+    @Test
+    public void skipsObjectsWithoutStoring() throws IOException {
+        ObjectStore from = TestRepos.tempStore(ObjectStore.BLOBS),
+            to = TestRepos.tempStore(ObjectStore.BLOBS);
+        String a = Utils.sha1("a".getBytes()), b = Utils.sha1("b".getBytes());
+        from.write(ObjectStore.BLOBS, a, blob("a", Compression.NONE));
+        from.write(ObjectStore.BLOBS, b, blob("b", Compression.DEFLATE));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        bytes.write(send(from, a, b));
+        Protocol.write(new DataOutputStream(bytes), Protocol.OK, new byte[0]);
+        DataInputStream in = new DataInputStream(
+            new ByteArrayInputStream(bytes.toByteArray()));
+        Protocol.skip(in);
+        assertFalse(to.contains(ObjectStore.BLOBS, a));
+        assertFalse(to.contains(ObjectStore.BLOBS, b));
+        Protocol.read(in).expect(Protocol.OK);
+    }
+}
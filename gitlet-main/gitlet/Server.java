@@ -0,0 +1,193 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/** Serves one repository to SocketRemotes over the Protocol, on the
+ *  loopback interface only.  Each connection gets its own thread, and
+ *  may make any number of requests.  Requests are handled one at a time
+ *  across all connections, each starting from freshly read repository
+ *  state, so pushes never interleave and the repository may be used
+ *  directly while it is served.
+ *  @author Xinyu Fu
+ */
+class Server {
+
+    /** A server for the .gitlet directory GITLETDIR on PORT, or on any
+     *  free port if PORT is 0. */
+    Server(File gitletDir, int port) throws IOException {
+        _dir = gitletDir;
+        _socket = new ServerSocket(port, 0, InetAddress.getLoopbackAddress());
+    }
+
+    /** Returns the port served. */
+    int port() {
+        return _socket.getLocalPort();
+    }
+
+    /** Accept and serve connections until the server is closed. */
+    void serve() throws IOException {
+        while (!_socket.isClosed()) {
+            Socket client;
+            try {
+                client = _socket.accept();
+            } catch (IOException excp) {
+                if (_socket.isClosed()) {
+                    return;
+                }
+                throw excp;
+            }
+            Thread thread = new Thread(() -> handle(client), "gitlet-serve");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /** Stop accepting connections. */
+    void close() throws IOException {
+        _socket.close();
+    }
+
+    /** Answer the requests made on CLIENT until it hangs up. */
+    private void handle(Socket client) {
+        try (Socket socket = client;
+             DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(socket.getInputStream(),
+                                         Blobs.BUFFER));
+             DataOutputStream out = new DataOutputStream(
+                 new BufferedOutputStream(socket.getOutputStream(),
+                                          Blobs.BUFFER))) {
+            socket.setTcpNoDelay(true);
+            while (true) {
+                Protocol.Frame request;
+                try {
+                    request = Protocol.read(in);
+                } catch (EOFException excp) {
+                    return;
+                }
+                synchronized (Server.class) {
+                    Daemon.forgetAll();
+                    try {
+                        answer(request, in, out);
+                    } catch (GitletException excp) {
+                        Protocol.write(out, Protocol.ERROR,
+                            Protocol.payload(o -> Protocol.writeString(
+                                o, excp.getMessage())));
+                    }
+                }
+                out.flush();
+            }
+        } catch (IOException | RuntimeException excp) {
+            System.err.println("gitlet serve: " + excp);
+        }
+    }
+
+    /** Answer REQUEST, reading anything that follows it from IN and
+     *  writing the reply to OUT. */
+    private void answer(Protocol.Frame request, DataInputStream in,
+                        DataOutputStream out) throws IOException {
+        ByteBuffer payload = request.payload;
+        switch (request.type) {
+        case Protocol.HELLO:
+            if (payload.getInt() != Protocol.VERSION) {
+                throw new GitletException("Unsupported protocol version.");
+            }
+            Protocol.write(out, Protocol.HELLO, ByteBuffer.allocate(4)
+                           .putInt(Blobs.formatOf(_dir)).array());
+            break;
+        case Protocol.HEADS:
+            Map<String, String> heads = Transfer.heads(_dir);
+            Protocol.write(out, Protocol.HEADS, Protocol.payload(o -> {
+                o.writeInt(heads.size());
+                for (Map.Entry<String, String> head : heads.entrySet()) {
+                    Protocol.writeString(o, head.getKey());
+                    o.write(Utils.uidToBytes(head.getValue()));
+                }
+            }));
+            break;
+        case Protocol.FETCH:
+            fetch(payload, out);
+            break;
+        case Protocol.PUSH:
+            push(payload, in, out);
+            break;
+        default:
+            throw new GitletException("Unknown request.");
+        }
+    }
+
+    /** Send the objects asked for by the fetch request PAYLOAD to OUT. */
+    private void fetch(ByteBuffer payload, DataOutputStream out)
+        throws IOException {
+        String want = Protocol.readId(payload);
+        List<String> haves = new ArrayList<>();
+        for (int n = payload.getInt(); n > 0; n -= 1) {
+            haves.add(Protocol.readId(payload));
+        }
+        ObjectStore store = ObjectStore.of(_dir);
+        if (!store.contains(ObjectStore.COMMITS, want)) {
+            throw new GitletException("No commit with that id exists.");
+        }
+        List<String> commits = Transfer.commits(_dir, want, haves);
+        Protocol.Sender sender = new Protocol.Sender(out);
+        for (Map.Entry<String, String> object
+                 : Transfer.objects(store, commits, haves).entrySet()) {
+            sender.send(store, object.getValue(), object.getKey());
+        }
+        for (String id : commits) {
+            sender.send(store, ObjectStore.COMMITS, id);
+        }
+        sender.finish();
+    }
+
+    /** Receive the objects of the push request PAYLOAD from IN, then move
+     *  its branch if it still points where the client saw it and the
+     *  pushed head descends from there, replying on OUT.  A bad branch
+     *  name is refused before anything is stored. */
+    private void push(ByteBuffer payload, DataInputStream in,
+                      DataOutputStream out) throws IOException {
+        String branch = Protocol.readString(payload);
+        String old = Protocol.readString(payload);
+        String head = Protocol.readId(payload);
+        ObjectStore store = ObjectStore.of(_dir);
+        if (branch.isEmpty() || branch.contains("/")
+            || branch.contains(File.separator) || branch.startsWith(".")) {
+            Protocol.skip(in);
+            throw new GitletException("Bad branch name.");
+        }
+        Protocol.receive(in, store);
+        if (!store.contains(ObjectStore.COMMITS, head)) {
+            throw new GitletException("Pushed commit is missing.");
+        }
+        CommitGraph graph = CommitGraph.of(_dir);
+        int pos = graph.position(head);
+        File file = Utils.join(_dir, "branch", branch);
+        String current = file.isFile()
+            ? Utils.readContentsAsString(file).trim() : "";
+        if (!current.equals(old)
+            || !old.isEmpty()
+               && !graph.isAncestor(graph.position(old), pos)) {
+            throw new GitletException("Please pull down "
+                                      + "remote changes before pushing.");
+        }
+        Utils.writeContents(file, head);
+        Protocol.write(out, Protocol.OK, new byte[0]);
+    }
+
+    /** The .gitlet directory served. */
+    private final File _dir;
+    /** The listening socket. */
+    private final ServerSocket _socket;
+}
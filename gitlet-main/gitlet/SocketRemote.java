@@ -0,0 +1,129 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** A connection to a repository served by Server, named by a URL of
+ *  the form gitlet://HOST:PORT.
+ *  @author Xinyu Fu
+ */
+class SocketRemote implements Closeable {
+
+    /** A connection to the server at URL, which starts with
+     *  Protocol.SCHEME. */
+    SocketRemote(String url) throws IOException {
+        String address = url.substring(Protocol.SCHEME.length());
+        while (address.endsWith("/")) {
+            address = address.substring(0, address.length() - 1);
+        }
+        int colon = address.lastIndexOf(':');
+        String host = colon < 0 ? address : address.substring(0, colon);
+        int port = colon < 0 ? Protocol.DEFAULT_PORT
+            : Integer.parseInt(address.substring(colon + 1));
+        _socket = new Socket(host, port);
+        _socket.setTcpNoDelay(true);
+        _in = new DataInputStream(new BufferedInputStream(
+            _socket.getInputStream(), Blobs.BUFFER));
+        _out = new DataOutputStream(new BufferedOutputStream(
+            _socket.getOutputStream(), Blobs.BUFFER));
+        Protocol.write(_out, Protocol.HELLO, ByteBuffer.allocate(4)
+                       .putInt(Protocol.VERSION).array());
+        _out.flush();
+        _blobFormat = Protocol.read(_in).expect(Protocol.HELLO)
+            .payload.getInt();
+    }
+
+    /** Returns true iff URL names a remote reached through a socket. */
+    static boolean isUrl(String url) {
+        return url.startsWith(Protocol.SCHEME);
+    }
+
+    /** Returns the blob format of the remote repository. */
+    int blobFormat() {
+        return _blobFormat;
+    }
+
+    /** Returns the head of each branch of the remote, by name. */
+    TreeMap<String, String> heads() throws IOException {
+        Protocol.write(_out, Protocol.HEADS, new byte[0]);
+        _out.flush();
+        ByteBuffer reply = Protocol.read(_in).expect(Protocol.HEADS).payload;
+        TreeMap<String, String> result = new TreeMap<>();
+        for (int n = reply.getInt(); n > 0; n -= 1) {
+            String name = Protocol.readString(reply);
+            result.put(name, Protocol.readId(reply));
+        }
+        return result;
+    }
+
+    /** Fetch commit WANT and its history into STORE, telling the remote
+     *  that STORE already has the commits HAVES and their histories.
+     *  Returns the number of objects received. */
+    int fetch(String want, Collection<String> haves, ObjectStore store)
+        throws IOException {
+        Protocol.write(_out, Protocol.FETCH, Protocol.payload(o -> {
+            o.write(Utils.uidToBytes(want));
+            o.writeInt(haves.size());
+            for (String id : haves) {
+                o.write(Utils.uidToBytes(id));
+            }
+        }));
+        _out.flush();
+        return Protocol.receive(_in, store);
+    }
+
+    /** Push commit HEAD of the repository in LOCALDIR to BRANCH of the
+     *  remote, whose branch heads are HEADS as returned by heads.  Only
+     *  the history of HEAD not reachable from any of HEADS is sent.  The
+     *  remote moves BRANCH only if it has not moved since.  Throws a
+     *  GitletException if the remote refuses. */
+    void push(File localDir, String branch, Map<String, String> heads,
+              String head) throws IOException {
+        String old = heads.get(branch);
+        Set<String> haves = new LinkedHashSet<>(heads.values());
+        Protocol.write(_out, Protocol.PUSH, Protocol.payload(o -> {
+            Protocol.writeString(o, branch);
+            Protocol.writeString(o, old == null ? "" : old);
+            o.write(Utils.uidToBytes(head));
+        }));
+        ObjectStore store = ObjectStore.of(localDir);
+        List<String> commits = Transfer.commits(localDir, head, haves);
+        Protocol.Sender sender = new Protocol.Sender(_out);
+        for (Map.Entry<String, String> object
+                 : Transfer.objects(store, commits, haves).entrySet()) {
+            sender.send(store, object.getValue(), object.getKey());
+        }
+        for (String id : commits) {
+            sender.send(store, ObjectStore.COMMITS, id);
+        }
+        sender.finish();
+        Protocol.read(_in).expect(Protocol.OK);
+    }
+
+    @Override
+    public void close() throws IOException {
+        _socket.close();
+    }
+
+    /** The connection. */
+    private final Socket _socket;
+    /** Replies from the server. */
+    private final DataInputStream _in;
+    /** Requests to the server. */
+    private final DataOutputStream _out;
+    /** Blob format of the remote. */
+    private final int _blobFormat;
+}
@@ -0,0 +1,354 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/** The staging area, kept in the single file .gitlet/stage.  Each entry
+ *  is the path of a working file, with '/' between directories, and
+ *  either the id of the blob staged for it, its mode and its status
+ *  when it was added, or a mark that it is staged for removal.  A blob
+ *  is stored when its file is added, so committing only turns the
+ *  entries into changes to the head's tree.  The file holds MAGIC, the
+ *  version, the number of entries and the entries in path order: the
+ *  path, a byte that is ADDITION or REMOVAL, and for an addition the
+ *  20-byte id, the mode, and the modification time, size and inode.
+ *  Repositories that staged files as copies under additionStage/ and
+ *  removalStage/ have those read in once and removed.
+ *  @author Xinyu Fu
+ */
+class Stage {
+
+    /** Name of the stage within a .gitlet directory. */
+    static final String FILE = "stage";
+    /** Magic number at the start of the stage. */
+    static final String MAGIC = "GSTG";
+    /** Current version of the stage format. */
+    static final int VERSION = 1;
+    /** Kind of an entry staged for addition. */
+    static final byte ADDITION = 0;
+    /** Kind of an entry staged for removal. */
+    static final byte REMOVAL = 1;
+    /** Mode of a regular file. */
+    static final int REGULAR = 0100644;
+    /** Mode of an executable file. */
+    static final int EXECUTABLE = 0100755;
+    /** Directory of files staged for addition in older repositories. */
+    static final String OLD_ADDITION = "additionStage";
+    /** Directory of files staged for removal in older repositories. */
+    static final String OLD_REMOVAL = "removalStage";
+
+    /** One staged file. */
+    static class Entry {
+        /** An entry staging blob ID, or removal if ID is null, for a file
+         *  with mode MODE and status STAT, which may be null if unknown. */
+        Entry(String id, int mode, Index.Stat stat) {
+            this.id = id;
+            this.mode = mode;
+            this.stat = stat;
+        }
+
+        /** Id of the staged blob, or null for a removal. */
+        final String id;
+        /** Mode of the file when it was added. */
+        final int mode;
+        /** Status of the file when it was added, or null. */
+        final Index.Stat stat;
+    }
+
+    /** The stage of the .gitlet directory GITLETDIR. */
+    Stage(File gitletDir) {
+        _dir = gitletDir;
+        _file = new File(gitletDir, FILE);
+        load();
+    }
+
+    /** Returns the stage of the .gitlet directory in the current
+     *  directory, loading it on first use. */
+    static synchronized Stage local() {
+        if (_local == null) {
+            _local = new Stage(new File(".gitlet"));
+        }
+        return _local;
+    }
+
+    /** Write the stage of the current directory if it has changed. */
+    static void saveLocal() {
+        if (_local != null) {
+            _local.save();
+        }
+    }
+
+    /** Drop the stage of the current directory, unsaved changes and
+     *  all, so that local reads it again. */
+    static synchronized void forgetLocal() {
+        _local = null;
+    }
+
+    /** Returns the names of the files of the current directory staged
+     *  as KIND, ADDITION or REMOVAL, in sorted order. */
+    static List<String> names(byte kind) {
+        return local().list(kind);
+    }
+
+    /** Store the contents of SOURCE, whose id is ID, as a blob unless it
+     *  is already stored, and stage it for addition as NAME in the
+     *  current directory, replacing whatever was staged for NAME.  As
+     *  in the Index, the status of a file modified within
+     *  Index.RACY_WINDOW is not recorded. */
+    static void add(String name, File source, String id) {
+        Index.Stat stat = Index.Stat.of(source);
+        if (stat != null && System.currentTimeMillis()
+            - TimeUnit.NANOSECONDS.toMillis(stat.mtime) < Index.RACY_WINDOW) {
+            stat = null;
+        }
+        if (!ObjectStore.local().contains(ObjectStore.BLOBS, id)) {
+            id = Blobs.store(source);
+        }
+        local().put(name, new Entry(id, source.canExecute() ? EXECUTABLE
+                                    : REGULAR, stat));
+    }
+
+    /** Returns the names of the files staged as KIND in sorted order. */
+    synchronized List<String> list(byte kind) {
+        List<String> result = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : _entries.entrySet()) {
+            if ((entry.getValue().id == null) == (kind == REMOVAL)) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
+    /** Returns the entry staged for NAME, or null if there is none. */
+    synchronized Entry get(String name) {
+        return _entries.get(name);
+    }
+
+    /** Returns true iff anything is staged for NAME. */
+    synchronized boolean contains(String name) {
+        return _entries.containsKey(name);
+    }
+
+    /** Stage ENTRY for NAME, replacing whatever was staged. */
+    synchronized void put(String name, Entry entry) {
+        _entries.put(name, entry);
+        _dirty = true;
+    }
+
+    /** Stage NAME for removal, replacing whatever was staged. */
+    void remove(String name) {
+        put(name, new Entry(null, 0, null));
+    }
+
+    /** Unstage NAME, returning true iff anything was staged for it. */
+    synchronized boolean unstage(String name) {
+        if (_entries.remove(name) == null) {
+            return false;
+        }
+        _dirty = true;
+        return true;
+    }
+
+    /** Unstage everything. */
+    synchronized void clear() {
+        if (!_entries.isEmpty()) {
+            _entries.clear();
+            _dirty = true;
+        }
+    }
+
+    /** Returns the staged changes: each name mapped to the blob id staged
+     *  for it, or to null if it is staged for removal. */
+    synchronized Map<String, String> changes() {
+        HashMap<String, String> result = new HashMap<>();
+        for (Map.Entry<String, Entry> entry : _entries.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().id);
+        }
+        return result;
+    }
+
+    /** Write the stage if it has changed since it was read, and remove
+     *  the stage directories of an older repository. */
+    synchronized void save() {
+        if (!_dirty) {
+            return;
+        }
+        File tmp = new File(_file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                     new BufferedOutputStream(Files.newOutputStream(
+                         tmp.toPath())))) {
+                out.writeBytes(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(_entries.size());
+                for (Map.Entry<String, Entry> each : _entries.entrySet()) {
+                    Entry entry = each.getValue();
+                    out.writeUTF(each.getKey());
+                    if (entry.id == null) {
+                        out.writeByte(REMOVAL);
+                        continue;
+                    }
+                    Index.Stat stat = entry.stat == null
+                        ? new Index.Stat(0, -1, 0) : entry.stat;
+                    out.writeByte(ADDITION);
+                    out.write(Utils.uidToBytes(entry.id));
+                    out.writeInt(entry.mode);
+                    out.writeLong(stat.mtime);
+                    out.writeLong(stat.size);
+                    out.writeLong(stat.inode);
+                }
+            }
+            Files.move(tmp.toPath(), _file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING);
+            for (String old : new String[] { OLD_ADDITION, OLD_REMOVAL }) {
+                delete(new File(_dir, old).toPath());
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        _dirty = false;
+    }
+
+    /** Read the stage file, or the stage directories of an older
+     *  repository if there is no stage file. */
+    private void load() {
+        _entries = new TreeMap<>();
+        if (!_file.isFile()) {
+            loadOld();
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                 new ByteArrayInputStream(Utils.readContents(_file)))) {
+            byte[] magic = new byte[MAGIC.length()];
+            in.readFully(magic);
+            if (!MAGIC.equals(new String(magic, "US-ASCII"))
+                || in.readInt() != VERSION) {
+                throw new IllegalArgumentException("unknown stage format");
+            }
+            byte[] id = new byte[Utils.UID_BYTES];
+            for (int count = in.readInt(); count > 0; count -= 1) {
+                String name = in.readUTF();
+                if (in.readByte() == REMOVAL) {
+                    _entries.put(name, new Entry(null, 0, null));
+                    continue;
+                }
+                in.readFully(id);
+                int mode = in.readInt();
+                Index.Stat stat = new Index.Stat(in.readLong(),
+                                                 in.readLong(),
+                                                 in.readLong());
+                _entries.put(name, new Entry(Utils.uidFromBytes(id, 0),
+                                             mode, stat.size < 0 ? null
+                                             : stat));
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Read the copies under OLD_ADDITION, storing them as blobs, and the
+     *  marks under OLD_REMOVAL. */
+    private void loadOld() {
+        File additions = new File(_dir, OLD_ADDITION);
+        for (String name : walk(additions)) {
+            File copy = Utils.join(additions, name);
+            put(name, new Entry(Blobs.store(ObjectStore.of(_dir), copy),
+                                REGULAR, null));
+        }
+        for (String name : walk(new File(_dir, OLD_REMOVAL))) {
+            remove(name);
+        }
+        if (new File(_dir, OLD_ADDITION).exists()
+            || new File(_dir, OLD_REMOVAL).exists()) {
+            _dirty = true;
+        }
+    }
+
+    /** Returns the names of the files under DIR, relative to it with '/'
+     *  between directories, in sorted order. */
+    private static List<String> walk(File dir) {
+        List<String> result = new ArrayList<>();
+        Path root = dir.toPath();
+        if (!Files.isDirectory(root)) {
+            return result;
+        }
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file,
+                                                 BasicFileAttributes attrs) {
+                    String base = file.getFileName().toString();
+                    if (attrs.isRegularFile() && !(base.startsWith(".stage")
+                                                   && base.endsWith(".tmp"))) {
+                        result.add(name(root, file));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Delete PATH and everything under it, if it exists. */
+    private static void delete(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        Files.walkFileTree(path, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file,
+                                             BasicFileAttributes attrs)
+                throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir,
+                                                      IOException excp)
+                throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /** Returns the name of FILE relative to ROOT, with '/' between
+     *  directories. */
+    static String name(Path root, Path file) {
+        return root.relativize(file).toString()
+            .replace(File.separatorChar, '/');
+    }
+
+    /** The stage of the current directory, or null if not yet loaded. */
+    private static Stage _local;
+
+    /** The .gitlet directory. */
+    private final File _dir;
+    /** The stage file. */
+    private final File _file;
+    /** The entries, by path. */
+    private TreeMap<String, Entry> _entries;
+    /** True iff the entries differ from the stage file. */
+    private boolean _dirty;
+}
@@ -0,0 +1,63 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Stage class.
+ *  @author Xinyu Fu
+ */
+public class StageTest {
+
+    @Test
+    public void savesEntries() throws IOException {
+        File dir = TestRepos.tempRepo(ObjectStore.BLOBS);
+        Stage stage = new Stage(dir);
+        stage.put("b/c.txt", new Stage.Entry(Utils.sha1("c"),
+                                             Stage.EXECUTABLE,
+                                             new Index.Stat(5, 6, 7)));
+        stage.put("a.txt", new Stage.Entry(Utils.sha1("a"), Stage.REGULAR,
+                                           null));
+        stage.remove("gone.txt");
+        stage.save();
+        Stage back = new Stage(dir);
+        assertEquals(Arrays.asList("a.txt", "b/c.txt"),
+                     back.list(Stage.ADDITION));
+        assertEquals(Arrays.asList("gone.txt"), back.list(Stage.REMOVAL));
+        Stage.Entry c = back.get("b/c.txt");
+        assertEquals(Utils.sha1("c"), c.id);
+        assertEquals(Stage.EXECUTABLE, c.mode);
+        assertEquals(new Index.Stat(5, 6, 7), c.stat);
+        assertNull(back.get("a.txt").stat);
+        assertNull(back.changes().get("gone.txt"));
+        assertTrue(back.changes().containsKey("gone.txt"));
+        assertTrue(back.unstage("a.txt"));
+        assertFalse(back.unstage("a.txt"));
+        back.clear();
+        back.save();
+        assertTrue(new Stage(dir).changes().isEmpty());
+    }
+
+    @Test
+    public void readsStageDirectories() throws IOException {
+        File dir = TestRepos.tempRepo(ObjectStore.BLOBS);
+        File copy = Utils.join(dir, Stage.OLD_ADDITION, "sub", "f.txt");
+        copy.getParentFile().mkdirs();
+        Utils.writeContents(copy, "contents");
+        File mark = Utils.join(dir, Stage.OLD_REMOVAL, "old.txt");
+        mark.getParentFile().mkdirs();
+        Utils.writeContents(mark, "");
+        Stage stage = new Stage(dir);
+        assertEquals(Arrays.asList("sub/f.txt"), stage.list(Stage.ADDITION));
+        assertEquals(Arrays.asList("old.txt"), stage.list(Stage.REMOVAL));
+        String id = stage.get("sub/f.txt").id;
+        assertTrue(ObjectStore.of(dir).contains(ObjectStore.BLOBS, id));
+        stage.save();
+        assertFalse(new File(dir, Stage.OLD_ADDITION).exists());
+        assertFalse(new File(dir, Stage.OLD_REMOVAL).exists());
+        assertEquals(id, new Stage(dir).get("sub/f.txt").id);
+    }
+}
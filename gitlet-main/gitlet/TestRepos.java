@@ -0,0 +1,40 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/** Temporary .gitlet-like directories for the tests.
+ *  @author Xinyu Fu
+ */
+class TestRepos {
+
+    /** Files that the repository-wide caches write into a .gitlet
+     *  directory. */
+    private static final String[] CACHE_FILES = {
+        CommitGraph.FILE, CommitIndex.FILE, Catalog.FILE, Catalog.TEXT,
+        Catalog.WORDS, Bitmaps.FILE, Index.FILE, Stage.FILE
+    };
+
+    /** Returns a fresh .gitlet-like directory holding an empty directory
+     *  for each of SUBDIRS, such as the object kinds.  The directory,
+     *  the subdirectories and the files the caches write are deleted on
+     *  exit if nothing else is left in them. */
+    static File tempRepo(String... subdirs) throws IOException {
+        File dir = Files.createTempDirectory("gitlet-test").toFile();
+        dir.deleteOnExit();
+        for (String subdir : subdirs) {
+            new File(dir, subdir).mkdir();
+            new File(dir, subdir).deleteOnExit();
+        }
+        for (String file : CACHE_FILES) {
+            new File(dir, file).deleteOnExit();
+        }
+        return dir;
+    }
+
+    /** Returns the store of a fresh tempRepo(SUBDIRS). */
+    static ObjectStore tempStore(String... subdirs) throws IOException {
+        return ObjectStore.of(tempRepo(subdirs));
+    }
+}
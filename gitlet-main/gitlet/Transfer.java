@@ -0,0 +1,185 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** Copies the history of one commit from one repository to another,
+ *  sending only what the receiver lacks.  The receiver's branch heads
+ *  that the sender also has are the haves; the commits reachable from
+ *  the wanted commit but from no have are the new history, found on the
+ *  sender's CommitGraph.  Only those commits and the trees and blobs
+ *  they hold that the receiver lacks are copied, blobs and trees first,
+ *  each tree after what it holds and each chunked blob after its
+ *  chunks, and then commits parents first, so a receiver that has an
+ *  object always has everything it refers to, even if a transfer is
+ *  interrupted.  Subtrees that a have holds are not walked, and the
+ *  haves' blobs are not read.  A chunked blob is sent with only the
+ *  chunks that the blob at its path in its commit's first parent
+ *  lacks, since the receiver holds or is sent that parent, so an
+ *  appended file costs only its new chunks.  Loose objects are copied
+ *  file to file, or hard-linked when asked for.  The static methods
+ *  plan a transfer for a receiver that is not a local directory (see
+ *  SocketRemote).
+ *  @author Xinyu Fu
+ */
+class Transfer {
+
+    /** A transfer from the .gitlet directory FROM to the .gitlet
+     *  directory TO, hard-linking objects where possible iff LINK. */
+    Transfer(File from, File to, boolean link) {
+        _link = link;
+        _fromDir = from;
+        _toDir = to;
+        _from = ObjectStore.of(from);
+        _to = ObjectStore.of(to);
+    }
+
+    /** Copy commit WANT and its history to the receiver. */
+    void run(String want) throws IOException {
+        Set<String> haves = new LinkedHashSet<>(heads(_toDir).values());
+        List<String> commits = commits(_fromDir, want, haves);
+        for (Map.Entry<String, String> object
+                 : objects(_from, commits, haves).entrySet()) {
+            String id = object.getKey(), kind = object.getValue();
+            if (!_to.contains(kind, id)) {
+                _to.copy(_from, kind, id, _link);
+                if (kind.equals(ObjectStore.BLOBS)) {
+                    _blobs += 1;
+                }
+            }
+        }
+        for (String id : commits) {
+            if (!_to.contains(ObjectStore.COMMITS, id)) {
+                _to.copy(_from, ObjectStore.COMMITS, id, _link);
+                _commits += 1;
+            }
+        }
+        CommitGraph.of(_toDir).position(want);
+    }
+
+    /** Returns the number of commits copied by run. */
+    int commits() {
+        return _commits;
+    }
+
+    /** Returns the number of blobs copied by run. */
+    int blobs() {
+        return _blobs;
+    }
+
+    /** Returns the head of each branch of the .gitlet directory
+     *  GITLETDIR, by branch name. */
+    static TreeMap<String, String> heads(File gitletDir) {
+        TreeMap<String, String> result = new TreeMap<>();
+        File branches = new File(gitletDir, "branch");
+        List<String> names = Utils.plainFilenamesIn(branches);
+        if (names != null) {
+            for (String name : names) {
+                result.put(name, Utils.readContentsAsString(
+                    new File(branches, name)).trim());
+            }
+        }
+        return result;
+    }
+
+    /** Returns the commits of the .gitlet directory FROMDIR reachable
+     *  from WANT but from none of HAVES, parents first.  Haves that
+     *  FROMDIR lacks are ignored.  If every other have has a bitmap, the
+     *  history of the haves is not walked. */
+    static List<String> commits(File fromDir, String want,
+                                Collection<String> haves) {
+        ObjectStore from = ObjectStore.of(fromDir);
+        List<String> known = new ArrayList<>();
+        for (String id : haves) {
+            if (Utils.isUid(id) && from.contains(ObjectStore.COMMITS, id)) {
+                known.add(id);
+            }
+        }
+        Bitmaps bitmaps = Bitmaps.of(fromDir);
+        Bitmaps.Reachable reachable = bitmaps.reachable();
+        boolean covered = !known.isEmpty();
+        for (String id : known) {
+            covered = covered && bitmaps.addReachable(reachable, id);
+        }
+        if (covered) {
+            return CommitGraph.of(fromDir).missing(want, reachable);
+        }
+        return CommitGraph.of(fromDir).missing(want, known);
+    }
+
+    /** Returns the trees, blobs and chunks held by COMMITS in FROM,
+     *  mapped to their kinds in the order they must be sent, except those
+     *  held by the commits HAVES that FROM has, which the receiver must
+     *  already hold.  The objects of haves with bitmaps are taken from
+     *  those rather than from their trees, and the blobs of other haves
+     *  are not read.  A chunked blob is compared with the blob at its
+     *  path in the first parent of its commit, and only the chunks that
+     *  one lacks are included. */
+    static LinkedHashMap<String, String> objects(ObjectStore from,
+                                                 List<String> commits,
+                                                 Collection<String> haves) {
+        Bitmaps bitmaps = Bitmaps.of(from.dir());
+        Bitmaps.Reachable seen = bitmaps.reachable();
+        for (String id : haves) {
+            if (Utils.isUid(id) && from.contains(ObjectStore.COMMITS, id)
+                && !bitmaps.addReachable(seen, id)) {
+                Commit have = read(from, id);
+                if (have.getTree() != null) {
+                    Tree.mark(from, have.getTree(), seen);
+                } else {
+                    seen.addAll(have.getFiles().values());
+                }
+            }
+        }
+        LinkedHashMap<String, String> result = new LinkedHashMap<>();
+        for (String id : commits) {
+            Commit commit = read(from, id);
+            Commit parent = commit.getParent().equals("null") ? null
+                : read(from, commit.getParent());
+            if (commit.getTree() != null) {
+                Tree.collect(from, commit.getTree(),
+                             parent == null ? null : parent.getTree(),
+                             seen, result);
+                continue;
+            }
+            Map<String, String> base = parent == null
+                ? new HashMap<>() : parent.getFiles();
+            for (Map.Entry<String, String> file
+                     : commit.getFiles().entrySet()) {
+                Blobs.collect(from, file.getValue(),
+                              base.get(file.getKey()), seen, result);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the commit ID in FROM. */
+    private static Commit read(ObjectStore from, String id) {
+        return Commit.decode(Compression.decode(
+            from.read(ObjectStore.COMMITS, id)), from);
+    }
+
+    /** True iff objects are hard-linked where possible. */
+    private final boolean _link;
+    /** The sending .gitlet directory. */
+    private final File _fromDir;
+    /** The receiving .gitlet directory. */
+    private final File _toDir;
+    /** The sender's objects. */
+    private final ObjectStore _from;
+    /** The receiver's objects. */
+    private final ObjectStore _to;
+    /** Number of commits copied. */
+    private int _commits;
+    /** Number of blobs copied. */
+    private int _blobs;
+}
@@ -0,0 +1,87 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Transfer class.
+ *  @author Xinyu Fu
+ */
+public class TransferTest {
+
+    /** Returns the id of a blob in STORE holding DATA, chunked if it is
+     *  large enough. */
+    private static String blob(ObjectStore store, byte[] data)
+        throws IOException {
+        File file = File.createTempFile("gitlet-transfer", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), data);
+        return Blobs.store(store, file, Blobs.CHUNKED);
+    }
+
+    /** Store in STORE a commit on PARENT holding FILES and return its
+     *  id. */
+    private static String commit(ObjectStore store, String parent,
+                                 HashMap<String, String> files)
+        throws IOException {
+        Commit base = new Commit("initial commit", "null", "null");
+        return new Commit(base, parent, "null", files).store(store);
+    }
+
+    @Test
+    public void sendsOnlyNewChunksWithoutReadingHaves() throws IOException {
+        ObjectStore store = TestRepos.tempStore(ObjectStore.COMMITS,
+                                                ObjectStore.BLOBS,
+                                                ObjectStore.TREES);
+        byte[] data = new byte[3 * (int) Blobs.CHUNK_THRESHOLD];
+        new Random(24).nextBytes(data);
+        String big = blob(store, data),
+            other = blob(store, "other".getBytes()),
+            gone = blob(store, "gone".getBytes());
+        HashMap<String, String> files = new HashMap<>();
+        files.put("big", big);
+        files.put("other", other);
+        files.put("gone", gone);
+        String root = commit(store, "null", new HashMap<>());
+        String one = commit(store, root, files);
+        files.put("big", blob(store, Arrays.copyOf(data,
+                                                   data.length + 1000)));
+        String two = commit(store, one, files);
+        Files.delete(store.looseFile(ObjectStore.BLOBS, gone).toPath());
+
+        LinkedHashMap<String, String> objects = Transfer.objects(
+            store, Collections.singletonList(two),
+            Collections.singletonList(one));
+        assertTrue(objects.containsKey(files.get("big")));
+        assertFalse(objects.containsKey(other));
+        int chunks = Blobs.chunks(store, big).size();
+        assertTrue(chunks > 1);
+        assertTrue(objects.size() <= 4);
+
+        String tree1 = Tree.write(store, Collections.singletonMap(
+            "dir/big", big));
+        String tree2 = Tree.write(store, Collections.singletonMap(
+            "dir/big", files.get("big")));
+        HashSet<String> seen = new HashSet<>();
+        Tree.mark(store, tree1, seen);
+        assertFalse(seen.containsAll(Blobs.chunks(store, big)));
+        objects.clear();
+        Tree.collect(store, tree2, tree1, seen, objects);
+        assertTrue(objects.containsKey(files.get("big")));
+        assertTrue(objects.size() <= 6);
+        for (String kind : ObjectStore.KINDS) {
+            for (String id : store.ids(kind)) {
+                store.looseFile(kind, id).deleteOnExit();
+            }
+        }
+    }
+}
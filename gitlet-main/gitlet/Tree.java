@@ -0,0 +1,333 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/** One directory of a commit: its files and subdirectories by name,
+ *  each with the id of its blob or tree.  A tree is stored as the bytes
+ *  'G' 'T' and the format version, the number of entries, and the
+ *  entries in name order, each a type byte (FILE or DIRECTORY), the
+ *  name as an int length and UTF-8 bytes, and a 20-byte id.  Its id is
+ *  the SHA-1 of that form, so equal directories have equal ids.  A new
+ *  commit rewrites only the trees on the paths to its changed files and
+ *  keeps the ids of the rest, and two commits are compared by walking
+ *  their trees only where the ids differ.  Trees never change once
+ *  stored, so recently read ones are kept by id.
+ *  @author Xinyu Fu
+ */
+class Tree {
+
+    /** First magic byte of a stored tree. */
+    static final byte MAGIC0 = 'G';
+    /** Second magic byte of a stored tree. */
+    static final byte MAGIC1 = 'T';
+    /** Version of the stored form. */
+    static final byte VERSION = 1;
+    /** Type of an entry naming a blob. */
+    static final byte FILE = 0;
+    /** Type of an entry naming a tree. */
+    static final byte DIRECTORY = 1;
+    /** Most trees kept by read. */
+    static final int CACHE_SIZE = 1024;
+
+    /** One entry of a tree. */
+    static class Entry {
+        /** An entry of type TYPE for the object ID. */
+        Entry(byte type, String id) {
+            this.type = type;
+            this.id = id;
+        }
+
+        /** Returns the id of this entry if it has type TYPE, else null. */
+        String id(byte wanted) {
+            return type == wanted ? id : null;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Entry && ((Entry) obj).type == type
+                && ((Entry) obj).id.equals(id);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode() + type;
+        }
+
+        /** FILE or DIRECTORY. */
+        final byte type;
+        /** Id of the blob or tree. */
+        final String id;
+    }
+
+    /** A tree with ENTRIES, which it keeps. */
+    private Tree(TreeMap<String, Entry> entries) {
+        _entries = entries;
+    }
+
+    /** Returns the entries of this tree by name, which must not be
+     *  changed. */
+    SortedMap<String, Entry> entries() {
+        return _entries;
+    }
+
+    /** Returns the tree with id ID in STORE. */
+    static Tree read(ObjectStore store, String id) {
+        Tree result;
+        synchronized (CACHE) {
+            result = CACHE.get(id);
+        }
+        if (result == null) {
+            result = decode(Compression.decode(
+                store.read(ObjectStore.TREES, id)));
+            synchronized (CACHE) {
+                CACHE.put(id, result);
+            }
+        }
+        return result;
+    }
+
+    /** Returns the tree whose stored form, uncompressed, is BYTES. */
+    static Tree decode(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        if (bytes.length < 7 || in.get() != MAGIC0 || in.get() != MAGIC1
+            || in.get() != VERSION) {
+            throw new IllegalArgumentException("unknown tree format");
+        }
+        TreeMap<String, Entry> entries = new TreeMap<>();
+        for (int n = in.getInt(); n > 0; n -= 1) {
+            byte type = in.get();
+            byte[] name = new byte[in.getInt()];
+            in.get(name);
+            byte[] id = new byte[Utils.UID_BYTES];
+            in.get(id);
+            entries.put(new String(name, StandardCharsets.UTF_8),
+                        new Entry(type, Utils.uidFromBytes(id, 0)));
+        }
+        return new Tree(entries);
+    }
+
+    /** Returns the stored form of this tree, uncompressed. */
+    byte[] encode() {
+        byte[][] names = new byte[_entries.size()][];
+        int size = 3 + 4, i = 0;
+        for (String name : _entries.keySet()) {
+            names[i] = name.getBytes(StandardCharsets.UTF_8);
+            size += 1 + 4 + names[i].length + Utils.UID_BYTES;
+            i += 1;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.put(MAGIC0).put(MAGIC1).put(VERSION).putInt(_entries.size());
+        i = 0;
+        for (Entry entry : _entries.values()) {
+            out.put(entry.type).putInt(names[i].length).put(names[i]);
+            out.put(Utils.uidToBytes(entry.id));
+            i += 1;
+        }
+        return out.array();
+    }
+
+    /** Store this tree in STORE, returning its id. */
+    private String write(ObjectStore store) {
+        byte[] bytes = encode();
+        String id = Utils.sha1(bytes);
+        store.write(ObjectStore.TREES, id, Compression.encode(
+            bytes, Compression.codecOf(store.dir())));
+        synchronized (CACHE) {
+            CACHE.put(id, this);
+        }
+        return id;
+    }
+
+    /** Store the trees of FILES, which maps paths with '/' between
+     *  directories to blob ids, in STORE, returning the id of the top
+     *  one. */
+    static String write(ObjectStore store, Map<String, String> files) {
+        return update(store, null, files);
+    }
+
+    /** Store in STORE the trees of the files of tree ROOT, or of no files
+     *  if ROOT is null, with CHANGES made.  CHANGES maps paths to new
+     *  blob ids, or to null for files removed.  Only the trees on the
+     *  paths to changed files are written.  Returns the id of the new
+     *  top tree. */
+    static String update(ObjectStore store, String root,
+                         Map<String, String> changes) {
+        return update(store, root, new TreeMap<>(changes), true);
+    }
+
+    /** As for update, but for the tree ID, which may be null, and
+     *  returning null if the result is empty and not TOP. */
+    private static String update(ObjectStore store, String id,
+                                 SortedMap<String, String> changes,
+                                 boolean top) {
+        SortedMap<String, Entry> old = id == null
+            ? Collections.emptySortedMap() : read(store, id)._entries;
+        TreeMap<String, Entry> entries = new TreeMap<>(old);
+        TreeMap<String, SortedMap<String, String>> below = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash >= 0) {
+                below.computeIfAbsent(path.substring(0, slash),
+                                      k -> new TreeMap<>())
+                    .put(path.substring(slash + 1), change.getValue());
+            } else if (change.getValue() == null) {
+                entries.remove(path);
+            } else {
+                entries.put(path, new Entry(FILE, change.getValue()));
+            }
+        }
+        for (Map.Entry<String, SortedMap<String, String>> dir
+                 : below.entrySet()) {
+            Entry entry = entries.get(dir.getKey());
+            String sub = entry == null ? null : entry.id(DIRECTORY);
+            String updated = update(store, sub, dir.getValue(), false);
+            if (updated != null) {
+                entries.put(dir.getKey(), new Entry(DIRECTORY, updated));
+            } else if (sub != null) {
+                entries.remove(dir.getKey());
+            }
+        }
+        if (entries.isEmpty() && !top) {
+            return null;
+        }
+        if (id != null && entries.equals(old)) {
+            return id;
+        }
+        return new Tree(entries).write(store);
+    }
+
+    /** Add the files of tree ID in STORE to FILES, mapping their paths,
+     *  each starting with PREFIX, to their blob ids. */
+    static void flatten(ObjectStore store, String id, String prefix,
+                        Map<String, String> files) {
+        for (Map.Entry<String, Entry> e : read(store, id)._entries
+                 .entrySet()) {
+            if (e.getValue().type == DIRECTORY) {
+                flatten(store, e.getValue().id, prefix + e.getKey() + "/",
+                        files);
+            } else {
+                files.put(prefix + e.getKey(), e.getValue().id);
+            }
+        }
+    }
+
+    /** Add to CHANGES each file whose blob differs between trees A and B
+     *  in STORE, either of which may be null for no tree, mapping its
+     *  path, starting with PREFIX, to its ids in A and B, null where it
+     *  is absent.  Subtrees with equal ids are skipped. */
+    static void diff(ObjectStore store, String a, String b, String prefix,
+                     Map<String, String[]> changes) {
+        if (Objects.equals(a, b)) {
+            return;
+        }
+        SortedMap<String, Entry>
+            ea = a == null ? Collections.emptySortedMap()
+                : read(store, a)._entries,
+            eb = b == null ? Collections.emptySortedMap()
+                : read(store, b)._entries;
+        TreeSet<String> names = new TreeSet<>(ea.keySet());
+        names.addAll(eb.keySet());
+        for (String name : names) {
+            Entry x = ea.get(name), y = eb.get(name);
+            if (Objects.equals(x, y)) {
+                continue;
+            }
+            String xFile = x == null ? null : x.id(FILE),
+                yFile = y == null ? null : y.id(FILE);
+            if (!Objects.equals(xFile, yFile)) {
+                changes.put(prefix + name, new String[] { xFile, yFile });
+            }
+            diff(store, x == null ? null : x.id(DIRECTORY),
+                 y == null ? null : y.id(DIRECTORY), prefix + name + "/",
+                 changes);
+        }
+    }
+
+    /** Returns each file whose blob differs between commits A and B,
+     *  mapped to its ids in A and B, null where it is absent, in path
+     *  order.  The trees of both are in STORE. */
+    static TreeMap<String, String[]> changes(ObjectStore store, Commit a,
+                                             Commit b) {
+        TreeMap<String, String[]> result = new TreeMap<>();
+        if (a.getTree() != null && b.getTree() != null) {
+            diff(store, a.getTree(), b.getTree(), "", result);
+            return result;
+        }
+        FileTable.diff(a.getFiles(), b.getFiles(), result);
+        return result;
+    }
+
+    /** Add to OBJECTS, which maps ids to kinds, tree ID of STORE and the
+     *  trees, blobs and chunks it holds, other than those in SEEN, each
+     *  tree after what it holds, and add them all to SEEN. */
+    static void collect(ObjectStore store, String id, Set<String> seen,
+                        Map<String, String> objects) {
+        collect(store, id, null, seen, objects);
+    }
+
+    /** As collect(STORE, ID, SEEN, OBJECTS), except that each blob is
+     *  passed to Blobs.collect with the blob at its path in tree BASE,
+     *  which may be null, as its base. */
+    static void collect(ObjectStore store, String id, String base,
+                        Set<String> seen, Map<String, String> objects) {
+        if (!seen.add(id)) {
+            return;
+        }
+        SortedMap<String, Entry> old = base == null
+            ? Collections.emptySortedMap() : read(store, base)._entries;
+        for (Map.Entry<String, Entry> e : read(store, id)._entries
+                 .entrySet()) {
+            Entry entry = e.getValue(), prior = old.get(e.getKey());
+            if (entry.type == DIRECTORY) {
+                collect(store, entry.id,
+                        prior == null ? null : prior.id(DIRECTORY), seen,
+                        objects);
+            } else {
+                Blobs.collect(store, entry.id,
+                              prior == null ? null : prior.id(FILE), seen,
+                              objects);
+            }
+        }
+        objects.put(id, ObjectStore.TREES);
+    }
+
+    /** Add to SEEN tree ID of STORE and the trees and blobs it holds,
+     *  skipping trees already there.  The blobs are not read, so the
+     *  chunks of chunked blobs are not added. */
+    static void mark(ObjectStore store, String id, Set<String> seen) {
+        if (!seen.add(id)) {
+            return;
+        }
+        for (Entry entry : read(store, id)._entries.values()) {
+            if (entry.type == DIRECTORY) {
+                mark(store, entry.id, seen);
+            } else {
+                seen.add(entry.id);
+            }
+        }
+    }
+
+    /** Entries by name. */
+    private final TreeMap<String, Entry> _entries;
+
+    /** Trees recently read or written, by id, least recently used
+     *  first. */
+    private static final LinkedHashMap<String, Tree> CACHE =
+        new LinkedHashMap<String, Tree>(CACHE_SIZE, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                Map.Entry<String, Tree> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+}
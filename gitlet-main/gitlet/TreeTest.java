@@ -0,0 +1,113 @@
+package gitlet;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/** Tests of the Tree class.
+ *  @author Xinyu Fu
+ */
+public class TreeTest {
+
+    /** Returns the files of tree ID in STORE. */
+    private static Map<String, String> files(ObjectStore store, String id) {
+        Map<String, String> result = new HashMap<>();
+        Tree.flatten(store, id, "", result);
+        return result;
+    }
+
+    /** Returns the files of a small project. */
+    private static Map<String, String> project() {
+        Map<String, String> files = new HashMap<>();
+        files.put("README", Utils.sha1("readme"));
+        files.put("src/main/A.java", Utils.sha1("a"));
+        files.put("src/main/B.java", Utils.sha1("b"));
+        files.put("src/test/ATest.java", Utils.sha1("atest"));
+        files.put("doc/guide.txt", Utils.sha1("guide"));
+        return files;
+    }
+
+    /** Returns the id of the entry at PATH under tree ROOT in STORE. */
+    private static String entry(ObjectStore store, String root,
+                                String path) {
+        String id = root;
+        for (String name : path.split("/")) {
+            id = Tree.read(store, id).entries().get(name).id;
+        }
+        return id;
+    }
+
+    @Test
+    public void roundTrip() throws IOException {
+        ObjectStore store = TestRepos.tempStore();
+        Map<String, String> files = project();
+        String root = Tree.write(store, files);
+        assertEquals(files, files(store, root));
+        assertEquals(root, Tree.write(store, new TreeMap<>(files)));
+        String empty = Tree.write(store, new HashMap<>());
+        assertTrue(files(store, empty).isEmpty());
+    }
+
+    @Test
+    public void updateKeepsUnchangedSubtrees() throws IOException {
+        ObjectStore store = TestRepos.tempStore();
+        String root = Tree.write(store, project());
+        Map<String, String> changes = new HashMap<>();
+        changes.put("src/main/A.java", Utils.sha1("a2"));
+        String next = Tree.update(store, root, changes);
+        assertFalse(root.equals(next));
+        assertEquals(entry(store, root, "doc"), entry(store, next, "doc"));
+        assertEquals(entry(store, root, "src/test"),
+                     entry(store, next, "src/test"));
+        assertFalse(entry(store, root, "src/main")
+                    .equals(entry(store, next, "src/main")));
+        Map<String, String> expected = project();
+        expected.putAll(changes);
+        assertEquals(expected, files(store, next));
+        assertEquals(root, Tree.update(store, root, new HashMap<>()));
+    }
+
+    @Test
+    public void removalPrunesEmptyDirectories() throws IOException {
+        ObjectStore store = TestRepos.tempStore();
+        String root = Tree.write(store, project());
+        Map<String, String> changes = new HashMap<>();
+        changes.put("doc/guide.txt", null);
+        changes.put("missing/file", null);
+        String next = Tree.update(store, root, changes);
+        assertFalse(Tree.read(store, next).entries().containsKey("doc"));
+        assertFalse(Tree.read(store, next).entries().containsKey("missing"));
+        Map<String, String> expected = project();
+        expected.remove("doc/guide.txt");
+        assertEquals(expected, files(store, next));
+    }
+
+    @Test
+    public void diffFindsChangedFiles() throws IOException {
+        ObjectStore store = TestRepos.tempStore();
+        String root = Tree.write(store, project());
+        Map<String, String> changes = new HashMap<>();
+        changes.put("src/main/B.java", null);
+        changes.put("src/main/C.java", Utils.sha1("c"));
+        changes.put("doc", Utils.sha1("doc file"));
+        String next = Tree.update(store, root, changes);
+        TreeMap<String, String[]> diff = new TreeMap<>();
+        Tree.diff(store, root, next, "", diff);
+        assertEquals("[doc, doc/guide.txt, src/main/B.java, src/main/C.java]",
+                     diff.keySet().toString());
+        assertEquals(Arrays.asList(null, Utils.sha1("doc file")),
+                     Arrays.asList(diff.get("doc")));
+        assertEquals(Arrays.asList(Utils.sha1("guide"), null),
+                     Arrays.asList(diff.get("doc/guide.txt")));
+        assertEquals(Arrays.asList(Utils.sha1("b"), null),
+                     Arrays.asList(diff.get("src/main/B.java")));
+        diff.clear();
+        Tree.diff(store, next, next, "", diff);
+        assertTrue(diff.isEmpty());
+    }
+}
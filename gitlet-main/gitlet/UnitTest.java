@@ -12,7 +12,19 @@ public class UnitTest {
     /** Run the JUnit tests in the loa package. Add xxxTest.class entries to
      *  the arguments of runClasses to run other JUnit tests. */
     public static void main(String[] ignored) {
-        System.exit(textui.runClasses(UnitTest.class));
+        System.exit(textui.runClasses(UnitTest.class, DeltaTest.class,
+                                      CompressionTest.class,
+                                      CommitGraphTest.class,
+                                      IndexTest.class, BlobsTest.class,
+                                      CommitTest.class, CheckoutTest.class,
+                                      CommitIndexTest.class,
+                                      CatalogTest.class, ProtocolTest.class,
+                                      BatchTest.class, DiffTest.class,
+                                      TreeTest.class, FileTableTest.class,
+                                      StageTest.class, ChunkerTest.class,
+                                      GarbageCollectorTest.class,
+                                      MigrationTest.class,
+                                      TransferTest.class));
     }
 
     /** A dummy test to avoid complaint. */
@@ -1,9 +1,9 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -59,6 +59,39 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** The length of a complete SHA-1 UID in bytes. */
+    static final int UID_BYTES = UID_LENGTH / 2;
+
+    /** Returns the UID_BYTES-byte binary form of the hexadecimal UID ID. */
+    static byte[] uidToBytes(String id) {
+        byte[] result = new byte[UID_BYTES];
+        for (int i = 0; i < UID_BYTES; i += 1) {
+            result[i] = (byte) ((Character.digit(id.charAt(2 * i), 16) << 4)
+                                | Character.digit(id.charAt(2 * i + 1), 16));
+        }
+        return result;
+    }
+
+    /** Returns the hexadecimal UID whose binary form is the UID_BYTES
+     *  bytes of BYTES starting at OFFSET. */
+    static String uidFromBytes(byte[] bytes, int offset) {
+        char[] result = new char[UID_LENGTH];
+        for (int i = 0; i < UID_BYTES; i += 1) {
+            int b = bytes[offset + i] & 0xff;
+            result[2 * i] = HEX_DIGITS[b >>> 4];
+            result[2 * i + 1] = HEX_DIGITS[b & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** The hexadecimal digits, in order. */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /** Returns true iff NAME looks like a complete hexadecimal UID. */
+    static boolean isUid(String name) {
+        return name.length() == UID_LENGTH && name.matches("[0-9a-f]+");
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -87,10 +120,14 @@ class Utils {
     /* READING AND WRITING FILE CONTENTS */
 
     /** Return the entire contents of FILE as a byte array.  FILE must
-     *  be a normal file.  Throws IllegalArgumentException
-     *  in case of problems. */
+     *  be a normal file, or name an object that has been moved into a
+     *  pack.  Throws IllegalArgumentException in case of problems. */
     static byte[] readContents(File file) {
         if (!file.isFile()) {
+            byte[] packed = ObjectStore.readPacked(file);
+            if (packed != null) {
+                return packed;
+            }
             throw new IllegalArgumentException("must be a normal file");
         }
         try {
@@ -133,12 +170,15 @@ class Utils {
     }
 
     /** Return an object of type T read from FILE, casting it to EXPECTEDCLASS.
+     *  FILE may also name an object that has been moved into a pack, and
+     *  may be compressed (see Compression).
      *  Throws IllegalArgumentException in case of problems. */
     static <T extends Serializable> T readObject(File file,
                                                  Class<T> expectedClass) {
         try {
-            ObjectInputStream in =
-                new ObjectInputStream(new FileInputStream(file));
+            ObjectInputStream in = new ObjectInputStream(
+                new ByteArrayInputStream(
+                    Compression.decode(readContents(file))));
             T result = expectedClass.cast(in.readObject());
             in.close();
             return result;
@@ -148,9 +188,11 @@ class Utils {
         }
     }
 
-    /** Write OBJ to FILE. */
+    /** Write OBJ to FILE, compressed with the codec of the repository
+     *  that FILE belongs to. */
     static void writeObject(File file, Serializable obj) {
-        writeContents(file, serialize(obj));
+        writeContents(file, Compression.encode(serialize(obj),
+                                               Compression.codecFor(file)));
     }
 
     /* DIRECTORIES */
@@ -0,0 +1,68 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/** A bounded pool of threads for work done file by file.  At most
+ *  THREADS threads run at once, each taking the next item in turn, so
+ *  a list of any length costs no more than THREADS threads and one
+ *  slot per result.
+ *  @author Xinyu Fu
+ */
+class Workers {
+
+    /** Largest number of threads used at once. */
+    static final int THREADS =
+        Math.max(1, Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+    /** A piece of work on one item. */
+    interface Task<T, R> {
+        /** Returns the result of working on ITEM. */
+        R apply(T item) throws Exception;
+    }
+
+    /** Returns the results of applying TASK to each of ITEMS, in the
+     *  order of ITEMS.  If any application throws, the remaining items
+     *  are skipped and the first exception is rethrown. */
+    static <T, R> List<R> map(List<T> items, Task<T, R> task)
+        throws Exception {
+        Object[] results = new Object[items.size()];
+        AtomicInteger next = new AtomicInteger();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Runnable worker = () -> {
+            for (int i = next.getAndIncrement();
+                 i < results.length && failure.get() == null;
+                 i = next.getAndIncrement()) {
+                try {
+                    results[i] = task.apply(items.get(i));
+                } catch (Exception excp) {
+                    failure.compareAndSet(null, excp);
+                }
+            }
+        };
+        int threads = Math.min(THREADS, items.size());
+        if (threads <= 1) {
+            worker.run();
+        } else {
+            List<Thread> running = new ArrayList<>();
+            for (int t = 0; t < threads; t += 1) {
+                Thread thread = new Thread(worker, "gitlet-worker-" + t);
+                thread.setDaemon(true);
+                thread.start();
+                running.add(thread);
+            }
+            for (Thread thread : running) {
+                thread.join();
+            }
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        @SuppressWarnings("unchecked")
+        List<R> result = (List<R>) Arrays.asList(results);
+        return result;
+    }
+}